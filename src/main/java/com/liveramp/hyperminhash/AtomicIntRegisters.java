@@ -0,0 +1,129 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Thread-safe counterpart of {@link IntRegisters}. Registers are only ever raised, with a
+ * compare-and-set loop, so concurrent updates never lose a larger register and no locks are taken.
+ * Reads see each register atomically, but not all registers at the same instant. The histogram of
+ * positions is updated right after each register, so it may briefly lag behind the registers.
+ */
+class AtomicIntRegisters implements Registers<AtomicIntRegisters> {
+
+  final AtomicIntegerArray registers;
+  private final int p;
+  private final int r;
+  private final AtomicRegisterHistogram positions;
+
+  AtomicIntRegisters(int p, int r) {
+    this(p, r, new AtomicIntegerArray(1 << p));
+  }
+
+  AtomicIntRegisters(int p, int r, AtomicIntegerArray registers) {
+    if (r > 25) {
+      throw new IllegalArgumentException(
+          "R cannot be greater than 25 when using AtomicIntRegisters");
+    }
+
+    this.p = p;
+    this.r = r;
+    this.registers = registers;
+    this.positions = new AtomicRegisterHistogram(countPositions());
+  }
+
+  @Override
+  public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
+    final int incoming = Math.toIntExact(incomingRegister);
+    int current = registers.get(registerIndex);
+    while (IntRegisters.isGreaterThan(incoming, current, r)) {
+      if (registers.compareAndSet(registerIndex, current, incoming)) {
+        positions.move(
+            IntPacker.unpackPositionOfFirstOne(current, r),
+            IntPacker.unpackPositionOfFirstOne(incoming, r));
+        return true;
+      }
+      // another thread changed the register first, so compare against its value instead
+      current = registers.get(registerIndex);
+    }
+    return false;
+  }
+
+  @Override
+  public long getRegisterAtIndex(int index) {
+    return registers.get(index);
+  }
+
+  @Override
+  public AtomicIntRegisters deepCopy() {
+    final AtomicIntegerArray copy = new AtomicIntegerArray(registers.length());
+    for (int i = 0; i < registers.length(); i++) {
+      copy.set(i, registers.get(i));
+    }
+    return new AtomicIntRegisters(p, r, copy);
+  }
+
+  @Override
+  public int getNumRegisters() {
+    return registers.length();
+  }
+
+  @Override
+  public int getPositionOfFirstOneAtRegister(int index) {
+    return IntPacker.unpackPositionOfFirstOne(registers.get(index), r);
+  }
+
+  @Override
+  public long getMantissaAtRegister(int index) {
+    return IntPacker.unpackMantissa(registers.get(index), r);
+  }
+
+  @Override
+  public int getNumZeroRegisters() {
+    // only empty registers have no first one
+    return positions.count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    return positions.snapshot();
+  }
+
+  @Override
+  public String toString() {
+    return "AtomicIntRegisters{" +
+        "registers=" + registers +
+        ", p=" + p +
+        ", r=" + r +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    AtomicIntRegisters that = (AtomicIntRegisters) o;
+    if (p != that.p || r != that.r || registers.length() != that.registers.length()) {
+      return false;
+    }
+    for (int i = 0; i < registers.length(); i++) {
+      if (registers.get(i) != that.registers.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Objects.hash(p, r);
+    for (int i = 0; i < registers.length(); i++) {
+      result = 31 * result + registers.get(i);
+    }
+    return result;
+  }
+}
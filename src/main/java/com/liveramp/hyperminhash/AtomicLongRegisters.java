@@ -0,0 +1,124 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe counterpart of {@link LongRegisters}. Registers are only ever raised, with a
+ * compare-and-set loop, so concurrent updates never lose a larger register and no locks are taken.
+ * Reads see each register atomically, but not all registers at the same instant. The histogram of
+ * positions is updated right after each register, so it may briefly lag behind the registers.
+ */
+class AtomicLongRegisters implements Registers<AtomicLongRegisters> {
+
+  final AtomicLongArray registers;
+  private final int p;
+  private final int r;
+  private final AtomicRegisterHistogram positions;
+
+  AtomicLongRegisters(int p, int r) {
+    this(p, r, new AtomicLongArray(1 << p));
+  }
+
+  AtomicLongRegisters(int p, int r, AtomicLongArray registers) {
+    this.p = p;
+    this.r = r;
+    this.registers = registers;
+    this.positions = new AtomicRegisterHistogram(countPositions());
+  }
+
+  @Override
+  public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
+    final long incoming = incomingRegister;
+    long current = registers.get(registerIndex);
+    while (LongRegisters.isGreaterThan(incoming, current, r)) {
+      if (registers.compareAndSet(registerIndex, current, incoming)) {
+        positions.move(
+            LongPacker.unpackPositionOfFirstOne(current, r),
+            LongPacker.unpackPositionOfFirstOne(incoming, r));
+        return true;
+      }
+      // another thread changed the register first, so compare against its value instead
+      current = registers.get(registerIndex);
+    }
+    return false;
+  }
+
+  @Override
+  public long getRegisterAtIndex(int index) {
+    return registers.get(index);
+  }
+
+  @Override
+  public AtomicLongRegisters deepCopy() {
+    final AtomicLongArray copy = new AtomicLongArray(registers.length());
+    for (int i = 0; i < registers.length(); i++) {
+      copy.set(i, registers.get(i));
+    }
+    return new AtomicLongRegisters(p, r, copy);
+  }
+
+  @Override
+  public int getNumRegisters() {
+    return registers.length();
+  }
+
+  @Override
+  public int getPositionOfFirstOneAtRegister(int index) {
+    return LongPacker.unpackPositionOfFirstOne(registers.get(index), r);
+  }
+
+  @Override
+  public long getMantissaAtRegister(int index) {
+    return LongPacker.unpackMantissa(registers.get(index), r);
+  }
+
+  @Override
+  public int getNumZeroRegisters() {
+    // only empty registers have no first one
+    return positions.count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    return positions.snapshot();
+  }
+
+  @Override
+  public String toString() {
+    return "AtomicLongRegisters{" +
+        "registers=" + registers +
+        ", p=" + p +
+        ", r=" + r +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    AtomicLongRegisters that = (AtomicLongRegisters) o;
+    if (p != that.p || r != that.r || registers.length() != that.registers.length()) {
+      return false;
+    }
+    for (int i = 0; i < registers.length(); i++) {
+      if (registers.get(i) != that.registers.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Objects.hash(p, r);
+    for (int i = 0; i < registers.length(); i++) {
+      result = 31 * result + Long.hashCode(registers.get(i));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,43 @@
+package com.liveramp.hyperminhash;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Thread-safe counterpart of {@link RegisterHistogram}, for registers which are updated
+ * concurrently. A register is added to its new bucket before it's removed from its old one, so
+ * while registers are being updated, reads may count each of them twice. Like reads of the
+ * registers themselves, reads see each bucket atomically, but not all buckets at the same instant.
+ */
+final class AtomicRegisterHistogram {
+
+  private final AtomicIntegerArray counts;
+
+  AtomicRegisterHistogram(RegisterHistogram histogram) {
+    this.counts = new AtomicIntegerArray(histogram.getNumBuckets());
+    for (int bucket = 0; bucket < counts.length(); bucket++) {
+      counts.set(bucket, histogram.count(bucket));
+    }
+  }
+
+  void move(int fromBucket, int toBucket) {
+    if (fromBucket != toBucket) {
+      counts.incrementAndGet(toBucket);
+      counts.decrementAndGet(fromBucket);
+    }
+  }
+
+  int count(int bucket) {
+    return counts.get(bucket);
+  }
+
+  /**
+   * @return a copy of the counts, which is no longer updated
+   */
+  RegisterHistogram snapshot() {
+    final RegisterHistogram histogram = new RegisterHistogram(counts.length());
+    for (int bucket = 0; bucket < counts.length(); bucket++) {
+      histogram.add(bucket, counts.get(bucket));
+    }
+    return histogram;
+  }
+}
@@ -2,6 +2,7 @@ package com.liveramp.hyperminhash;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * Implementation of HyperMinHash described in Yu and Weber: https://arxiv.org/pdf/1710.08436.pdf.
@@ -38,19 +39,61 @@ public class BetaMinHash implements IntersectionSketch<BetaMinHash> {
   public static final int R = 10;
 
   private static final int HASH_SEED = 1337;
+  // used in serialization. See HyperMinHash.VERSION.
   static final byte VERSION = 1;
+  static final byte VERSION_WITH_HASHER = 2;
+  static final byte VERSION_SPARSE = 3;
 
-  final short[] registers;
+  // number of values hashed by offerAll before the registers are updated with their hashes
+  private static final int OFFER_BLOCK_SIZE = 1024;
+
+  // The registers, which are null while the sketch is sparse. See SparseBetaMinHash.
+  short[] registers;
+  // the set registers of a sparse sketch, which are null once the sketch is dense
+  SparseShortRegisters sparseRegisters;
+  // Number of registers with each number of leading zeros, which is updated whenever a register
+  // changes so that the cardinality doesn't need to look at every register.
+  final RegisterHistogram leadingZeroCounts;
+  // Hashes offered values. Sketches can only be combined if they use the same hasher.
+  final Hasher128 hasher;
+
+  // Receives the hash of each offered value. Like the registers, this is not thread-safe.
+  private final long[] hashBuffer = new long[2];
+  // Receives the hashes of offerAll. It's allocated by the first call, as large as that call needs,
+  // so that sketches which are only offered one value at a time don't hold it.
+  private long[] offerBuffer;
 
   public BetaMinHash() {
-    registers = new short[NUM_REGISTERS];
+    this(Murmur3Hasher128.getInstance());
+  }
+
+  /**
+   * @param hasher hash function applied to offered values
+   */
+  public BetaMinHash(Hasher128 hasher) {
+    this(
+        new short[NUM_REGISTERS],
+        null,
+        RegisterHistogram.ofEmptyRegisters(BetaMinHashCardinalityGetter.NUM_BUCKETS, NUM_REGISTERS),
+        hasher);
   }
 
-  private BetaMinHash(short[] registers) {
+  /**
+   * @param registers       dense registers, or null if the sketch is sparse
+   * @param sparseRegisters set registers of a sparse sketch, or null if the sketch is dense
+   */
+  BetaMinHash(
+      short[] registers,
+      SparseShortRegisters sparseRegisters,
+      RegisterHistogram leadingZeroCounts,
+      Hasher128 hasher) {
     this.registers = registers;
+    this.sparseRegisters = sparseRegisters;
+    this.leadingZeroCounts = leadingZeroCounts;
+    this.hasher = Objects.requireNonNull(hasher, "hasher");
   }
 
-  static BetaMinHash deepCopyFromRegisters(short[] registers) {
+  static BetaMinHash deepCopyFromRegisters(short[] registers, Hasher128 hasher) {
     if (registers.length != NUM_REGISTERS) {
       throw new IllegalArgumentException(String.format(
           "Expected exactly %d registers, but there are %d",
@@ -59,13 +102,17 @@ public class BetaMinHash implements IntersectionSketch<BetaMinHash> {
     }
 
     final short[] registersCopy = new short[NUM_REGISTERS];
-    System.arraycopy(registers, 0, registers, 0, NUM_REGISTERS);
+    System.arraycopy(registers, 0, registersCopy, 0, NUM_REGISTERS);
 
-    return wrapRegisters(registersCopy);
+    return wrapRegisters(registersCopy, hasher);
   }
 
-  static BetaMinHash wrapRegisters(short[] registers) {
-    return new BetaMinHash(registers);
+  static BetaMinHash wrapRegisters(short[] registers, Hasher128 hasher) {
+    return new BetaMinHash(
+        registers,
+        null,
+        BetaMinHashCardinalityGetter.countLeadingZeros(registers),
+        hasher);
   }
 
   @Override
@@ -75,11 +122,44 @@ public class BetaMinHash implements IntersectionSketch<BetaMinHash> {
 
   @Override
   public boolean offer(byte[] val) {
-    long[] _128BitHash = Murmur3.hash128(val);
-    ByteBuffer buf = ByteBuffer.allocate(16);
-    buf.putLong(_128BitHash[0]);
-    buf.putLong(_128BitHash[1]);
-    return addHash(buf);
+    hasher.hash128(val, 0, val.length, hashBuffer, 0);
+    return offerHash(hashBuffer[0], hashBuffer[1]);
+  }
+
+  @Override
+  public boolean offer(byte[] bytes, int offset, int length) {
+    hasher.hash128(bytes, offset, length, hashBuffer, 0);
+    return offerHash(hashBuffer[0], hashBuffer[1]);
+  }
+
+  @Override
+  public boolean offer(ByteBuffer value) {
+    hasher.hash128(value, value.position(), value.remaining(), hashBuffer, 0);
+    return offerHash(hashBuffer[0], hashBuffer[1]);
+  }
+
+  @Override
+  public boolean offer(long value) {
+    hasher.hash128(value, hashBuffer, 0);
+    return offerHash(hashBuffer[0], hashBuffer[1]);
+  }
+
+  @Override
+  public boolean offer(int value) {
+    hasher.hash128(value, hashBuffer, 0);
+    return offerHash(hashBuffer[0], hashBuffer[1]);
+  }
+
+  @Override
+  public boolean offer(long mostSigBits, long leastSigBits) {
+    hasher.hash128(mostSigBits, leastSigBits, hashBuffer, 0);
+    return offerHash(hashBuffer[0], hashBuffer[1]);
+  }
+
+  @Override
+  public boolean offer(CharSequence value) {
+    hasher.hash128(value, hashBuffer, 0);
+    return offerHash(hashBuffer[0], hashBuffer[1]);
   }
 
   @Override
@@ -91,52 +171,220 @@ public class BetaMinHash implements IntersectionSketch<BetaMinHash> {
       return false;
     }
     BetaMinHash that = (BetaMinHash) o;
-    return Arrays.equals(registers, that.registers);
+    if (!hasher.equals(that.hasher)) {
+      return false;
+    }
+    if (registers != null && that.registers != null) {
+      return Arrays.equals(registers, that.registers);
+    }
+    // sparse sketches are equal to dense sketches with the same registers
+    for (int i = 0; i < NUM_REGISTERS; i++) {
+      if (getRegister(i) != that.getRegister(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return Arrays.hashCode(registers);
+    if (registers != null) {
+      return 31 * Arrays.hashCode(registers) + hasher.hashCode();
+    }
+    // the same as Arrays.hashCode of the dense registers
+    int registersHashCode = 1;
+    for (int i = 0; i < NUM_REGISTERS; i++) {
+      registersHashCode = 31 * registersHashCode + getRegister(i);
+    }
+    return 31 * registersHashCode + hasher.hashCode();
   }
 
 
   @Override
   public BetaMinHash deepCopy() {
-    return deepCopyFromRegisters(this.registers);
+    return new BetaMinHash(
+        registers != null ? Arrays.copyOf(registers, NUM_REGISTERS) : null,
+        sparseRegisters != null ? sparseRegisters.copy() : null,
+        leadingZeroCounts.copy(),
+        hasher);
+  }
+
+  @Override
+  public boolean offer(Murmur3.IncrementalHash128 hash) {
+    hash.checkStarted();
+    if (!(hasher instanceof Murmur3Hasher128) || hash.seed != Murmur3.DEFAULT_SEED) {
+      throw new IllegalArgumentException(
+          "Incremental Murmur3 hashes with seed " + hash.seed + " can't be offered to a sketch "
+              + "which uses " + hasher.getClass().getSimpleName());
+    }
+
+    hash.end(hashBuffer, 0);
+    return offerHash(hashBuffer[0], hashBuffer[1]);
+  }
+
+  @Override
+  public int offerAll(long[] values) {
+    final long[] hashes = getOfferBuffer(Math.min(values.length, OFFER_BLOCK_SIZE));
+
+    int numChanged = 0;
+    for (int start = 0; start < values.length; start += OFFER_BLOCK_SIZE) {
+      final int length = Math.min(OFFER_BLOCK_SIZE, values.length - start);
+      for (int i = 0; i < length; i++) {
+        hasher.hash128(values[start + i], hashes, i << 1);
+      }
+      numChanged += offerHashes(hashes, length);
+    }
+    return numChanged;
+  }
+
+  @Override
+  public int offerAll(byte[][] values) {
+    final long[] hashes = getOfferBuffer(Math.min(values.length, OFFER_BLOCK_SIZE));
+
+    int numChanged = 0;
+    for (int start = 0; start < values.length; start += OFFER_BLOCK_SIZE) {
+      final int length = Math.min(OFFER_BLOCK_SIZE, values.length - start);
+      for (int i = 0; i < length; i++) {
+        final byte[] value = values[start + i];
+        hasher.hash128(value, 0, value.length, hashes, i << 1);
+      }
+      numChanged += offerHashes(hashes, length);
+    }
+    return numChanged;
+  }
+
+  @Override
+  public int offerAll(ByteBuffer data, int[] offsets) {
+    final int numValues = Math.max(offsets.length - 1, 0);
+    final long[] hashes = getOfferBuffer(Math.min(numValues, OFFER_BLOCK_SIZE));
+
+    int numChanged = 0;
+    for (int start = 0; start < numValues; start += OFFER_BLOCK_SIZE) {
+      final int length = Math.min(OFFER_BLOCK_SIZE, numValues - start);
+      for (int i = 0; i < length; i++) {
+        final int offset = offsets[start + i];
+        final int valueLength = offsets[start + i + 1] - offset;
+        hasher.hash128(data, offset, valueLength, hashes, i << 1);
+      }
+      numChanged += offerHashes(hashes, length);
+    }
+    return numChanged;
+  }
+
+  /**
+   * @return an array which holds at least {@code blockSize} hashes for offerAll
+   */
+  private long[] getOfferBuffer(int blockSize) {
+    if (offerBuffer == null || offerBuffer.length < 2 * blockSize) {
+      offerBuffer = new long[2 * blockSize];
+    }
+    return offerBuffer;
   }
 
   /**
-   * @param _128BitHash
+   * {@inheritDoc}
+   *
+   * <p>The two halves are read as one 128-bit string whose first bit is the most significant bit
+   * of {@code hllHalf}. The leading-one search starts in {@code hllHalf} and ends in the first
+   * bits of {@code minHashHalf}.
    */
-  private boolean addHash(ByteBuffer _128BitHash) {
-    if (_128BitHash.array().length != 16) {
-      throw new IllegalArgumentException("input hash should be 16 bytes");
+  @Override
+  public boolean offerHash(long hllHalf, long minHashHalf) {
+    int registerIndex = (int) BitHelper.getLeftmostBits(hllHalf, P);
+    short packedRegister = packRegister(hllHalf, minHashHalf);
+    if (getRegister(registerIndex) < packedRegister) {
+      setRegister(registerIndex, packedRegister);
+      return true;
     }
 
-    long hashLeftHalf = _128BitHash.getLong(0);
-    int registerIndex = (int) BitHelper.getLeftmostBits(hashLeftHalf, P);
-    short leftmostOneBitPosition = BitHelper.getLeftmostOneBitPosition(_128BitHash.array(), P, Q);
+    return false;
+  }
+
+  /**
+   * Offers the first {@code length} hashes in {@code hashes}, whose halves are interleaved.
+   *
+   * @return the number of hashes which changed a register
+   */
+  private int offerHashes(long[] hashes, int length) {
+    int numChanged = 0;
+    for (int i = 0; i < length; i++) {
+      final long hllHalf = hashes[i << 1];
+      final long minHashHalf = hashes[(i << 1) + 1];
+      final int registerIndex = (int) (hllHalf >>> (Long.SIZE - P));
+      final short packedRegister = packRegister(hllHalf, minHashHalf);
+      if (getRegister(registerIndex) < packedRegister) {
+        setRegister(registerIndex, packedRegister);
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  /**
+   * @return the register at {@code registerIndex}, whether the sketch is sparse or dense
+   */
+  short getRegister(int registerIndex) {
+    return registers != null ? registers[registerIndex] : sparseRegisters.get(registerIndex);
+  }
+
+  /**
+   * Sets a register, keeping {@link #leadingZeroCounts} up to date. All writes to the registers of
+   * a sketch which other code can see go through here. A sparse sketch becomes dense when it has
+   * no room for another set register.
+   */
+  void setRegister(int registerIndex, short register) {
+    leadingZeroCounts.move(
+        BetaMinHashCardinalityGetter.bucket(getRegister(registerIndex)),
+        BetaMinHashCardinalityGetter.bucket(register));
+    if (registers == null && !sparseRegisters.set(registerIndex, register)) {
+      registers = sparseRegisters.toDense();
+      sparseRegisters = null;
+    }
+    if (registers != null) {
+      registers[registerIndex] = register;
+    }
+  }
+
+  private static short packRegister(long hllHalf, long minHashHalf) {
+    short leftmostOneBitPosition = getLeftmostOneBitPosition(hllHalf, minHashHalf);
     /* We take the rightmost bits as what's called h_hat3 in the paper. Note that his differs from
      * the diagram in the paper which draws a parallel to a mantissa in a floating point
      * representation, but still satisfies the criterion of serving as an independent hash function
      * by selecting a set of independent bits from a larger hash. This is slightly simpler to
      * implement. */
-    short rBits = (short) BitHelper.getRightmostBits(_128BitHash.array(), R);
+    short rBits = getRightmostRBits(minHashHalf);
 
-    short packedRegister = packIntoRegister(leftmostOneBitPosition, rBits);
-    if (registers[registerIndex] < packedRegister) {
-      registers[registerIndex] = packedRegister;
-      return true;
-    }
+    return packIntoRegister(leftmostOneBitPosition, rBits);
+  }
 
-    return false;
+  /**
+   * Returns the 1-indexed position of the leftmost one-bit among the 2^Q bits that follow the first
+   * P + 1 bits of the hash, or 2^Q + 1 if all of them are zero.
+   */
+  private static short getLeftmostOneBitPosition(long hashLeftHalf, long hashRightHalf) {
+    // 2^Q == Long.SIZE, so the whole search space fits into one long which straddles both halves.
+    final int offset = P + 1;
+    final long zeroSearchSpace = (hashLeftHalf << offset) | (hashRightHalf >>> (Long.SIZE - offset));
+    // numberOfLeadingZeros returns 64 for an all-zero search space, which yields 2^Q + 1.
+    return (short) (Long.numberOfLeadingZeros(zeroSearchSpace) + 1);
+  }
+
+  /**
+   * Returns the rightmost R bits of the hash, in the exact (bit-reversed) arrangement produced by
+   * {@link BitHelper#bitsToLong}: the R - 1 least significant bits of the hash are reversed, and
+   * the R-th least significant bit is added on top of them.
+   */
+  private static short getRightmostRBits(long hashRightHalf) {
+    final int reversedLowBits = Integer.reverse((int) hashRightHalf) >>> (Integer.SIZE - (R - 1));
+    final int highBit = (int) (hashRightHalf >>> (R - 1)) & 1;
+    return (short) (reversedLowBits + highBit);
   }
 
   /**
    * Creates a new tuple/register value for the LL-Beta by bit-packing the number of leading zeros
    * with the rightmost R bits.
    */
-  private short packIntoRegister(short leftmostOnebitPosition, short rightmostRBits) {
+  private static short packIntoRegister(short leftmostOnebitPosition, short rightmostRBits) {
     // Q is at most 6, which means that with R<=10, we should be able to store these two
     // numbers in the same register
     final int exponent = leftmostOnebitPosition << R;
@@ -2,29 +2,54 @@ package com.liveramp.hyperminhash;
 
 class BetaMinHashCardinalityGetter {
 
+  // registers are counted by their leading zeros, as unsigned bytes
+  static final int NUM_BUCKETS = 1 << Byte.SIZE;
+  // HARMONIC_TERMS[lz & 0xff] = 2^-lz for every byte lz, which are exact powers of two
+  private static final double[] HARMONIC_TERMS = new double[NUM_BUCKETS];
+
+  static {
+    for (int leadingZeros = Byte.MIN_VALUE; leadingZeros <= Byte.MAX_VALUE; leadingZeros++) {
+      HARMONIC_TERMS[leadingZeros & 0xff] = 1 / Math.pow(2, (double) leadingZeros);
+    }
+  }
+
   static long cardinality(BetaMinHash sketch) {
+    return cardinality(sketch.leadingZeroCounts);
+  }
+
+  /**
+   * @param leadingZeroCounts number of registers in each {@link #bucket(short)}, over all
+   *                          registers
+   */
+  static long cardinality(RegisterHistogram leadingZeroCounts) {
+    final double sum = leadingZeroCounts.weightedSum(HARMONIC_TERMS);
+    final double zeros = leadingZeroCounts.count(0);
     // Formula (2) in Qin et al.
-    SumAndZeros saz = getRegisterSumAndZeros(sketch);
-    double sum = saz.sum;
-    double zeros = saz.zeros;
     double mHat = (double) BetaMinHash.NUM_REGISTERS;
     double alpha = alpha(BetaMinHash.NUM_REGISTERS);
     return (long) (alpha * mHat * (mHat - zeros) / (beta(zeros) + sum));
   }
 
-  private static SumAndZeros getRegisterSumAndZeros(BetaMinHash sketch) {
-    double sum = 0, uninitializedRegisters = 0;
-    for (short register : sketch.registers) {
-      byte leadingZeros = leadingZeros(register, BetaMinHash.Q);
-      if (leadingZeros == 0) {
-        uninitializedRegisters++;
-      }
-      sum += 1 / Math.pow(2, (double) leadingZeros);
+  /**
+   * @return the number of registers in each {@link #bucket(short)}, counted from scratch
+   */
+  static RegisterHistogram countLeadingZeros(short[] registers) {
+    final RegisterHistogram histogram = new RegisterHistogram(NUM_BUCKETS);
+    for (short register : registers) {
+      histogram.add(bucket(register));
     }
-    return new SumAndZeros(sum, uninitializedRegisters);
+    return histogram;
   }
 
-  private static byte leadingZeros(short register, int q) {
+  /**
+   * @return the bucket which a register is counted in, which is 0 for exactly the registers with
+   * no leading zeros
+   */
+  static int bucket(short register) {
+    return leadingZeros(register, BetaMinHash.Q) & 0xff;
+  }
+
+  static byte leadingZeros(short register, int q) {
     return (byte) (register >>> (Short.SIZE - q));
   }
 
@@ -63,20 +88,4 @@ class BetaMinHashCardinalityGetter {
         -0.005384159 * Math.pow(log, 6) +
         0.00042419 * Math.pow(log, 7);
   }
-
-  private static class SumAndZeros {
-
-    final double sum;
-    final double zeros;
-
-    /**
-     * @param sum
-     * @param zeros
-     */
-    SumAndZeros(double sum, double zeros) {
-      this.zeros = zeros;
-      this.sum = sum;
-    }
-  }
-
 }
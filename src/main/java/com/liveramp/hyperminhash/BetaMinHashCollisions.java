@@ -0,0 +1,154 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Expected number of registers in which {@link BetaMinHash} sketches of independent sets with the
+ * given cardinalities collide, as in algorithm 2.1.5 of the HyperMinHash paper. {@link
+ * BetaMinHashCombiner} subtracts these from the matching registers when estimating similarity.
+ *
+ * <p>The computation sums over all 2^Q * 2^R values a register can take. A set of cardinality n
+ * leaves a register below a boundary b with probability (1 - b)^n, and every value shares its
+ * boundaries with its neighbours. So rather than calling {@link Math#pow} twice per value and
+ * sketch, log(1 - b) of every boundary is kept in a table and raised to n with a single {@link
+ * Math#exp} per boundary and sketch. This is also more precise for small b, where 1 - b rounds.
+ *
+ * <p>Results are cached by cardinalities rounded to {@link #CARDINALITY_SIGNIFICANT_BITS}
+ * significant bits, which are also the cardinalities the model is evaluated at. Cached or not,
+ * results are within {@link #RELATIVE_TOLERANCE} of the exact sum, or within {@link
+ * #ABSOLUTE_TOLERANCE} registers of it when fewer than one collision is expected.
+ */
+final class BetaMinHashCollisions {
+
+  static final double RELATIVE_TOLERANCE = 0.001;
+  static final double ABSOLUTE_TOLERANCE = 0.001;
+
+  // Rounding a cardinality to this many significant bits changes it by at most 2^-12 of itself.
+  // The expected collisions change by at most about that much per sketch.
+  static final int CARDINALITY_SIGNIFICANT_BITS = 12;
+  // half of the last significant bit, and the significant bits, of a double's raw bits
+  private static final long CARDINALITY_ROUNDING = 1L << (52 - CARDINALITY_SIGNIFICANT_BITS);
+  private static final long CARDINALITY_MASK = -(1L << (53 - CARDINALITY_SIGNIFICANT_BITS));
+
+  // The cache is simply emptied when it's full, which keeps it cheap to use from many threads.
+  private static final int MAX_CACHE_SIZE = 1 << 14;
+  private static final Map<CacheKey, Double> CACHE = new ConcurrentHashMap<>();
+
+  private static final int NUM_POSITIONS = 1 << BetaMinHash.Q;
+  private static final int NUM_MANTISSAS = 1 << BetaMinHash.R;
+
+  private BetaMinHashCollisions() {
+  }
+
+  /**
+   * @param cardinalities cardinalities of the sets represented by at least two sketches
+   */
+  static double expectedCollisions(double... cardinalities) {
+    final double[] rounded = new double[cardinalities.length];
+    for (int s = 0; s < cardinalities.length; s++) {
+      rounded[s] = roundCardinality(cardinalities[s]);
+    }
+    // the sum is symmetric in the cardinalities, so their order doesn't matter
+    Arrays.sort(rounded);
+
+    final CacheKey key = new CacheKey(rounded);
+    final Double cached = CACHE.get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    final double collisions = computeExpectedCollisions(rounded);
+    if (CACHE.size() >= MAX_CACHE_SIZE) {
+      CACHE.clear();
+    }
+    CACHE.put(key, collisions);
+    return collisions;
+  }
+
+  static double roundCardinality(double cardinality) {
+    return Double.longBitsToDouble(
+        (Double.doubleToRawLongBits(cardinality) + CARDINALITY_ROUNDING) & CARDINALITY_MASK);
+  }
+
+  /**
+   * @return the expected collisions at exactly {@code cardinalities}, without the cache
+   */
+  static double computeExpectedCollisions(double... cardinalities) {
+    final double[][] logComplements = LogComplements.TABLE;
+    // powers[s][j] = (1 - boundary j)^cardinality of sketch s, for the position being summed
+    final double[][] powers = new double[cardinalities.length][NUM_MANTISSAS + 1];
+
+    double x = 0;
+    for (int i = 1; i <= NUM_POSITIONS; i++) {
+      final double[] logComplementsAtPosition = logComplements[i - 1];
+      for (int s = 0; s < cardinalities.length; s++) {
+        for (int j = 0; j <= NUM_MANTISSAS; j++) {
+          powers[s][j] = Math.exp(cardinalities[s] * logComplementsAtPosition[j]);
+        }
+      }
+
+      for (int j = 0; j < NUM_MANTISSAS; j++) {
+        double product = 1;
+        for (double[] sketchPowers : powers) {
+          product *= sketchPowers[j + 1] - sketchPowers[j];
+        }
+        x += product;
+      }
+    }
+    return x * Math.pow(2, BetaMinHash.P);
+  }
+
+  // Holder for the table, so that it's only built when similarities are first estimated.
+  private static class LogComplements {
+
+    // TABLE[i - 1][j - 1] = log(1 - b), where b is the lower boundary of the values with position i
+    // and mantissa j, or the upper boundary of mantissa j - 1
+    static final double[][] TABLE = buildTable();
+
+    private static double[][] buildTable() {
+      final int p = BetaMinHash.P;
+      final int r = BetaMinHash.R;
+      final double[][] table = new double[NUM_POSITIONS][NUM_MANTISSAS + 1];
+      for (int i = 1; i <= NUM_POSITIONS; i++) {
+        for (int j = 1; j <= NUM_MANTISSAS + 1; j++) {
+          final double boundary;
+          if (i != NUM_POSITIONS) {
+            boundary = (NUM_MANTISSAS + j) / Math.pow(2, p + r + i);
+          } else {
+            boundary = j / Math.pow(2, p + r + i - 1);
+          }
+          table[i - 1][j - 1] = Math.log1p(-boundary);
+        }
+      }
+      return table;
+    }
+  }
+
+  private static class CacheKey {
+
+    private final double[] cardinalities;
+
+    CacheKey(double[] cardinalities) {
+      this.cardinalities = cardinalities;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CacheKey that = (CacheKey) o;
+      return Arrays.equals(cardinalities, that.cardinalities);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(cardinalities);
+    }
+  }
+}
@@ -1,6 +1,10 @@
 package com.liveramp.hyperminhash;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class BetaMinHashCombiner implements SketchCombiner<BetaMinHash> {
 
@@ -19,125 +23,231 @@ public class BetaMinHashCombiner implements SketchCombiner<BetaMinHash> {
     if (sketches.isEmpty()) {
       throw new IllegalArgumentException("Input sketches cannot be empty.");
     }
+    assertHashersAreEqual(sketches);
 
-    final BetaMinHash firstSketch = sketches.stream()
-        .findFirst()
-        .get();
-    if (sketches.size() == 1) {
-      return firstSketch.deepCopy();
+    final List<BetaMinHash> sketchList = new ArrayList<>(sketches);
+    return mergeInto(sketchList.get(0).deepCopy(), sketchList.subList(1, sketchList.size()));
+  }
+
+  @Override
+  public long unionCardinality(Collection<BetaMinHash> sketches) {
+    return unionCardinality(sketches.toArray(new BetaMinHash[0]));
+  }
+
+  /**
+   * Returns the same estimate as the cardinality of {@link #union(Collection)}, without building
+   * the union. Each of its registers is computed in turn and counted into a histogram for the
+   * cardinality estimator right away, so no memory is needed for them.
+   */
+  public long unionCardinality(BetaMinHash... sketches) {
+    if (sketches.length == 0) {
+      throw new IllegalArgumentException("Input sketches cannot be empty.");
     }
+    assertHashersAreEqual(sketches);
 
-    final int numRegisters = firstSketch.registers.length;
-    final BetaMinHash mergedSketch = firstSketch.deepCopy();
-    for (int i = 0; i < numRegisters; i++) {
-      for (BetaMinHash sketch : sketches) {
-        mergedSketch.registers[i] = max(
-            mergedSketch.registers[i],
-            sketch.registers[i]
-        );
+    final RegisterHistogram unionLeadingZeroCounts =
+        new RegisterHistogram(BetaMinHashCardinalityGetter.NUM_BUCKETS);
+    for (int i = 0; i < BetaMinHash.NUM_REGISTERS; i++) {
+      short unionRegister = sketches[0].getRegister(i);
+      for (int j = 1; j < sketches.length; j++) {
+        unionRegister = max(unionRegister, sketches[j].getRegister(i));
       }
+
+      unionLeadingZeroCounts.add(BetaMinHashCardinalityGetter.bucket(unionRegister));
     }
 
-    return mergedSketch;
+    return BetaMinHashCardinalityGetter.cardinality(unionLeadingZeroCounts);
   }
 
-  @Override
-  public long intersectionCardinality(Collection<BetaMinHash> sketches) {
-    if (sketches.size() == 0) {
+  /**
+   * Returns the same sketch as {@link #union(Collection)}, computed on the common {@link
+   * ForkJoinPool} with the default threshold of 64 sketches per task.
+   *
+   * @see #parallelUnion(Collection, ForkJoinPool, int)
+   */
+  public BetaMinHash parallelUnion(Collection<BetaMinHash> sketches) {
+    return parallelUnion(sketches, ForkJoinPool.commonPool(), ParallelUnion.DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Returns the same sketch as {@link #union(Collection)}, computed by tasks on {@code pool} with a
+   * tree reduction, where each task merges at most {@code threshold} sketches.
+   *
+   * @param pool      pool which runs the union
+   * @param threshold largest number of sketches merged sequentially by one task
+   */
+  public BetaMinHash parallelUnion(
+      Collection<BetaMinHash> sketches,
+      ForkJoinPool pool,
+      int threshold) {
+    if (sketches.isEmpty()) {
       throw new IllegalArgumentException("Input sketches cannot be empty.");
     }
+    assertHashersAreEqual(sketches);
+    ParallelUnion.checkThreshold(threshold);
+
+    return ParallelUnion.treeUnion(
+        new ArrayList<>(sketches),
+        pool,
+        threshold,
+        BetaMinHash::deepCopy,
+        BetaMinHashCombiner::mergeRegisters);
+  }
 
-    return (long) (similarity(sketches) * union(sketches).cardinality());
+  /**
+   * Merges {@code sources} into {@code target} in place, so that {@code target} represents the
+   * union of its own set and theirs. Sources are merged one after the other, each with a single
+   * sequential pass over the registers, and are not mutated.
+   *
+   * @return {@code target}
+   */
+  public BetaMinHash mergeInto(BetaMinHash target, BetaMinHash... sources) {
+    return mergeInto(target, Arrays.asList(sources));
+  }
+
+  /**
+   * @see #mergeInto(BetaMinHash, BetaMinHash...)
+   */
+  public BetaMinHash mergeInto(BetaMinHash target, Collection<BetaMinHash> sources) {
+    // check every source before merging any of them, so target is left untouched on failure
+    for (BetaMinHash source : sources) {
+      assertHashersAreEqual(target, source);
+    }
+
+    for (BetaMinHash source : sources) {
+      mergeRegisters(target, source);
+    }
+
+    return target;
+  }
+
+  private static void mergeRegisters(BetaMinHash target, BetaMinHash source) {
+    // only the set registers of a sparse source can raise a register of the target
+    final SparseShortRegisters sparseSourceRegisters = source.sparseRegisters;
+    if (sparseSourceRegisters != null) {
+      for (int slot = 0; slot < sparseSourceRegisters.capacity(); slot++) {
+        final int registerIndex = sparseSourceRegisters.index(slot);
+        final short register = sparseSourceRegisters.register(slot);
+        // empty slots hold 0, which never raises a register
+        if (register > 0 && register > target.getRegister(registerIndex)) {
+          target.setRegister(registerIndex, register);
+        }
+      }
+      return;
+    }
+
+    for (int i = 0; i < BetaMinHash.NUM_REGISTERS; i++) {
+      final short register = source.getRegister(i);
+      if (register > target.getRegister(i)) {
+        target.setRegister(i, register);
+      }
+    }
+  }
+
+  @Override
+  public long intersectionCardinality(Collection<BetaMinHash> sketches) {
+    return overlap(sketches).intersectionCardinality();
   }
 
   @Override
   public double similarity(Collection<BetaMinHash> sketches) {
+    return overlap(sketches).similarity();
+  }
+
+  /**
+   * @see #overlap(BetaMinHash...)
+   */
+  public SketchOverlap overlap(Collection<BetaMinHash> sketches) {
+    return overlap(sketches.toArray(new BetaMinHash[0]));
+  }
+
+  /**
+   * Estimates the cardinality of the union, the Jaccard index and the cardinality of the
+   * intersection of the sets represented by {@code sketches} together, in a single scan of their
+   * registers and without building their union. The estimates are the same as those of {@link
+   * #union}, {@link #similarity} and {@link #intersectionCardinality}.
+   */
+  public SketchOverlap overlap(BetaMinHash... sketches) {
     // Algorithm 4 in HyperMinHash paper
-    if (sketches.size() == 0) {
+    if (sketches.length == 0) {
       throw new IllegalArgumentException("Input sketches cannot be empty.");
     }
+    assertHashersAreEqual(sketches);
 
-    if (sketches.size() == 1) {
-      return 1.0;
-    }
-
+    final BetaMinHash firstSketch = sketches[0];
+    // c and n of algorithm 4, and the histogram of the union's registers which the cardinality
+    // estimator needs
     long c = 0;
     long n = 0;
-    final BetaMinHash firstSketch = sketches.stream()
-        .findFirst()
-        .get();
-    for (int i = 0; i < firstSketch.registers.length; i++) {
-      if (firstSketch.registers[i] != 0) {
-        boolean itemInIntersection = true;
-        for (BetaMinHash sketch : sketches) {
-          itemInIntersection =
-              itemInIntersection && firstSketch.registers[i] == sketch.registers[i];
-        }
-
-        if (itemInIntersection) {
-          c++;
-        }
+    final RegisterHistogram unionLeadingZeroCounts =
+        new RegisterHistogram(BetaMinHashCardinalityGetter.NUM_BUCKETS);
+    for (int i = 0; i < BetaMinHash.NUM_REGISTERS; i++) {
+      final short firstRegister = firstSketch.getRegister(i);
+      boolean itemInIntersection = firstRegister != 0;
+      boolean itemInUnion = false;
+      short unionRegister = firstRegister;
+      for (int j = 0; j < sketches.length; j++) {
+        final short register = sketches[j].getRegister(i);
+        itemInIntersection = itemInIntersection && register == firstRegister;
+        itemInUnion = itemInUnion || register != 0;
+        unionRegister = max(unionRegister, register);
       }
 
-      for (BetaMinHash sketch : sketches) {
-        if (sketch.registers[i] != 0) {
-          n++;
-          break;
-        }
+      if (itemInIntersection) {
+        c++;
       }
+      if (itemInUnion) {
+        n++;
+      }
+      unionLeadingZeroCounts.add(BetaMinHashCardinalityGetter.bucket(unionRegister));
     }
 
+    final long unionCardinality =
+        BetaMinHashCardinalityGetter.cardinality(unionLeadingZeroCounts);
+    if (sketches.length == 1) {
+      return new SketchOverlap(unionCardinality, 1.0);
+    }
     if (c == 0) {
-      return 0;
+      return new SketchOverlap(unionCardinality, 0);
     }
 
-    double[] cardinalities = new double[sketches.size()];
-    int i = 0;
-    for (BetaMinHash sk : sketches) {
-      cardinalities[i++] = sk.cardinality();
+    // the sketches keep their registers counted, so their cardinalities are cheap
+    double[] cardinalities = new double[sketches.length];
+    for (int j = 0; j < sketches.length; j++) {
+      cardinalities[j] = sketches[j].cardinality();
     }
 
-    int p = BetaMinHash.P;
-    int q = BetaMinHash.Q;
-    int r = BetaMinHash.R;
-    double numExpectedCollisions = expectedCollision(p, q, r, cardinalities);
+    double numExpectedCollisions = BetaMinHashCollisions.expectedCollisions(cardinalities);
 
     if (c < numExpectedCollisions) {
-      return 0;
+      return new SketchOverlap(unionCardinality, 0);
     }
 
-    return (c - numExpectedCollisions) / (double) n;
+    return new SketchOverlap(unionCardinality, (c - numExpectedCollisions) / (double) n);
   }
 
-  private static double expectedCollision(int p, int q, int r, double... cardinalities) {
-    final int _2q = 1 << q;
-    final int _2r = 1 << r;
-
-    double x = 0;
-    double b1 = 0;
-    double b2 = 0;
-
-    for (int i = 1; i <= _2q; i++) {
-      for (int j = 1; j <= _2r; j++) {
-        if (i != _2q) {
-          double den = Math.pow(2, p + r + i);
-          b1 = (_2r + j) / den;
-          b2 = (_2r + j + 1) / den;
-        } else {
-          double den = Math.pow(2, p + r + i - 1);
-          b1 = j / den;
-          b2 = (j + 1) / den;
-        }
+  /**
+   * Assumes that the collection contains at least one sketch.
+   *
+   * @param sketches input sketches
+   */
+  private static void assertHashersAreEqual(Collection<BetaMinHash> sketches) {
+    final BetaMinHash firstSketch = sketches.stream().findFirst().get();
+    for (BetaMinHash sketch : sketches) {
+      assertHashersAreEqual(firstSketch, sketch);
+    }
+  }
 
-        double product = 1;
-        for (double cardinality : cardinalities) {
-          product *= Math.pow(1 - b2, cardinality) - Math.pow(1 - b1, cardinality);
-        }
+  private static void assertHashersAreEqual(BetaMinHash[] sketches) {
+    for (BetaMinHash sketch : sketches) {
+      assertHashersAreEqual(sketches[0], sketch);
+    }
+  }
 
-        x += product;
-      }
+  private static void assertHashersAreEqual(BetaMinHash a, BetaMinHash b) {
+    if (!a.hasher.equals(b.hasher)) {
+      throw new IllegalArgumentException("Input sketches use different hashers.");
     }
-    return x * Math.pow(2, p);
   }
 
   private static short max(short a, short b) {
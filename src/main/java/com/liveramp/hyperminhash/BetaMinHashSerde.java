@@ -1,6 +1,7 @@
 package com.liveramp.hyperminhash;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import static com.liveramp.hyperminhash.BetaMinHash.NUM_REGISTERS;
 
@@ -11,46 +12,139 @@ public class BetaMinHashSerde implements IntersectionSketch.SerDe<BetaMinHash> {
 
       serde token (byte)
       version (byte)
+      hasher serde token (byte, only present in version 2. Version 1 implies Murmur3)
       registers (NUM_REGISTERS * short)
+
+    A sparse sketch is written as version 3, which always has the hasher serde token, and
+    only has its set registers instead of all of them:
+
+      serde token (byte)
+      version (byte)
+      hasher serde token (byte)
+      num sparse registers (int)
+      then for each set register, in increasing order of index:
+        index (short)
+        register (short)
    */
   @Override
   public BetaMinHash fromBytes(byte[] bytes) {
-    short[] registers = new short[BetaMinHash.NUM_REGISTERS];
-    ByteBuffer inputBuffer = ByteBuffer.wrap(bytes);
+    return read(ByteBuffer.wrap(bytes), false);
+  }
 
+  /**
+   * Returns a read-only sketch whose registers are read straight from {@code buffer}, which holds
+   * a serialized sketch from its position on, instead of being copied out of it. {@code buffer}
+   * may be a {@link java.nio.MappedByteBuffer} over a file of sketches.
+   *
+   * <p>The sketch can be estimated, compared, serialized and unioned like any other, but not
+   * offered values or merged into. Its deep copies, and so unions which start with it, are plain
+   * sketches on the heap. Sparse sketches are small, so they're read into memory as usual. The
+   * position and limit of {@code buffer} aren't changed, and its contents must not change while
+   * the sketch is in use.
+   */
+  public BetaMinHash view(ByteBuffer buffer) {
+    return read(buffer.duplicate(), true);
+  }
+
+  private static BetaMinHash read(ByteBuffer inputBuffer, boolean view) {
+    // the layout is big-endian, whatever the order of the buffer it's read from
+    inputBuffer.order(ByteOrder.BIG_ENDIAN);
     byte serdeToken = inputBuffer.get();
     if (!BetaMinHash.class.equals(SerializationTokens.getClassForToken(serdeToken).get())) {
       throw new IllegalArgumentException("Input bytes do not represent a BetaMinHash object!");
     }
 
     byte version = inputBuffer.get();
-    if (version != 1) { // 1 is the only supported version thus far
+    Hasher128 hasher;
+    if (version == BetaMinHash.VERSION) {
+      hasher = Murmur3Hasher128.getInstance();
+    } else if (version == BetaMinHash.VERSION_WITH_HASHER
+        || version == BetaMinHash.VERSION_SPARSE) {
+      byte hasherSerdeToken = inputBuffer.get();
+      hasher = SerializationTokens.getHasherForToken(hasherSerdeToken)
+          .orElseThrow(() -> new IllegalArgumentException(
+              "No hasher found for serde token: " + hasherSerdeToken));
+    } else {
       throw new IllegalArgumentException(
-          "Sketch version is " + version + ". Only version 1 is supported.");
+          "Sketch version is " + version + ". Only versions 1, 2 and 3 are supported.");
     }
 
-    for (int i = 0; i < NUM_REGISTERS; i++) {
-      registers[i] = inputBuffer.getShort();
+    if (version == BetaMinHash.VERSION_SPARSE) {
+      SparseShortRegisters sparseRegisters = new SparseShortRegisters();
+      int numSparseRegisters = inputBuffer.getInt();
+      if (numSparseRegisters < 0
+          || numSparseRegisters > SparseShortRegisters.MAX_SPARSE_REGISTERS) {
+        throw new IllegalArgumentException(
+            "Sparse sketch has too many registers: " + numSparseRegisters);
+      }
+      int previousIndex = -1;
+      for (int i = 0; i < numSparseRegisters; i++) {
+        short index = inputBuffer.getShort();
+        short register = inputBuffer.getShort();
+        // set registers are written once each, in increasing order of index
+        if (index <= previousIndex || index >= NUM_REGISTERS) {
+          throw new IllegalArgumentException(
+              "Sparse register index " + index + " is out of order or out of bounds");
+        }
+        if (register == 0) {
+          throw new IllegalArgumentException("Sparse register " + index + " isn't set");
+        }
+        sparseRegisters.set(index, register);
+        previousIndex = index;
+      }
+      return new SparseBetaMinHash(sparseRegisters, hasher);
     }
 
-    return BetaMinHash.wrapRegisters(registers);
+    if (view) {
+      return new BetaMinHashView(inputBuffer, hasher);
+    }
+
+    short[] registers = new short[NUM_REGISTERS];
+    inputBuffer.asShortBuffer().get(registers);
+    return BetaMinHash.wrapRegisters(registers, hasher);
   }
 
   @Override
   public byte[] toBytes(BetaMinHash sketch) {
     ByteBuffer byteBuffer = ByteBuffer.allocate(sizeInBytes(sketch));
     byteBuffer.put(SerializationTokens.getTokenForClass(BetaMinHash.class).get());
-    byteBuffer.put(BetaMinHash.VERSION);
-    for (short s : sketch.registers) {
-      byteBuffer.putShort(s);
+    if (sketch.sparseRegisters != null) {
+      int[] packedRegisters = sketch.sparseRegisters.sortedPackedRegisters();
+      byteBuffer.put(BetaMinHash.VERSION_SPARSE);
+      byteBuffer.put(HyperMinHashSerDe.getHasherSerdeToken(sketch.hasher));
+      byteBuffer.putInt(packedRegisters.length);
+      for (int packedRegister : packedRegisters) {
+        byteBuffer.putShort((short) ((packedRegister >>> Short.SIZE) - 1)); // index
+        byteBuffer.putShort((short) packedRegister); // register
+      }
+      return byteBuffer.array();
+    }
+
+    if (sketch.hasher instanceof Murmur3Hasher128) {
+      byteBuffer.put(BetaMinHash.VERSION);
+    } else {
+      byteBuffer.put(BetaMinHash.VERSION_WITH_HASHER);
+      byteBuffer.put(HyperMinHashSerDe.getHasherSerdeToken(sketch.hasher));
+    }
+    for (int i = 0; i < NUM_REGISTERS; i++) {
+      byteBuffer.putShort(sketch.getRegister(i));
     }
     return byteBuffer.array();
   }
 
   @Override
   public int sizeInBytes(BetaMinHash sketch) {
+    if (sketch.sparseRegisters != null) {
+      return Byte.BYTES + // serde token
+          Byte.BYTES + // version
+          Byte.BYTES + // hasher serde token
+          Integer.BYTES + // num sparse registers
+          sketch.sparseRegisters.size() * 2 * Short.BYTES; // index and value of set registers
+    }
+
     return Byte.BYTES + // serde token
         Byte.BYTES + // version
+        (sketch.hasher instanceof Murmur3Hasher128 ? 0 : Byte.BYTES) + // hasher serde token
         NUM_REGISTERS * Short.BYTES; // size of registers
   }
 }
@@ -0,0 +1,96 @@
+package com.liveramp.hyperminhash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * A read-only {@link BetaMinHash} whose registers are read straight from a serialized sketch, see
+ * {@link BetaMinHashSerde#view(ByteBuffer)}. Offers throw an {@link
+ * UnsupportedOperationException}, and so does merging into it. Deep copies, and so unions which
+ * start with a view, are plain BetaMinHash sketches on the heap.
+ *
+ * <p>Since the registers can't change, a view may be read by any number of threads at once, as
+ * long as the contents of its buffer don't change either.
+ */
+class BetaMinHashView extends BetaMinHash {
+
+  // holds exactly the registers, from position 0
+  private final ShortBuffer view;
+
+  /**
+   * @param registers holds the registers, big-endian, from its current position on. Its position
+   *                  and limit aren't changed.
+   */
+  BetaMinHashView(ByteBuffer registers, Hasher128 hasher) {
+    this(slice(registers), hasher);
+  }
+
+  private BetaMinHashView(ShortBuffer view, Hasher128 hasher) {
+    super(null, null, countLeadingZeros(view), hasher);
+    this.view = view;
+  }
+
+  private static ShortBuffer slice(ByteBuffer buffer) {
+    final int numBytes = NUM_REGISTERS * Short.BYTES;
+    if (buffer.remaining() < numBytes) {
+      throw new IllegalArgumentException(
+          "Expected " + numBytes + " bytes of registers, but only " + buffer.remaining()
+              + " remain");
+    }
+    final ByteBuffer slice = buffer.slice();
+    slice.limit(numBytes);
+    return slice.order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+  }
+
+  // a BetaMinHash only has 2^14 registers, so they're counted right away
+  private static RegisterHistogram countLeadingZeros(ShortBuffer view) {
+    final RegisterHistogram leadingZeroCounts =
+        new RegisterHistogram(BetaMinHashCardinalityGetter.NUM_BUCKETS);
+    for (int i = 0; i < NUM_REGISTERS; i++) {
+      leadingZeroCounts.add(BetaMinHashCardinalityGetter.bucket(view.get(i)));
+    }
+    return leadingZeroCounts;
+  }
+
+  @Override
+  short getRegister(int registerIndex) {
+    return view.get(registerIndex);
+  }
+
+  @Override
+  void setRegister(int registerIndex, short register) {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean offerHash(long hllHalf, long minHashHalf) {
+    throw readOnly();
+  }
+
+  @Override
+  public int offerAll(long[] values) {
+    throw readOnly();
+  }
+
+  @Override
+  public int offerAll(byte[][] values) {
+    throw readOnly();
+  }
+
+  @Override
+  public int offerAll(ByteBuffer data, int[] offsets) {
+    throw readOnly();
+  }
+
+  private static UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException("A BetaMinHash read from a buffer can't be updated");
+  }
+
+  @Override
+  public BetaMinHash deepCopy() {
+    final short[] registers = new short[NUM_REGISTERS];
+    view.duplicate().get(registers);
+    return new BetaMinHash(registers, null, leadingZeroCounts.copy(), hasher);
+  }
+}
@@ -0,0 +1,167 @@
+package com.liveramp.hyperminhash;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Raw estimates and their biases for one precision, which HyperLogLog estimates are bias corrected
+ * with by linear interpolation between the closest two raw estimates.
+ *
+ * <p>Data from "Appendix to HyperLogLog in Practice: Algorithmic Engineering of a State of the Art
+ * Cardinality Estimation Algorithm." by Stefan Heule, Marc Nunkesser, and Alexander Hall.
+ * https://docs.google.com/document/d/1gyjfMHy43U9OWBXxfaeG-3MjGzejW1dlpyMwEYAAWEI/view?fullscreen#
+ *
+ * <p>We can re-use this bias data because our registers track the number of leading zeroes in the
+ * first 64 - p bits in the hash, which is analogous to to tracking the number of leading zeroes in
+ * 64 - p least significant bits in a 64 bit hash, as HLL++ does.
+ *
+ * <p>The data for each precision from {@link #MIN_P} to {@link #MAX_P} is in its own resource,
+ * {@code bias-correction-<p>.bin}, which is only read the first time an estimate at that precision
+ * is bias corrected. It holds the number of raw estimates as an int, then the raw estimates in the
+ * order of the paper's table, then their biases, as written by {@link java.io.DataOutputStream}.
+ * The resources are generated from the paper's tables, which are checked in as a test resource,
+ * by {@code BiasCorrectionTables} under src/test.
+ */
+final class BiasCorrection {
+
+  static final int MIN_P = 4;
+  static final int MAX_P = 18;
+
+  private static final AtomicReferenceArray<BiasCorrection> loaded =
+      new AtomicReferenceArray<>(MAX_P - MIN_P + 1);
+
+  // raw estimates and their biases in the order of the paper's table. Visible for testing.
+  final double[] rawEstimates;
+  final double[] biases;
+
+  // the raw estimates sorted, so that the two closest to an estimate are found with a binary search
+  private final double[] sortedRawEstimates;
+  // sorted raw estimates minus their biases
+  private final double[] sortedCorrectedEstimates;
+  // index of each sorted raw estimate in the table. Of the raw estimates at the same distance from
+  // an estimate, the one which comes last in the table is used.
+  private final int[] tableIndexes;
+
+  /**
+   * @return the bias correction for {@code p}, which is read the first time it's needed
+   */
+  static BiasCorrection forPrecision(int p) {
+    final BiasCorrection cached = loaded.get(p - MIN_P);
+    if (cached != null) {
+      return cached;
+    }
+
+    // threads which load the same precision at once read the same data, so any of them can win
+    loaded.compareAndSet(p - MIN_P, null, load(p));
+    return loaded.get(p - MIN_P);
+  }
+
+  private static BiasCorrection load(int p) {
+    final String name = "bias-correction-" + p + ".bin";
+    try (InputStream resource = BiasCorrection.class.getResourceAsStream(name)) {
+      if (resource == null) {
+        throw new IllegalStateException("Missing bias correction data " + name);
+      }
+
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(resource));
+      final double[] rawEstimates = new double[in.readInt()];
+      for (int i = 0; i < rawEstimates.length; i++) {
+        rawEstimates[i] = in.readDouble();
+      }
+      final double[] biases = new double[rawEstimates.length];
+      for (int i = 0; i < biases.length; i++) {
+        biases[i] = in.readDouble();
+      }
+      return new BiasCorrection(rawEstimates, biases);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  BiasCorrection(double[] rawEstimates, double[] biases) {
+    this.rawEstimates = rawEstimates;
+    this.biases = biases;
+
+    // An insertion sort of the indexes by raw estimate. It keeps equal raw estimates in the order
+    // of the table, and is quick for the table's rows, which are nearly sorted.
+    final int[] order = new int[rawEstimates.length];
+    for (int i = 0; i < order.length; i++) {
+      int j = i;
+      while (j > 0 && rawEstimates[order[j - 1]] > rawEstimates[i]) {
+        order[j] = order[j - 1];
+        j--;
+      }
+      order[j] = i;
+    }
+
+    // equal raw estimates are always at the same distance from an estimate, so only the last
+    // of them in the table is kept
+    int numDistinct = 0;
+    for (int i = 0; i < order.length; i++) {
+      if (i + 1 == order.length || rawEstimates[order[i]] != rawEstimates[order[i + 1]]) {
+        order[numDistinct++] = order[i];
+      }
+    }
+
+    this.sortedRawEstimates = new double[numDistinct];
+    this.sortedCorrectedEstimates = new double[numDistinct];
+    this.tableIndexes = new int[numDistinct];
+    for (int i = 0; i < numDistinct; i++) {
+      this.sortedRawEstimates[i] = rawEstimates[order[i]];
+      this.sortedCorrectedEstimates[i] = rawEstimates[order[i]] - biases[order[i]];
+      this.tableIndexes[i] = order[i];
+    }
+  }
+
+  /**
+   * @return {@code estimate} corrected by the bias interpolated from the closest two raw estimates
+   */
+  double correct(long estimate) {
+    int insertionPoint = Arrays.binarySearch(sortedRawEstimates, estimate);
+    if (insertionPoint < 0) {
+      insertionPoint = -insertionPoint - 1;
+    }
+
+    // Raw estimates get farther from the estimate the farther they are from where it would be
+    // inserted, so the closest two are among the two on either side of that.
+    final int from = Math.max(0, insertionPoint - 2);
+    final int to = Math.min(sortedRawEstimates.length, insertionPoint + 2);
+    int closest = -1;
+    int secondClosest = -1;
+    double minDiff = Double.POSITIVE_INFINITY;
+    double secondMinDiff = Double.POSITIVE_INFINITY;
+    for (int i = from; i < to; i++) {
+      final double diff = Math.abs(estimate - sortedRawEstimates[i]);
+      if (diff < minDiff) {
+        secondClosest = closest;
+        secondMinDiff = minDiff;
+        closest = i;
+        minDiff = diff;
+      } else if (diff == minDiff) {
+        if (tableIndexes[i] > tableIndexes[closest]) {
+          closest = i;
+        }
+      } else if (diff < secondMinDiff
+          || (diff == secondMinDiff && tableIndexes[i] > tableIndexes[secondClosest])) {
+        secondClosest = i;
+        secondMinDiff = diff;
+      }
+    }
+
+    final int first = Math.min(closest, secondClosest);
+    final int second = Math.max(closest, secondClosest);
+
+    // Both of the closest raw estimates can be on the same side of the estimate, in which case it
+    // is extrapolated along the same line rather than interpolated.
+    final double x1 = sortedRawEstimates[first];
+    final double x2 = sortedRawEstimates[second];
+    final double y1 = sortedCorrectedEstimates[first];
+    final double y2 = sortedCorrectedEstimates[second];
+    return (estimate - x1) * ((y2 - y1) / (x2 - x1)) + y1;
+  }
+}
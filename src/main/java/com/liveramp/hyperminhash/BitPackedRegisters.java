@@ -0,0 +1,202 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Registers which take exactly 6 + r bits each, the 6 bits of the position of the first one and
+ * the r bits of the mantissa, packed back to back into a long[]. A register may straddle two
+ * longs. With p = 15 and r = 20, they take 104 KB instead of the 128 KB of {@link IntRegisters}.
+ *
+ * <p>Each register is read and written with a shift and a mask of one long, or of two when it
+ * straddles them, so they're a little slower to update than array elements.
+ */
+class BitPackedRegisters implements Registers<BitPackedRegisters> {
+
+  final long[] words;
+  private final int p;
+  private final int r;
+  // bits per register, which is less than 64 since r is at most 57
+  private final int width;
+  private final long mask;
+  private final RegisterHistogram positions;
+
+  BitPackedRegisters(int p, int r) {
+    this(
+        p,
+        r,
+        new long[numWords(p, r)],
+        RegisterHistogram.ofEmptyRegisters(NUM_POSITIONS, 1 << p));
+  }
+
+  BitPackedRegisters(int p, int r, long[] words) {
+    this(p, r, words, null);
+  }
+
+  /**
+   * @param positions histogram of the registers in {@code words}, or null to count it
+   */
+  private BitPackedRegisters(int p, int r, long[] words, RegisterHistogram positions) {
+    if (words.length != numWords(p, r)) {
+      throw new IllegalArgumentException(
+          "Expected " + numWords(p, r) + " words of registers, but there are " + words.length);
+    }
+
+    this.p = p;
+    this.r = r;
+    this.width = 6 + r;
+    this.mask = (1L << width) - 1;
+    this.words = words;
+    this.positions = positions != null ? positions : countPositions();
+  }
+
+  /**
+   * @return the number of longs which hold the 2^p registers of 6 + r bits
+   */
+  static int numWords(int p, int r) {
+    return Math.toIntExact((((long) (6 + r) << p) + Long.SIZE - 1) >>> 6);
+  }
+
+  private long get(int registerIndex) {
+    final long bitIndex = (long) registerIndex * width;
+    final int word = (int) (bitIndex >>> 6);
+    final int shift = (int) bitIndex & (Long.SIZE - 1);
+    long register = words[word] >>> shift;
+    if (shift + width > Long.SIZE) {
+      // the rest of the register is in the low bits of the next word
+      register |= words[word + 1] << (Long.SIZE - shift);
+    }
+    return register & mask;
+  }
+
+  private void set(int registerIndex, long currentRegister, long incomingRegister) {
+    final long bitIndex = (long) registerIndex * width;
+    final int word = (int) (bitIndex >>> 6);
+    final int shift = (int) bitIndex & (Long.SIZE - 1);
+    words[word] = (words[word] & ~(mask << shift)) | (incomingRegister << shift);
+    if (shift + width > Long.SIZE) {
+      final int lowBits = Long.SIZE - shift;
+      words[word + 1] =
+          (words[word + 1] & ~(mask >>> lowBits)) | (incomingRegister >>> lowBits);
+    }
+    positions.move(
+        LongPacker.unpackPositionOfFirstOne(currentRegister, r),
+        LongPacker.unpackPositionOfFirstOne(incomingRegister, r));
+  }
+
+  @Override
+  public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
+    final long currentRegister = get(registerIndex);
+    if (!LongRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+      return false;
+    }
+
+    set(registerIndex, currentRegister, incomingRegister);
+    return true;
+  }
+
+  @Override
+  public int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    int numChanged = 0;
+    for (int i = 0; i < length; i++) {
+      final int registerIndex = registerIndexes[i];
+      final long incomingRegister = incomingRegisters[i];
+      final long currentRegister = get(registerIndex);
+      if (LongRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(registerIndex, currentRegister, incomingRegister);
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  @Override
+  public void mergeFrom(Registers<?> other, int fromIndex, int toIndex) {
+    if (!(other instanceof BitPackedRegisters)) {
+      Registers.super.mergeFrom(other, fromIndex, toIndex);
+      return;
+    }
+
+    final BitPackedRegisters otherRegisters = (BitPackedRegisters) other;
+    for (int i = fromIndex; i < toIndex; i++) {
+      final long incomingRegister = otherRegisters.get(i);
+      final long currentRegister = get(i);
+      if (LongRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(i, currentRegister, incomingRegister);
+      }
+    }
+  }
+
+  @Override
+  public long getRegisterAtIndex(int index) {
+    return get(index);
+  }
+
+  @Override
+  public BitPackedRegisters deepCopy() {
+    return new BitPackedRegisters(p, r, Arrays.copyOf(words, words.length), positions.copy());
+  }
+
+  @Override
+  public int getNumRegisters() {
+    return 1 << p;
+  }
+
+  @Override
+  public int getPositionOfFirstOneAtRegister(int index) {
+    return LongPacker.unpackPositionOfFirstOne(get(index), r);
+  }
+
+  @Override
+  public long getMantissaAtRegister(int index) {
+    return LongPacker.unpackMantissa(get(index), r);
+  }
+
+  @Override
+  public int getNumZeroRegisters() {
+    // only empty registers have no first one
+    return positions.count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    return positions;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder registers = new StringBuilder("[");
+    for (int i = 0; i < getNumRegisters(); i++) {
+      if (i > 0) {
+        registers.append(", ");
+      }
+      registers.append(get(i));
+    }
+    return "BitPackedRegisters{" +
+        "registers=" + registers.append(']') +
+        ", p=" + p +
+        ", r=" + r +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    BitPackedRegisters that = (BitPackedRegisters) o;
+    return p == that.p &&
+        r == that.r &&
+        Arrays.equals(words, that.words);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Objects.hash(p, r);
+    result = 31 * result + Arrays.hashCode(words);
+    return result;
+  }
+}
@@ -0,0 +1,194 @@
+package com.liveramp.hyperminhash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Read-only registers which are read straight from a buffer holding them in the layout of {@link
+ * HyperMinHashSerDe}: bytes, shorts, ints or longs, big-endian. The buffer may be a
+ * {@link java.nio.MappedByteBuffer}, so that registers are only paged in when they're read.
+ *
+ * <p>Nothing is copied up front. The histogram of positions is counted the first time it's
+ * needed, which reads every register once. Since the registers can't change, they may be read by
+ * any number of threads at once, as long as the contents of the buffer don't change either.
+ */
+class ByteBufferRegisters implements Registers<ByteBufferRegisters> {
+
+  private final int p;
+  private final int r;
+  // the width of each register, as a shift of the register index
+  private final int shift;
+  // holds exactly the registers, from position 0
+  private final ByteBuffer registers;
+  // counted on first use
+  private volatile RegisterHistogram positions;
+
+  /**
+   * @param registerBytes the size of each register, which is 1, 2, 4 or 8
+   * @param registers     holds the 2^p registers of a sketch with the given p and r, from its
+   *                      current position on. Its position and limit aren't changed.
+   */
+  ByteBufferRegisters(int p, int r, int registerBytes, ByteBuffer registers) {
+    this(
+        p,
+        r,
+        Integer.numberOfTrailingZeros(registerBytes),
+        slice(registers, (1 << p) * registerBytes),
+        null);
+  }
+
+  private ByteBufferRegisters(
+      int p,
+      int r,
+      int shift,
+      ByteBuffer registers,
+      RegisterHistogram positions) {
+    this.p = p;
+    this.r = r;
+    this.shift = shift;
+    this.registers = registers;
+    this.positions = positions;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int numBytes) {
+    if (buffer.remaining() < numBytes) {
+      throw new IllegalArgumentException(
+          "Expected " + numBytes + " bytes of registers, but only " + buffer.remaining()
+              + " remain");
+    }
+    final ByteBuffer slice = buffer.slice();
+    slice.limit(numBytes);
+    return slice.order(ByteOrder.BIG_ENDIAN);
+  }
+
+  /**
+   * @return registers holding the same values as these, on the heap, which can be updated
+   */
+  Registers<?> copyToHeap() {
+    final ByteBuffer buffer = registers.duplicate();
+    if (shift == 3) {
+      final long[] values = new long[1 << p];
+      buffer.asLongBuffer().get(values);
+      return new LongRegisters(p, r, values);
+    } else if (shift == 2) {
+      final int[] values = new int[1 << p];
+      buffer.asIntBuffer().get(values);
+      return HyperMinHashSerDe.intRegisters(p, r, values);
+    } else if (shift == 1) {
+      final short[] values = new short[1 << p];
+      buffer.asShortBuffer().get(values);
+      return new ShortRegisters(p, r, values);
+    }
+    final byte[] values = new byte[1 << p];
+    buffer.get(values);
+    return new ByteRegisters(p, r, values);
+  }
+
+  @Override
+  public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
+    throw new UnsupportedOperationException("Registers read from a buffer can't be updated");
+  }
+
+  @Override
+  public int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    throw new UnsupportedOperationException("Registers read from a buffer can't be updated");
+  }
+
+  @Override
+  public void mergeFrom(Registers<?> other, int fromIndex, int toIndex) {
+    throw new UnsupportedOperationException("Registers read from a buffer can't be updated");
+  }
+
+  @Override
+  public long getRegisterAtIndex(int index) {
+    switch (shift) {
+      case 3:
+        return registers.getLong(index << 3);
+      case 2:
+        return registers.getInt(index << 2);
+      case 1:
+        return Short.toUnsignedLong(registers.getShort(index << 1));
+      default:
+        return Byte.toUnsignedLong(registers.get(index));
+    }
+  }
+
+  /**
+   * @return registers reading the same buffer, since these can't change
+   */
+  @Override
+  public ByteBufferRegisters deepCopy() {
+    return new ByteBufferRegisters(p, r, shift, registers.duplicate(), positions);
+  }
+
+  @Override
+  public int getNumRegisters() {
+    return 1 << p;
+  }
+
+  @Override
+  public int getPositionOfFirstOneAtRegister(int index) {
+    return LongPacker.unpackPositionOfFirstOne(getRegisterAtIndex(index), r);
+  }
+
+  @Override
+  public long getMantissaAtRegister(int index) {
+    return LongPacker.unpackMantissa(getRegisterAtIndex(index), r);
+  }
+
+  @Override
+  public int getNumZeroRegisters() {
+    // only empty registers have no first one
+    return getPositionHistogram().count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    RegisterHistogram histogram = positions;
+    if (histogram == null) {
+      // threads which race here count the same histogram
+      histogram = countPositions();
+      positions = histogram;
+    }
+    return histogram;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder values = new StringBuilder("[");
+    for (int i = 0; i < getNumRegisters(); i++) {
+      if (i > 0) {
+        values.append(", ");
+      }
+      values.append(getRegisterAtIndex(i));
+    }
+    return "ByteBufferRegisters{" +
+        "registers=" + values.append(']') +
+        ", p=" + p +
+        ", r=" + r +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ByteBufferRegisters that = (ByteBufferRegisters) o;
+    // ByteBuffer.equals compares the remaining bytes, which are all of them
+    return p == that.p &&
+        r == that.r &&
+        registers.equals(that.registers);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Objects.hash(p, r);
+    result = 31 * result + registers.hashCode();
+    return result;
+  }
+}
@@ -0,0 +1,58 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * A {@link HyperMinHash} which many threads can offer values to at once, without locking. Each
+ * register is raised with a compare-and-set loop that keeps the ordering of {@link
+ * Registers#updateIfGreaterThan(int, long)}, so the sketch ends up exactly as if the values had
+ * been offered one after the other. Each thread hashes into its own buffers.
+ *
+ * <p>Reads such as {@link #cardinality()}, serialization and the {@link HyperMinHashCombiner}
+ * operations may run concurrently with offers. They see every register atomically, but offers that
+ * race with the read may or may not be reflected in the result.
+ *
+ * <p>A serialized ConcurrentHyperMinHash has the same layout as a {@link HyperMinHash} with the
+ * same parameters, and is deserialized as a plain {@link HyperMinHash}.
+ */
+public class ConcurrentHyperMinHash extends HyperMinHash {
+
+  private final ThreadLocal<long[]> hashBuffers = ThreadLocal.withInitial(() -> new long[2]);
+  private final ThreadLocal<OfferBuffers> offerBuffers = new ThreadLocal<>();
+
+  /**
+   * @param p HLL precision parameter
+   * @param r Number of MinHash bits to keep
+   */
+  public ConcurrentHyperMinHash(int p, int r) {
+    this(p, r, Murmur3Hasher128.getInstance());
+  }
+
+  /**
+   * @param p      HLL precision parameter
+   * @param r      Number of MinHash bits to keep
+   * @param hasher hash function applied to offered values
+   */
+  public ConcurrentHyperMinHash(int p, int r, Hasher128 hasher) {
+    this(p, r, Registers.newAtomicRegisters(p, r), hasher);
+  }
+
+  ConcurrentHyperMinHash(int p, int r, Registers<?> registers, Hasher128 hasher) {
+    super(p, r, registers, hasher);
+  }
+
+  @Override
+  long[] getHashBuffer() {
+    return hashBuffers.get();
+  }
+
+  @Override
+  OfferBuffers getOfferBuffers(int blockSize) {
+    final OfferBuffers buffers = OfferBuffers.atLeast(offerBuffers.get(), blockSize);
+    offerBuffers.set(buffers);
+    return buffers;
+  }
+
+  @Override
+  public ConcurrentHyperMinHash deepCopy() {
+    return new ConcurrentHyperMinHash(p, r, registers.deepCopy(), hasher);
+  }
+}
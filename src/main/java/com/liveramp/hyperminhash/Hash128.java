@@ -0,0 +1,73 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * A 128-bit hash value, split into the two 64-bit halves that {@link
+ * IntersectionSketch#offerHash(long, long)} consumes. This class doesn't depend on any particular
+ * hash function, so values hashed elsewhere (e.g. by a producer that already computes Murmur3
+ * hashes for partitioning) can be handed to a sketch without being hashed again.
+ */
+public final class Hash128 {
+
+  private final long hllHalf;
+  private final long minHashHalf;
+
+  /**
+   * @param hllHalf     the first 64 bits of the hash
+   * @param minHashHalf the last 64 bits of the hash
+   */
+  public Hash128(long hllHalf, long minHashHalf) {
+    this.hllHalf = hllHalf;
+    this.minHashHalf = minHashHalf;
+  }
+
+  /**
+   * @param hash the two longs returned by {@link Murmur3#hash128(byte[])}
+   */
+  public static Hash128 of(long[] hash) {
+    if (hash.length != 2) {
+      throw new IllegalArgumentException("Expected exactly 2 longs, but there are " + hash.length);
+    }
+
+    return new Hash128(hash[0], hash[1]);
+  }
+
+  /**
+   * @return the first 64 bits of the hash
+   */
+  public long getHllHalf() {
+    return hllHalf;
+  }
+
+  /**
+   * @return the last 64 bits of the hash
+   */
+  public long getMinHashHalf() {
+    return minHashHalf;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    Hash128 that = (Hash128) o;
+    return hllHalf == that.hllHalf && minHashHalf == that.minHashHalf;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(hllHalf) + Long.hashCode(minHashHalf);
+  }
+
+  @Override
+  public String toString() {
+    return "Hash128{" +
+        "hllHalf=" + hllHalf +
+        ", minHashHalf=" + minHashHalf +
+        '}';
+  }
+}
@@ -0,0 +1,79 @@
+package com.liveramp.hyperminhash;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A 128-bit hash function used by a sketch to turn offered values into the two 64-bit halves
+ * consumed by {@link IntersectionSketch#offerHash(long, long)}. The hasher is fixed when a sketch
+ * is constructed and is recorded when the sketch is serialized, since sketches built with different
+ * hashers can't be meaningfully combined.
+ *
+ * <p>Implementations must be stateless and thread-safe. Every overload must write the same hash
+ * as {@link #hash128(byte[], int, int, long[], int)} does on the documented encoding of its input,
+ * so implementations should only override the defaults to avoid allocating.
+ *
+ * <p>Sketches may use any implementation, but only sketches which use {@link Murmur3Hasher128} or
+ * {@link Xxh3Hasher128} can be serialized with {@link HyperMinHashSerDe} and {@link
+ * BetaMinHashSerde}, which throw an {@link IllegalArgumentException} for other hashers.
+ */
+public interface Hasher128 {
+
+  /**
+   * Hashes {@code length} bytes of {@code data} starting at {@code offset}, writing the 2 longs of
+   * the hash to {@code out} at {@code outOffset}.
+   */
+  void hash128(byte[] data, int offset, int length, long[] out, int outOffset);
+
+  /**
+   * Hashes the bytes of {@code data} between the absolute indexes {@code offset} and {@code offset
+   * + length}. The position, limit and byte order of the buffer are ignored and left unchanged.
+   */
+  default void hash128(ByteBuffer data, int offset, int length, long[] out, int outOffset) {
+    if (data.hasArray()) {
+      hash128(data.array(), data.arrayOffset() + offset, length, out, outOffset);
+      return;
+    }
+
+    final byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = data.get(offset + i);
+    }
+    hash128(bytes, 0, length, out, outOffset);
+  }
+
+  /**
+   * Hashes the 8 bytes of {@code value} in big-endian order.
+   */
+  default void hash128(long value, long[] out, int outOffset) {
+    hash128(ByteBuffer.allocate(Long.BYTES).putLong(value).array(), 0, Long.BYTES, out, outOffset);
+  }
+
+  /**
+   * Hashes the 4 bytes of {@code value} in big-endian order.
+   */
+  default void hash128(int value, long[] out, int outOffset) {
+    hash128(
+        ByteBuffer.allocate(Integer.BYTES).putInt(value).array(), 0, Integer.BYTES, out, outOffset);
+  }
+
+  /**
+   * Hashes the 8 bytes of {@code mostSigBits} followed by the 8 bytes of {@code leastSigBits}, both
+   * in big-endian order.
+   */
+  default void hash128(long mostSigBits, long leastSigBits, long[] out, int outOffset) {
+    final byte[] bytes = ByteBuffer.allocate(2 * Long.BYTES)
+        .putLong(mostSigBits)
+        .putLong(leastSigBits)
+        .array();
+    hash128(bytes, 0, bytes.length, out, outOffset);
+  }
+
+  /**
+   * Hashes the UTF-8 encoding of {@code value}.
+   */
+  default void hash128(CharSequence value, long[] out, int outOffset) {
+    final byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+    hash128(bytes, 0, bytes.length, out, outOffset);
+  }
+}
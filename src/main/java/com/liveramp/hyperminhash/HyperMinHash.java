@@ -1,9 +1,17 @@
 package com.liveramp.hyperminhash;
 
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
 public class HyperMinHash implements IntersectionSketch<HyperMinHash> {
 
-  // used in serialization
+  // used in serialization. Sketches hashed with Murmur3 are written as version 1, which predates
+  // configurable hashers, so that they stay readable by older versions of this library.
   static final byte VERSION = 1;
+  static final byte VERSION_WITH_HASHER = 2;
+
+  // number of values hashed by offerAll before the registers are updated with their hashes
+  private static final int OFFER_BLOCK_SIZE = 1024;
 
   /* There are 2^p registers. Per the HyperMinHash algorithm, hashes are bucketed based on the value
    * of their bitstring's first p bits. The r least significant bits in the bitstring in are stored
@@ -13,22 +21,41 @@ public class HyperMinHash implements IntersectionSketch<HyperMinHash> {
    * significant bits i.e. number of leading zeroes is stored in bits r through r + q - 1 of the
    * long.
    */
-  final Registers registers;
+  final Registers<?> registers;
   final int p; // must be at least 4
   // This is 2^q + 1 in the HMH paper. We use this to represent the space that we're searching for a
   // leading zero.
   final int numZeroSearchBits;
   final int r;
+  // Hashes offered values. Sketches can only be combined if they use the same hasher.
+  final Hasher128 hasher;
+
+  // Receives the hash of each offered value. Like the registers, this is not thread-safe, so it's
+  // only ever accessed through getHashBuffer().
+  private final long[] hashBuffer = new long[2];
+  // Receives the hashes of offerAll and their registers. It's allocated by the first call, as large
+  // as that call needs, so that sketches which are only offered one value at a time don't hold it.
+  // Only ever accessed through getOfferBuffers().
+  private OfferBuffers offerBuffers;
 
   /**
    * @param p HLL precision parameter
    * @param r Number of MinHash bits to keep
    */
   public HyperMinHash(int p, int r) {
-    this(p, r, Registers.newRegisters(p, r));
+    this(p, r, Murmur3Hasher128.getInstance());
+  }
+
+  /**
+   * @param p      HLL precision parameter
+   * @param r      Number of MinHash bits to keep
+   * @param hasher hash function applied to offered values
+   */
+  public HyperMinHash(int p, int r, Hasher128 hasher) {
+    this(p, r, Registers.newRegisters(p, r), hasher);
   }
 
-  HyperMinHash(int p, int r, Registers registers) {
+  HyperMinHash(int p, int r, Registers<?> registers, Hasher128 hasher) {
     // Ensure that the number of registers isn't larger than the largest array java can hold in
     // memory biggest java array can be of size Integer.MAX_VALUE
     if (!(p >= 4 && p < 31)) {
@@ -48,6 +75,7 @@ public class HyperMinHash implements IntersectionSketch<HyperMinHash> {
     this.numZeroSearchBits = Long.SIZE - p;
     this.r = r;
     this.registers = registers;
+    this.hasher = Objects.requireNonNull(hasher, "hasher");
   }
 
   @Override
@@ -57,32 +85,183 @@ public class HyperMinHash implements IntersectionSketch<HyperMinHash> {
 
   @Override
   public boolean offer(byte[] bytes) {
-    final long[] hash = Murmur3.hash128(bytes);
+    final long[] buffer = getHashBuffer();
+    hasher.hash128(bytes, 0, bytes.length, buffer, 0);
+    return offerHash(buffer[0], buffer[1]);
+  }
+
+  @Override
+  public boolean offer(byte[] bytes, int offset, int length) {
+    final long[] buffer = getHashBuffer();
+    hasher.hash128(bytes, offset, length, buffer, 0);
+    return offerHash(buffer[0], buffer[1]);
+  }
+
+  @Override
+  public boolean offer(ByteBuffer value) {
+    final long[] buffer = getHashBuffer();
+    hasher.hash128(value, value.position(), value.remaining(), buffer, 0);
+    return offerHash(buffer[0], buffer[1]);
+  }
+
+  @Override
+  public boolean offer(long value) {
+    final long[] buffer = getHashBuffer();
+    hasher.hash128(value, buffer, 0);
+    return offerHash(buffer[0], buffer[1]);
+  }
+
+  @Override
+  public boolean offer(int value) {
+    final long[] buffer = getHashBuffer();
+    hasher.hash128(value, buffer, 0);
+    return offerHash(buffer[0], buffer[1]);
+  }
+
+  @Override
+  public boolean offer(long mostSigBits, long leastSigBits) {
+    final long[] buffer = getHashBuffer();
+    hasher.hash128(mostSigBits, leastSigBits, buffer, 0);
+    return offerHash(buffer[0], buffer[1]);
+  }
+
+  @Override
+  public boolean offer(CharSequence value) {
+    final long[] buffer = getHashBuffer();
+    hasher.hash128(value, buffer, 0);
+    return offerHash(buffer[0], buffer[1]);
+  }
 
-    // the left half of the hash is used for HLL
-    final long hllHash = hash[0];
+  @Override
+  public boolean offer(Murmur3.IncrementalHash128 hash) {
+    hash.checkStarted();
+    if (!(hasher instanceof Murmur3Hasher128) || hash.seed != Murmur3.DEFAULT_SEED) {
+      throw new IllegalArgumentException(
+          "Incremental Murmur3 hashes with seed " + hash.seed + " can't be offered to a sketch "
+              + "which uses " + hasher.getClass().getSimpleName());
+    }
+
+    final long[] buffer = getHashBuffer();
+    hash.end(buffer, 0);
+    return offerHash(buffer[0], buffer[1]);
+  }
+
+  @Override
+  public int offerAll(long[] values) {
+    final OfferBuffers buffers = getOfferBuffers(Math.min(values.length, OFFER_BLOCK_SIZE));
+    final long[] hashes = buffers.hashes;
+
+    int numChanged = 0;
+    for (int start = 0; start < values.length; start += OFFER_BLOCK_SIZE) {
+      final int length = Math.min(OFFER_BLOCK_SIZE, values.length - start);
+      for (int i = 0; i < length; i++) {
+        hasher.hash128(values[start + i], hashes, i << 1);
+      }
+      numChanged += offerHashes(buffers, length);
+    }
+    return numChanged;
+  }
+
+  @Override
+  public int offerAll(byte[][] values) {
+    final OfferBuffers buffers = getOfferBuffers(Math.min(values.length, OFFER_BLOCK_SIZE));
+    final long[] hashes = buffers.hashes;
 
+    int numChanged = 0;
+    for (int start = 0; start < values.length; start += OFFER_BLOCK_SIZE) {
+      final int length = Math.min(OFFER_BLOCK_SIZE, values.length - start);
+      for (int i = 0; i < length; i++) {
+        final byte[] value = values[start + i];
+        hasher.hash128(value, 0, value.length, hashes, i << 1);
+      }
+      numChanged += offerHashes(buffers, length);
+    }
+    return numChanged;
+  }
+
+  @Override
+  public int offerAll(ByteBuffer data, int[] offsets) {
+    final int numValues = Math.max(offsets.length - 1, 0);
+    final OfferBuffers buffers = getOfferBuffers(Math.min(numValues, OFFER_BLOCK_SIZE));
+    final long[] hashes = buffers.hashes;
+
+    int numChanged = 0;
+    for (int start = 0; start < numValues; start += OFFER_BLOCK_SIZE) {
+      final int length = Math.min(OFFER_BLOCK_SIZE, numValues - start);
+      for (int i = 0; i < length; i++) {
+        final int offset = offsets[start + i];
+        final int valueLength = offsets[start + i + 1] - offset;
+        hasher.hash128(data, offset, valueLength, hashes, i << 1);
+      }
+      numChanged += offerHashes(buffers, length);
+    }
+    return numChanged;
+  }
+
+  /**
+   * @return the array which receives the hash of the value being offered. Subclasses which can be
+   * offered values from several threads at once override this to return a per-thread array.
+   */
+  long[] getHashBuffer() {
+    return hashBuffer;
+  }
+
+  /**
+   * @return arrays which hold at least {@code blockSize} hashes for offerAll. Subclasses which can
+   * be offered values from several threads at once override this to return per-thread arrays.
+   */
+  OfferBuffers getOfferBuffers(int blockSize) {
+    offerBuffers = OfferBuffers.atLeast(offerBuffers, blockSize);
+    return offerBuffers;
+  }
+
+  @Override
+  public boolean offerHash(long hllHalf, long minHashHalf) {
+    return registers.updateIfGreaterThan(
+        getRegisterIndex(hllHalf),
+        packRegister(hllHalf, minHashHalf));
+  }
+
+  /**
+   * Offers the first {@code length} hashes in {@code buffers}, whose halves are interleaved. The
+   * registers are computed for all hashes before any of them is applied, so that both steps run in
+   * tight loops.
+   *
+   * @return the number of hashes which changed a register
+   */
+  private int offerHashes(OfferBuffers buffers, int length) {
+    final long[] hashes = buffers.hashes;
+    final int[] registerIndexes = buffers.registerIndexes;
+    final long[] incomingRegisters = buffers.incomingRegisters;
+    for (int i = 0; i < length; i++) {
+      final long hllHalf = hashes[i << 1];
+      final long minHashHalf = hashes[(i << 1) + 1];
+      registerIndexes[i] = getRegisterIndex(hllHalf);
+      incomingRegisters[i] = packRegister(hllHalf, minHashHalf);
+    }
+    return registers.updateIfGreaterThan(registerIndexes, incomingRegisters, length);
+  }
+
+  private int getRegisterIndex(long hllHalf) {
     // Unsafely cast to int because we assume numZeroSearchBits > 32
-    final int registerIndex = (int) (hllHash >>> numZeroSearchBits);
+    return (int) (hllHalf >>> numZeroSearchBits);
+  }
 
+  private long packRegister(long hllHalf, long minHashHalf) {
     // zero out leftmost p bits and find position of leftmost one
     // We add a one to the right of the zero search space just in case the entire space is zeros
-    final long zeroSearchSpace = (hllHash << p) | (long) (1 << (p - 1));
+    final long zeroSearchSpace = (hllHalf << p) | (long) (1 << (p - 1));
     final int leftmostOnePosition = Long.numberOfLeadingZeros(zeroSearchSpace) + 1;
 
-    // the right half of the hash is used for min hash
-    final long hmhHash = hash[1];
     // We take the leftmost R bits as the minHash bits
-    final long minHashBits = hmhHash >>> (Long.SIZE - r);
-
-    final long incomingRegister = LongPacker.pack(leftmostOnePosition, minHashBits, r);
+    final long minHashBits = minHashHalf >>> (Long.SIZE - r);
 
-    return registers.updateIfGreaterThan(registerIndex, incomingRegister);
+    return LongPacker.pack(leftmostOnePosition, minHashBits, r);
   }
 
   @Override
   public HyperMinHash deepCopy() {
-    return new HyperMinHash(p, r, registers.deepCopy());
+    return new HyperMinHash(p, r, registers.deepCopy(), hasher);
   }
 
   @Override
@@ -105,6 +284,9 @@ public class HyperMinHash implements IntersectionSketch<HyperMinHash> {
     if (r != that.r) {
       return false;
     }
+    if (!hasher.equals(that.hasher)) {
+      return false;
+    }
 
     return this.registers.equals(that.registers);
   }
@@ -115,16 +297,46 @@ public class HyperMinHash implements IntersectionSketch<HyperMinHash> {
     result = 31 * result + p;
     result = 31 * result + numZeroSearchBits;
     result = 31 * result + r;
+    result = 31 * result + hasher.hashCode();
     return result;
   }
 
   @Override
   public String toString() {
-    return "HyperMinHash{" +
+    return getClass().getSimpleName() + "{" +
         "p=" + p +
         ", numZeroSearchBits=" + numZeroSearchBits +
         ", r=" + r +
+        ", hasher=" + hasher.getClass().getSimpleName() +
         ", registers=" + registers.toString() +
         '}';
   }
+
+  /**
+   * The hashes of a block of values offered by offerAll, and the register index and packed
+   * register of each of them.
+   */
+  static final class OfferBuffers {
+
+    final long[] hashes;
+    final int[] registerIndexes;
+    final long[] incomingRegisters;
+
+    private OfferBuffers(int blockSize) {
+      this.hashes = new long[2 * blockSize];
+      this.registerIndexes = new int[blockSize];
+      this.incomingRegisters = new long[blockSize];
+    }
+
+    /**
+     * @return {@code buffers} if it holds at least {@code blockSize} hashes, or else new buffers
+     * which do
+     */
+    static OfferBuffers atLeast(OfferBuffers buffers, int blockSize) {
+      if (buffers != null && buffers.registerIndexes.length >= blockSize) {
+        return buffers;
+      }
+      return new OfferBuffers(blockSize);
+    }
+  }
 }
@@ -0,0 +1,67 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * Expected number of registers in which {@link HyperMinHash} sketches of independent sets with the
+ * given cardinalities collide, as in algorithm 2.1.5 of the HyperMinHash paper. {@link
+ * HyperMinHashCombiner} can subtract these from the matching registers when estimating the
+ * similarity of two sketches.
+ *
+ * <p>The exact sum is over all 2^q * 2^r values a register can take, which is far too slow for the
+ * large r HyperMinHash allows. Algorithm 2.1.6 of the paper approximates it for two sketches, but
+ * its closed form is only accurate for large r and large cardinalities, and it falls back to the
+ * exact sum otherwise. {@link #approxExpectedCollisions} instead approximates (1 - b)^n by e^(-nb),
+ * for every one of the 2^q positions. The 2^r mantissas at a position are then evenly spaced in b,
+ * so the sum over them is a geometric series with a closed form. That leaves a sum of 2^q terms
+ * whatever r is. For p >= 4 and r <= 10, where the exact sum is quick enough to check against, it
+ * is within {@link #RELATIVE_TOLERANCE} of the exact sum, or within {@link #ABSOLUTE_TOLERANCE}
+ * registers of it when fewer than one collision is expected. Each further bit of r halves it, as
+ * it halves the exact sum.
+ */
+final class HyperMinHashCollisions {
+
+  static final double RELATIVE_TOLERANCE = 0.02;
+  static final double ABSOLUTE_TOLERANCE = 0.001;
+
+  // LongPacker stores the position of the first one in 6 bits
+  static final int Q = 6;
+
+  private HyperMinHashCollisions() {
+  }
+
+  /**
+   * @param n cardinality of the set represented by one sketch
+   * @param m cardinality of the set represented by the other
+   */
+  static double approxExpectedCollisions(int p, int r, double n, double m) {
+    // no register of an empty set can collide
+    if (n <= 0 || m <= 0) {
+      return 0;
+    }
+
+    final int numPositions = 1 << Q;
+    final double numMantissas = Math.scalb(1.0, r);
+    final double s = n + m;
+
+    double x = 0;
+    for (int i = 1; i <= numPositions; i++) {
+      // the mantissas at position i are the spaces of width delta above the lowest boundary b1
+      final double delta;
+      final double b1;
+      if (i != numPositions) {
+        delta = Math.scalb(1.0, -(p + r + i));
+        b1 = (numMantissas + 1) * delta;
+      } else {
+        delta = Math.scalb(1.0, -(p + r + i - 1));
+        b1 = delta;
+      }
+
+      // sum over j of (e^(-n b_j+1) - e^(-n b_j)) * (e^(-m b_j+1) - e^(-m b_j)), where
+      // b_j = b1 + (j - 1) * delta
+      x += Math.exp(-s * b1)
+          * Math.expm1(-n * delta)
+          * Math.expm1(-m * delta)
+          * (Math.expm1(-s * delta * numMantissas) / Math.expm1(-s * delta));
+    }
+    return Math.scalb(x, p);
+  }
+}
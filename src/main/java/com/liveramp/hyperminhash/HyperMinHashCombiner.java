@@ -1,134 +1,258 @@
 package com.liveramp.hyperminhash;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class HyperMinHashCombiner implements SketchCombiner<HyperMinHash> {
 
-  private static HyperMinHashCombiner instance = new HyperMinHashCombiner();
+  private static HyperMinHashCombiner instance = new HyperMinHashCombiner(false);
+  private static HyperMinHashCombiner collisionCorrectingInstance =
+      new HyperMinHashCombiner(true);
+
+  private final boolean correctCollisions;
 
   public static HyperMinHashCombiner getInstance() {
     return instance;
   }
 
-  private HyperMinHashCombiner() {
+  /**
+   * Returns a combiner which, unlike {@link #getInstance()}, subtracts the registers which two
+   * sketches are expected to have in common by chance from their matching registers when
+   * estimating their similarity and intersection. Without this, those estimates are biased upwards
+   * for small overlaps, especially with small r. The expected collisions are computed from the
+   * cardinalities of the two sets in O(2^q), with q = 6. Similarities of more than two sketches are
+   * not corrected.
+   *
+   * <p>The correction assumes that registers only match when both the position of the first one
+   * and the mantissa do, so corrected estimates count those matches, whereas {@link #getInstance()}
+   * counts registers whose mantissas match.
+   */
+  public static HyperMinHashCombiner getCollisionCorrectingInstance() {
+    return collisionCorrectingInstance;
+  }
+
+  private HyperMinHashCombiner(boolean correctCollisions) {
+    this.correctCollisions = correctCollisions;
   }
 
   @Override
   public HyperMinHash union(Collection<HyperMinHash> sketches) {
     assertInputNotEmpty(sketches);
     assertParamsAreEqual(sketches);
-    final HyperMinHash firstSketch = sketches.stream().findFirst().get();
-    if (sketches.size() == 1) {
-      return firstSketch.deepCopy();
-    }
 
+    final List<HyperMinHash> sketchList = new ArrayList<>(sketches);
+    return mergeInto(sketchList.get(0).deepCopy(), sketchList.subList(1, sketchList.size()));
+  }
+
+  @Override
+  public long unionCardinality(Collection<HyperMinHash> sketches) {
+    return unionCardinality(sketches.toArray(new HyperMinHash[0]));
+  }
+
+  /**
+   * Returns the same estimate as the cardinality of {@link #union(Collection)}, without building
+   * the union. Each of its registers is computed in turn and counted into a histogram for the
+   * cardinality estimator right away, so no memory is needed for them.
+   */
+  public long unionCardinality(HyperMinHash... sketches) {
+    assertInputNotEmpty(sketches);
+    assertParamsAreEqual(sketches);
+
+    final HyperMinHash firstSketch = sketches[0];
+    final int r = firstSketch.r;
     final int numRegisters = firstSketch.registers.getNumRegisters();
-    final HyperMinHash mergedSketch = firstSketch.deepCopy();
 
+    final RegisterHistogram unionPositions = new RegisterHistogram(Registers.NUM_POSITIONS);
     for (int i = 0; i < numRegisters; i++) {
-      for (HyperMinHash sketch : sketches) {
-
-        mergedSketch.registers.updateIfGreaterThan(i, sketch.registers.getRegisterAtIndex(i));
+      long unionRegister = firstSketch.registers.getRegisterAtIndex(i);
+      for (int j = 1; j < sketches.length; j++) {
+        final long register = sketches[j].registers.getRegisterAtIndex(i);
+        if (LongRegisters.isGreaterThan(register, unionRegister, r)) {
+          unionRegister = register;
+        }
       }
+
+      unionPositions.add(LongPacker.unpackPositionOfFirstOne(unionRegister, r));
     }
 
+    return HmhCardinalityEstimator.estimateCardinality(unionPositions, firstSketch.p);
+  }
+
+  /**
+   * Returns the same sketch as {@link #union(Collection)}, computed on the common {@link
+   * ForkJoinPool} with the default threshold of 64 sketches per task.
+   *
+   * @see #parallelUnion(Collection, ForkJoinPool, int)
+   */
+  public HyperMinHash parallelUnion(Collection<HyperMinHash> sketches) {
+    return parallelUnion(sketches, ForkJoinPool.commonPool(), ParallelUnion.DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Returns the same sketch as {@link #union(Collection)}, computed by tasks on {@code pool}. More
+   * than {@code threshold} sketches are unioned with a tree reduction, where each task merges at
+   * most {@code threshold} sketches. Fewer but large sketches, with p >= 20, are unioned by
+   * splitting their registers into ranges which are merged in parallel.
+   *
+   * @param pool      pool which runs the union
+   * @param threshold largest number of sketches merged sequentially by one task
+   */
+  public HyperMinHash parallelUnion(
+      Collection<HyperMinHash> sketches,
+      ForkJoinPool pool,
+      int threshold) {
+    assertInputNotEmpty(sketches);
+    assertParamsAreEqual(sketches);
+    ParallelUnion.checkThreshold(threshold);
+
+    final List<HyperMinHash> sketchList = new ArrayList<>(sketches);
+    final HyperMinHash firstSketch = sketchList.get(0);
+    final int numRegisters = firstSketch.registers.getNumRegisters();
+    if (!ParallelUnion.shouldSplitRegisters(sketchList.size(), numRegisters, threshold)) {
+      return ParallelUnion.treeUnion(
+          sketchList,
+          pool,
+          threshold,
+          HyperMinHash::deepCopy,
+          (union, sketch) -> union.registers.mergeFrom(sketch.registers),
+          // off-heap intermediate unions are freed right away rather than left for the cleaner
+          union -> {
+            if (union instanceof OffHeapHyperMinHash) {
+              ((OffHeapHyperMinHash) union).close();
+            }
+          });
+    }
+
+    final HyperMinHash mergedSketch = firstSketch.deepCopy();
+    // the ranges of sparse registers aren't independent, but those of dense registers are
+    if (mergedSketch.registers instanceof SparseRegisters) {
+      ((SparseRegisters) mergedSketch.registers).densify();
+    }
+    final List<Registers<?>> sources = new ArrayList<>(sketchList.size() - 1);
+    for (HyperMinHash sketch : sketchList.subList(1, sketchList.size())) {
+      sources.add(sketch.registers);
+    }
+    ParallelUnion.registerRangeUnion(mergedSketch.registers, sources, pool);
     return mergedSketch;
   }
 
+  /**
+   * Merges {@code sources} into {@code target} in place, so that {@code target} represents the
+   * union of its own set and theirs. Sources are merged one after the other, each with a single
+   * sequential pass over the registers, and are not mutated.
+   *
+   * @return {@code target}
+   */
+  public HyperMinHash mergeInto(HyperMinHash target, HyperMinHash... sources) {
+    return mergeInto(target, Arrays.asList(sources));
+  }
+
+  /**
+   * @see #mergeInto(HyperMinHash, HyperMinHash...)
+   */
+  public HyperMinHash mergeInto(HyperMinHash target, Collection<HyperMinHash> sources) {
+    // check every source before merging any of them, so target is left untouched on failure
+    for (HyperMinHash source : sources) {
+      assertParamsAreEqual(target, source);
+    }
+
+    for (HyperMinHash source : sources) {
+      target.registers.mergeFrom(source.registers);
+    }
+
+    return target;
+  }
+
   @Override
   public long intersectionCardinality(Collection<HyperMinHash> sketches) {
-    return (long) (union(sketches).cardinality() * similarity(sketches));
+    return overlap(sketches).intersectionCardinality();
   }
 
   @Override
   public double similarity(Collection<HyperMinHash> sketches) {
-    // TODO this similarity estimation does not take into account expected collisions
-    // because it is too slow in practice, and the approximation algorithm presented
-    // in algorithm 2.1.6 (Yu & Weber) does not generalize to more than 2 sketches
+    return overlap(sketches).similarity();
+  }
+
+  /**
+   * @see #overlap(HyperMinHash...)
+   */
+  public SketchOverlap overlap(Collection<HyperMinHash> sketches) {
+    return overlap(sketches.toArray(new HyperMinHash[0]));
+  }
 
-    // TODO make an abstract class that exposes a similarityInternal(registers, p,q,r)
-    // which is shared between combiners
+  /**
+   * Estimates the cardinality of the union, the Jaccard index and the cardinality of the
+   * intersection of the sets represented by {@code sketches} together, in a single scan of their
+   * registers and without building their union. The estimates are the same as those of {@link
+   * #union}, {@link #similarity} and {@link #intersectionCardinality}.
+   */
+  public SketchOverlap overlap(HyperMinHash... sketches) {
     // Algorithm 2.1.4 in HyperMinHash paper
     assertInputNotEmpty(sketches);
     assertParamsAreEqual(sketches);
 
-    if (sketches.size() == 1) {
-      return 1.0;
-    }
+    final HyperMinHash firstSketch = sketches[0];
+    final int r = firstSketch.r;
+    final int numRegisters = firstSketch.registers.getNumRegisters();
+    // algorithm 2.1.5 doesn't have a fast approximation for more than 2 sketches
+    final boolean correctCollisions = this.correctCollisions && sketches.length == 2;
 
+    // c and n of algorithm 2.1.4, and the histogram of the union's registers which the
+    // cardinality estimator needs
     long c = 0;
     long n = 0;
-    final HyperMinHash firstSketch = sketches.stream().findFirst().get();
-    long numRegisters = firstSketch.registers.getNumRegisters();
+    final RegisterHistogram unionPositions = new RegisterHistogram(Registers.NUM_POSITIONS);
     for (int i = 0; i < numRegisters; i++) {
-      if (firstSketch.registers.getRegisterAtIndex(i) != 0) {
-        boolean itemInIntersection = true;
-        for (HyperMinHash sketch : sketches) {
-          itemInIntersection = itemInIntersection &&
-              firstSketch.registers.getMantissaAtRegister(i) == sketch.registers
-                  .getMantissaAtRegister(i);
-        }
-
-        if (itemInIntersection) {
-          c++;
+      final long firstRegister = firstSketch.registers.getRegisterAtIndex(i);
+      final long firstMantissa = LongPacker.unpackMantissa(firstRegister, r);
+      boolean itemInIntersection = firstRegister != 0;
+      long unionRegister = firstRegister;
+      for (int j = 1; j < sketches.length; j++) {
+        final long register = sketches[j].registers.getRegisterAtIndex(i);
+        // the expected collisions assume that registers only match when both the position of the
+        // first one and the mantissa do
+        itemInIntersection = itemInIntersection && (correctCollisions
+            ? register == firstRegister
+            : LongPacker.unpackMantissa(register, r) == firstMantissa);
+        if (LongRegisters.isGreaterThan(register, unionRegister, r)) {
+          unionRegister = register;
         }
       }
 
-      for (HyperMinHash sketch : sketches) {
-        if (sketch.registers.getRegisterAtIndex(i) != 0) {
-          n++;
-          break;
-        }
+      if (itemInIntersection) {
+        c++;
       }
+      // the union's register is only empty if every sketch's register is
+      if (unionRegister != 0) {
+        n++;
+      }
+      unionPositions.add(LongPacker.unpackPositionOfFirstOne(unionRegister, r));
     }
 
-    if (c == 0) {
-      return 0;
-    }
-
-    double[] cardinalities = new double[sketches.size()];
-    int i = 0;
-    for (HyperMinHash sk : sketches) {
-      cardinalities[i++] = sk.cardinality();
-    }
+    final long unionCardinality =
+        HmhCardinalityEstimator.estimateCardinality(unionPositions, firstSketch.p);
 
-    if (n == 0) {
-      return 0;
+    final double similarity;
+    if (sketches.length == 1) {
+      similarity = 1.0;
+    } else if (c == 0 || n == 0) {
+      similarity = 0;
+    } else if (correctCollisions) {
+      // the sketches keep their registers counted, so their cardinalities take O(2^q) as well
+      final double expectedCollisions = HyperMinHashCollisions.approxExpectedCollisions(
+          firstSketch.p,
+          r,
+          firstSketch.cardinality(),
+          sketches[1].cardinality());
+      similarity = Math.max(0, (c - expectedCollisions) / n);
+    } else {
+      similarity = c / (double) n;
     }
 
-    return c / (double) n;
-  }
-
-  // algorithm 2.1.5 in the HyperMinHash paper
-  private static double expectedCollision(int p, int q, int r, double... cardinalities) {
-    final int _2q = 1 << q;
-    final int _2r = 1 << r;
-
-    double x = 0;
-    double b1 = 0;
-    double b2 = 0;
-
-    for (int i = 1; i <= _2q; i++) {
-      for (int j = 1; j <= _2r; j++) {
-        if (i != _2q) {
-          double den = Math.pow(2, p + r + i);
-          b1 = (_2r + j) / den;
-          b2 = (_2r + j + 1) / den;
-        } else {
-          double den = Math.pow(2, p + r + i - 1);
-          b1 = j / den;
-          b2 = (j + 1) / den;
-        }
-
-        double product = 1;
-        for (double cardinality : cardinalities) {
-          product *= Math.pow(1 - b2, cardinality) - Math.pow(1 - b1, cardinality);
-        }
-
-        x += product;
-      }
-    }
-    return x * Math.pow(2, p);
+    return new SketchOverlap(unionCardinality, similarity);
   }
 
   /**
@@ -138,15 +262,23 @@ public class HyperMinHashCombiner implements SketchCombiner<HyperMinHash> {
    */
   private void assertParamsAreEqual(Collection<HyperMinHash> sketches) {
     final HyperMinHash firstSketch = sketches.stream().findFirst().get();
+    for (HyperMinHash sketch : sketches) {
+      assertParamsAreEqual(firstSketch, sketch);
+    }
+  }
 
-    int p = firstSketch.p;
-    int numZeroSearchBits = firstSketch.numZeroSearchBits;
-    int r = firstSketch.r;
-
+  private void assertParamsAreEqual(HyperMinHash[] sketches) {
     for (HyperMinHash sketch : sketches) {
-      if (p != sketch.p || numZeroSearchBits != sketch.numZeroSearchBits || r != sketch.r) {
-        throw new IllegalArgumentException("Input sketches have different parameters.");
-      }
+      assertParamsAreEqual(sketches[0], sketch);
+    }
+  }
+
+  private void assertParamsAreEqual(HyperMinHash a, HyperMinHash b) {
+    if (a.p != b.p || a.numZeroSearchBits != b.numZeroSearchBits || a.r != b.r) {
+      throw new IllegalArgumentException("Input sketches have different parameters.");
+    }
+    if (!a.hasher.equals(b.hasher)) {
+      throw new IllegalArgumentException("Input sketches use different hashers.");
     }
   }
 
@@ -155,4 +287,10 @@ public class HyperMinHashCombiner implements SketchCombiner<HyperMinHash> {
       throw new IllegalArgumentException("Input sketches cannot be empty.");
     }
   }
+
+  private void assertInputNotEmpty(HyperMinHash[] sketches) {
+    if (sketches.length == 0) {
+      throw new IllegalArgumentException("Input sketches cannot be empty.");
+    }
+  }
 }
@@ -1,6 +1,7 @@
 package com.liveramp.hyperminhash;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class HyperMinHashSerDe implements IntersectionSketch.SerDe<HyperMinHash> {
 
@@ -8,30 +9,94 @@ public class HyperMinHashSerDe implements IntersectionSketch.SerDe<HyperMinHash>
         Serialized format:
           serializationToken (byte)
           version (byte)
+          hasher serde token (byte, only present in version 2. Version 1 implies Murmur3)
           p (int)
           r (int)
           register serde token (byte)
           num_registers (int)
           registers (variable size depending on type of registers)
 
+          Registers are written as ints if r <= 25 and longs otherwise. With narrow registers,
+          they're written as bytes if r <= 2 and shorts if r <= 10 instead, which versions
+          before 0.3 can't read.
+
+          Sparse registers are written as
+          num_sparse_registers (int)
+          then for each set register, in increasing order of index:
+            index (int)
+            register (int if r <= 25, else long)
+
+          Bit-packed registers are written as the longs they're packed into, which is
+          (num_registers * (6 + r) + 63) / 64 longs
+
           The java purist will cringe at my use of if statements instead of polymorphism
           to serialize different types of registers. This is probably something that should be
           revisited, but the polymorphism approach made it harder to see where the byte buffer
           was being modified which made debugging harder. So I'm going with if statements
           for now.
    */
+
+  private final boolean narrowRegisters;
+
+  /**
+   * Writes registers as ints, or longs when r > 25, which every version reads.
+   */
+  public HyperMinHashSerDe() {
+    this(false);
+  }
+
+  /**
+   * @param narrowRegisters whether registers with r <= 10 are written as shorts, or bytes when
+   *                        r <= 2, like a {@link HyperMinHash} holds them. This halves the size of
+   *                        sketches with the common r = 10, but versions before 0.3 can't read
+   *                        them. Sketches are read back whichever way they were written.
+   */
+  public HyperMinHashSerDe(boolean narrowRegisters) {
+    this.narrowRegisters = narrowRegisters;
+  }
+
   @Override
   public HyperMinHash fromBytes(byte[] bytes) {
-    ByteBuffer inputBuffer = ByteBuffer.wrap(bytes);
+    return read(ByteBuffer.wrap(bytes), false);
+  }
+
+  /**
+   * Returns a read-only sketch whose registers are read straight from {@code buffer}, which holds
+   * a serialized sketch from its position on, instead of being copied out of it. With a {@link
+   * java.nio.MappedByteBuffer} over a file of sketches, a sketch can be used without reading more
+   * of the file than its header, until its registers are needed. The cardinality reads every
+   * register once, the first time it's estimated.
+   *
+   * <p>The sketch can be estimated, compared, serialized and unioned like any other, but not
+   * offered values or merged into. Its deep copies, and so unions which start with it, are plain
+   * sketches on the heap. Sparse sketches are small, so they're read into memory as usual. The
+   * position and limit of {@code buffer} aren't changed, and its contents must not change while
+   * the sketch is in use.
+   */
+  public HyperMinHash view(ByteBuffer buffer) {
+    return read(buffer.duplicate(), true);
+  }
+
+  private static HyperMinHash read(ByteBuffer inputBuffer, boolean view) {
+    // the layout is big-endian, whatever the order of the buffer it's read from
+    inputBuffer.order(ByteOrder.BIG_ENDIAN);
     byte serdeToken = inputBuffer.get();
     if (!HyperMinHash.class.equals(SerializationTokens.getClassForToken(serdeToken).get())) {
       throw new IllegalArgumentException("Input bytes do not represent a HyperMinHash object!");
     }
 
     byte version = inputBuffer.get();
-    if (version != 1) { // 1 is the only supported version thus far
+    Hasher128 hasher;
+    if (version == HyperMinHash.VERSION) {
+      hasher = Murmur3Hasher128.getInstance();
+    } else if (version == HyperMinHash.VERSION_WITH_HASHER) {
+      byte hasherSerdeToken = inputBuffer.get();
+      hasher = SerializationTokens.getHasherForToken(hasherSerdeToken)
+          .orElseThrow(() -> new IllegalArgumentException(
+              "No hasher found for serde token: " + hasherSerdeToken));
+    } else {
       throw new IllegalArgumentException(
-          "Sketch version is " + version + ". Only version 1 is supported.");
+          "Sketch version is " + version + ". Only versions 1 and 2 are supported.");
     }
 
     int p = inputBuffer.getInt();
@@ -40,56 +105,158 @@ public class HyperMinHashSerDe implements IntersectionSketch.SerDe<HyperMinHash>
     byte registerSerdeToken = inputBuffer.get();
     int numRegisters = inputBuffer.getInt();
 
-    Class registersClass = SerializationTokens.getClassForToken(registerSerdeToken)
+    Class<?> registersClass = SerializationTokens.getClassForToken(registerSerdeToken)
         .orElseThrow(() -> new IllegalArgumentException(
             "No class found for serde token: " + registerSerdeToken));
-    Registers registers;
+    Registers<?> registers;
 
-    if (LongRegisters.class.equals(registersClass)) {
-      long[] registerValues = new long[numRegisters];
-      for (int i = 0; i < numRegisters; i++) {
-        registerValues[i] = inputBuffer.getLong();
+    if (registerBytes(registersClass) > 0 && view) {
+      ByteBufferRegisters bufferRegisters =
+          new ByteBufferRegisters(p, r, registerBytes(registersClass), inputBuffer);
+      if (numRegisters != bufferRegisters.getNumRegisters()) {
+        throw new IllegalArgumentException(
+            "Expected " + bufferRegisters.getNumRegisters() + " registers, but there are "
+                + numRegisters);
       }
+      return new HyperMinHashView(p, r, bufferRegisters, hasher);
+    } else if (LongRegisters.class.equals(registersClass)) {
+      long[] registerValues = new long[numRegisters];
+      inputBuffer.asLongBuffer().get(registerValues);
       registers = new LongRegisters(p, r, registerValues);
     } else if (IntRegisters.class.equals(registersClass)) {
       int[] registerValues = new int[numRegisters];
-      for (int i = 0; i < numRegisters; i++) {
-        registerValues[i] = inputBuffer.getInt();
+      inputBuffer.asIntBuffer().get(registerValues);
+      registers = intRegisters(p, r, registerValues);
+    } else if (ShortRegisters.class.equals(registersClass)) {
+      short[] registerValues = new short[numRegisters];
+      inputBuffer.asShortBuffer().get(registerValues);
+      registers = new ShortRegisters(p, r, registerValues);
+    } else if (ByteRegisters.class.equals(registersClass)) {
+      byte[] registerValues = new byte[numRegisters];
+      inputBuffer.get(registerValues);
+      registers = new ByteRegisters(p, r, registerValues);
+    } else if (BitPackedRegisters.class.equals(registersClass)) {
+      long[] words = new long[BitPackedRegisters.numWords(p, r)];
+      inputBuffer.asLongBuffer().get(words);
+      return new BitPackedHyperMinHash(p, r, new BitPackedRegisters(p, r, words), hasher);
+    } else if (SparseRegisters.class.equals(registersClass)) {
+      registers = new SparseRegisters(p, r);
+      int numSparseRegisters = inputBuffer.getInt();
+      // sketches with more registers set than this are written dense
+      if (numSparseRegisters < 0 || numSparseRegisters > SparseRegisters.maxSparseRegisters(p)) {
+        throw new IllegalArgumentException(
+            "Expected at most " + SparseRegisters.maxSparseRegisters(p)
+                + " sparse registers, but there are " + numSparseRegisters);
+      }
+      int previousIndex = -1;
+      for (int i = 0; i < numSparseRegisters; i++) {
+        int index = inputBuffer.getInt();
+        long register = r > 25 ? inputBuffer.getLong() : inputBuffer.getInt();
+        // set registers are written once each, in increasing order of index
+        if (index <= previousIndex || index >= 1 << p) {
+          throw new IllegalArgumentException(
+              "Sparse register index " + index + " is out of order or out of bounds");
+        }
+        if (register == 0) {
+          throw new IllegalArgumentException("Sparse register " + index + " isn't set");
+        }
+        registers.updateIfGreaterThan(index, register);
+        previousIndex = index;
       }
-      registers = new IntRegisters(p, r, registerValues);
+      return new SparseHyperMinHash(p, r, registers, hasher);
     } else {
       throw new IllegalArgumentException("Register type not supported: " + registersClass);
     }
 
-    return new HyperMinHash(p, r, registers);
+    return new HyperMinHash(p, r, registers, hasher);
+  }
+
+  /**
+   * @return registers holding {@code values}, which are the int registers of a sketch. Sketches
+   * with r <= 10 used to have int registers, which are narrowed to the registers such sketches
+   * have now, so that they're equal to sketches which were offered the same values.
+   */
+  static Registers<?> intRegisters(int p, int r, int[] values) {
+    final IntRegisters intRegisters = new IntRegisters(p, r, values);
+    if (r > 10) {
+      return intRegisters;
+    }
+    final Registers<?> registers = Registers.newRegisters(p, r);
+    registers.mergeFrom(intRegisters);
+    return registers;
   }
 
   @Override
   public byte[] toBytes(HyperMinHash sketch) {
     ByteBuffer outputBuffer = ByteBuffer.allocate(sizeInBytes(sketch));
     outputBuffer.put(SerializationTokens.getTokenForClass(HyperMinHash.class).get());
-    outputBuffer.put(HyperMinHash.VERSION);
+    if (sketch.hasher instanceof Murmur3Hasher128) {
+      outputBuffer.put(HyperMinHash.VERSION);
+    } else {
+      outputBuffer.put(HyperMinHash.VERSION_WITH_HASHER);
+      outputBuffer.put(getHasherSerdeToken(sketch.hasher));
+    }
     outputBuffer.putInt(sketch.p);
     outputBuffer.putInt(sketch.r);
 
-    Class registersClass = sketch.registers.getClass();
-    byte registersSerdeToken = SerializationTokens.getTokenForClass(registersClass)
+    Registers<?> registers = serializedRegisters(sketch);
+    Class<?> registersClass = registers.getClass();
+    Class<?> serializedRegistersClass = serializedRegistersClass(registersClass, sketch.r);
+    byte registersSerdeToken = SerializationTokens
+        .getTokenForClass(serializedRegistersClass)
         .orElseThrow(() -> new IllegalArgumentException(
             "Sketch Registers do not have a serialization token!"));
 
     outputBuffer.put(registersSerdeToken);
-    outputBuffer.putInt(sketch.registers.getNumRegisters());
+    outputBuffer.putInt(registers.getNumRegisters());
 
-    if (LongRegisters.class.equals(registersClass)) {
-      LongRegisters longRegisters = (LongRegisters) sketch.registers;
+    if (!serializedRegistersClass.equals(registersClass)) {
+      // atomic, off-heap, read-only and narrow registers, in the layout of the plain registers
+      int registerBytes = registerBytes(serializedRegistersClass);
+      for (int i = 0; i < registers.getNumRegisters(); i++) {
+        long register = registers.getRegisterAtIndex(i);
+        if (registerBytes == Long.BYTES) {
+          outputBuffer.putLong(register);
+        } else if (registerBytes == Integer.BYTES) {
+          outputBuffer.putInt((int) register);
+        } else if (registerBytes == Short.BYTES) {
+          outputBuffer.putShort((short) register);
+        } else {
+          outputBuffer.put((byte) register);
+        }
+      }
+    } else if (LongRegisters.class.equals(registersClass)) {
+      LongRegisters longRegisters = (LongRegisters) registers;
       for (long register : longRegisters.registers) {
         outputBuffer.putLong(register);
       }
     } else if (IntRegisters.class.equals(registersClass)) {
-      IntRegisters intRegisters = (IntRegisters) sketch.registers;
+      IntRegisters intRegisters = (IntRegisters) registers;
       for (int register : intRegisters.registers) {
         outputBuffer.putInt(register);
       }
+    } else if (ShortRegisters.class.equals(registersClass)) {
+      ShortRegisters shortRegisters = (ShortRegisters) registers;
+      for (short register : shortRegisters.registers) {
+        outputBuffer.putShort(register);
+      }
+    } else if (ByteRegisters.class.equals(registersClass)) {
+      outputBuffer.put(((ByteRegisters) registers).registers);
+    } else if (BitPackedRegisters.class.equals(registersClass)) {
+      for (long word : ((BitPackedRegisters) registers).words) {
+        outputBuffer.putLong(word);
+      }
+    } else if (SparseRegisters.class.equals(registersClass)) {
+      SparseRegisters sparseRegisters = (SparseRegisters) registers;
+      outputBuffer.putInt(sparseRegisters.getNumSparseRegisters());
+      for (int index : sparseRegisters.getSparseIndexes()) {
+        outputBuffer.putInt(index);
+        if (sketch.r > 25) {
+          outputBuffer.putLong(sparseRegisters.getRegisterAtIndex(index));
+        } else {
+          outputBuffer.putInt(Math.toIntExact(sparseRegisters.getRegisterAtIndex(index)));
+        }
+      }
     } else {
       throw new IllegalArgumentException("Register type not supported: " + registersClass);
     }
@@ -99,22 +266,91 @@ public class HyperMinHashSerDe implements IntersectionSketch.SerDe<HyperMinHash>
 
   @Override
   public int sizeInBytes(HyperMinHash sketch) {
-    Class registersClass = sketch.registers.getClass();
+    Registers<?> registers = serializedRegisters(sketch);
+    Class<?> registersClass = serializedRegistersClass(registers.getClass(), sketch.r);
     int registerSizeInBytes;
-    if (LongRegisters.class.equals(registersClass)) {
-      registerSizeInBytes = sketch.registers.getNumRegisters() * Long.BYTES;
-    } else if (IntRegisters.class.equals(registersClass)) {
-      registerSizeInBytes = sketch.registers.getNumRegisters() * Integer.BYTES;
+    if (registerBytes(registersClass) > 0) {
+      registerSizeInBytes = registers.getNumRegisters() * registerBytes(registersClass);
+    } else if (BitPackedRegisters.class.equals(registersClass)) {
+      registerSizeInBytes = BitPackedRegisters.numWords(sketch.p, sketch.r) * Long.BYTES;
+    } else if (SparseRegisters.class.equals(registersClass)) {
+      registerSizeInBytes = Integer.BYTES + // num sparse registers
+          ((SparseRegisters) registers).getNumSparseRegisters()
+              * (Integer.BYTES + (sketch.r > 25 ? Long.BYTES : Integer.BYTES));
     } else {
       throw new IllegalArgumentException("Register type not supported: " + registersClass);
     }
 
     return Byte.BYTES + // serde token
         Byte.BYTES + // version
+        (sketch.hasher instanceof Murmur3Hasher128 ? 0 : Byte.BYTES) + // hasher serde token
         Integer.BYTES + // p
         Integer.BYTES + // r
         Byte.BYTES + // register serde token
         Integer.BYTES + // num registers
         registerSizeInBytes; // registers
   }
+
+  /**
+   * Striped registers are written as the plain registers holding their fold, and sparse registers
+   * which are dense by now as their dense registers.
+   */
+  private static Registers<?> serializedRegisters(HyperMinHash sketch) {
+    if (sketch.registers instanceof StripedRegisters) {
+      return ((StripedRegisters) sketch.registers).fold();
+    }
+    if (sketch.registers instanceof SparseRegisters
+        && !((SparseRegisters) sketch.registers).isSparse()) {
+      return ((SparseRegisters) sketch.registers).getDenseRegisters();
+    }
+    return sketch.registers;
+  }
+
+  /**
+   * Atomic, off-heap and read-only registers are written in the same layout as the plain registers
+   * of {@link Registers#newRegisters(int, int)}, so that they're read back as plain registers.
+   * Unless narrow registers are written, short and byte registers are written as int registers.
+   */
+  private Class<?> serializedRegistersClass(Class<?> registersClass, int r) {
+    if (AtomicLongRegisters.class.equals(registersClass)
+        || AtomicIntRegisters.class.equals(registersClass)
+        || OffHeapRegisters.class.equals(registersClass)
+        || ByteBufferRegisters.class.equals(registersClass)
+        || ShortRegisters.class.equals(registersClass)
+        || ByteRegisters.class.equals(registersClass)) {
+      if (r > 25) {
+        return LongRegisters.class;
+      } else if (r > 10 || !narrowRegisters) {
+        return IntRegisters.class;
+      } else if (r > 2) {
+        return ShortRegisters.class;
+      } else {
+        return ByteRegisters.class;
+      }
+    }
+    return registersClass;
+  }
+
+  /**
+   * @return the number of bytes of each register of the plain {@code registersClass}, or 0 if
+   * they aren't written one after the other
+   */
+  private static int registerBytes(Class<?> registersClass) {
+    if (LongRegisters.class.equals(registersClass)) {
+      return Long.BYTES;
+    } else if (IntRegisters.class.equals(registersClass)) {
+      return Integer.BYTES;
+    } else if (ShortRegisters.class.equals(registersClass)) {
+      return Short.BYTES;
+    } else if (ByteRegisters.class.equals(registersClass)) {
+      return Byte.BYTES;
+    }
+    return 0;
+  }
+
+  static byte getHasherSerdeToken(Hasher128 hasher) {
+    return SerializationTokens.getTokenForClass(hasher.getClass())
+        .orElseThrow(() -> new IllegalArgumentException(
+            "Sketch hasher does not have a serialization token: " + hasher.getClass()));
+  }
 }
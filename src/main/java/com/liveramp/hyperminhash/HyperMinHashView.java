@@ -0,0 +1,19 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * A read-only {@link HyperMinHash} whose registers are read straight from a serialized sketch,
+ * see {@link HyperMinHashSerDe#view(java.nio.ByteBuffer)}. Offers throw an {@link
+ * UnsupportedOperationException}, and so does merging into it. Deep copies, and so unions which
+ * start with a view, are plain HyperMinHash sketches on the heap.
+ */
+class HyperMinHashView extends HyperMinHash {
+
+  HyperMinHashView(int p, int r, ByteBufferRegisters registers, Hasher128 hasher) {
+    super(p, r, registers, hasher);
+  }
+
+  @Override
+  public HyperMinHash deepCopy() {
+    return new HyperMinHash(p, r, ((ByteBufferRegisters) registers).copyToHeap(), hasher);
+  }
+}
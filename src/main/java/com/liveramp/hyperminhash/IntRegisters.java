@@ -8,12 +8,20 @@ class IntRegisters implements Registers<IntRegisters> {
   final int[] registers;
   private final int p;
   private final int r;
+  private final RegisterHistogram positions;
 
   IntRegisters(int p, int r) {
-    this(p, r, new int[1 << p]);
+    this(p, r, new int[1 << p], RegisterHistogram.ofEmptyRegisters(NUM_POSITIONS, 1 << p));
   }
 
   IntRegisters(int p, int r, int[] registers) {
+    this(p, r, registers, null);
+  }
+
+  /**
+   * @param positions histogram of {@code registers}, or null to count it
+   */
+  private IntRegisters(int p, int r, int[] registers, RegisterHistogram positions) {
     if (r > 25) {
       throw new IllegalArgumentException("R cannot be greater than 25 when using IntRegisters");
     }
@@ -21,29 +29,70 @@ class IntRegisters implements Registers<IntRegisters> {
     this.p = p;
     this.r = r;
     this.registers = registers;
+    this.positions = positions != null ? positions : countPositions();
   }
 
   @Override
   public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
-    int intIncomingRegister = Math.toIntExact(incomingRegister);
-    int currentRegister = registers[registerIndex];
-    int currentLeadingOnePosition = IntPacker.unpackPositionOfFirstOne(currentRegister, r);
-    int incomingLeadingOnePosition = IntPacker.unpackPositionOfFirstOne(intIncomingRegister, r);
+    final int intIncomingRegister = Math.toIntExact(incomingRegister);
+    final int currentRegister = registers[registerIndex];
+    if (!isGreaterThan(intIncomingRegister, currentRegister, r)) {
+      return false;
+    }
 
-    if (currentLeadingOnePosition < incomingLeadingOnePosition) {
-      registers[registerIndex] = intIncomingRegister;
-      return true;
-    } else if (currentLeadingOnePosition == incomingLeadingOnePosition) {
-      int currentMantissa = IntPacker.unpackMantissa(currentRegister, r);
-      int incomingMantissa = IntPacker.unpackMantissa(intIncomingRegister, r);
+    set(registerIndex, currentRegister, intIncomingRegister);
+    return true;
+  }
+
+  @Override
+  public int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    int numChanged = 0;
+    for (int i = 0; i < length; i++) {
+      final int registerIndex = registerIndexes[i];
+      final int incomingRegister = Math.toIntExact(incomingRegisters[i]);
+      final int currentRegister = registers[registerIndex];
+      if (isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(registerIndex, currentRegister, incomingRegister);
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
 
-      if (currentMantissa > incomingMantissa) {
-        registers[registerIndex] = intIncomingRegister;
-        return true;
+  @Override
+  public void mergeFrom(Registers<?> other, int fromIndex, int toIndex) {
+    if (!(other instanceof IntRegisters)) {
+      Registers.super.mergeFrom(other, fromIndex, toIndex);
+      return;
+    }
+
+    final int[] otherRegisters = ((IntRegisters) other).registers;
+    for (int i = fromIndex; i < toIndex; i++) {
+      final int incomingRegister = otherRegisters[i];
+      final int currentRegister = registers[i];
+      if (isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(i, currentRegister, incomingRegister);
       }
     }
+  }
+
+  private void set(int registerIndex, int currentRegister, int incomingRegister) {
+    registers[registerIndex] = incomingRegister;
+    positions.move(
+        IntPacker.unpackPositionOfFirstOne(currentRegister, r),
+        IntPacker.unpackPositionOfFirstOne(incomingRegister, r));
+  }
 
-    return false;
+  /**
+   * @return true if {@code incoming} has a later leading one than {@code current}, or the same
+   * leading one and a smaller mantissa.
+   */
+  static boolean isGreaterThan(int incoming, int current, int r) {
+    final int currentLeadingOnePosition = IntPacker.unpackPositionOfFirstOne(current, r);
+    final int incomingLeadingOnePosition = IntPacker.unpackPositionOfFirstOne(incoming, r);
+    return currentLeadingOnePosition < incomingLeadingOnePosition
+        || (currentLeadingOnePosition == incomingLeadingOnePosition
+        && IntPacker.unpackMantissa(current, r) > IntPacker.unpackMantissa(incoming, r));
   }
 
   @Override
@@ -53,7 +102,7 @@ class IntRegisters implements Registers<IntRegisters> {
 
   @Override
   public IntRegisters deepCopy() {
-    return new IntRegisters(p, r, Arrays.copyOf(registers, registers.length));
+    return new IntRegisters(p, r, Arrays.copyOf(registers, registers.length), positions.copy());
   }
 
   @Override
@@ -73,13 +122,13 @@ class IntRegisters implements Registers<IntRegisters> {
 
   @Override
   public int getNumZeroRegisters() {
-    int count = 0;
-    for (int register : registers) {
-      if (register == 0) {
-        count++;
-      }
-    }
-    return count;
+    // only empty registers have no first one
+    return positions.count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    return positions;
   }
 
   @Override
@@ -1,5 +1,8 @@
 package com.liveramp.hyperminhash;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Representation of a set that is able to estimate the cardinality of that set, and perform the
  * operations in {@link SketchCombiner}. Each implementation of this interface should have a corresponding
@@ -22,6 +25,196 @@ public interface IntersectionSketch<T extends IntersectionSketch<T>> {
    */
   boolean offer(byte[] bytes);
 
+  /**
+   * Offers the {@code length} bytes of {@code bytes} starting at {@code offset}. Implementations
+   * may override this to hash the bytes in place, but must produce the same sketch as {@link
+   * #offer(byte[])} on a copy of that range.
+   *
+   * @return false if the value returned by cardinality() is unaffected by the appearance of the
+   * value in the stream.
+   */
+  default boolean offer(byte[] bytes, int offset, int length) {
+    final byte[] value = new byte[length];
+    System.arraycopy(bytes, offset, value, 0, length);
+    return offer(value);
+  }
+
+  /**
+   * Offers the bytes between the position and the limit of {@code value}. Implementations may
+   * override this to hash the bytes in place, but must produce the same sketch as {@link
+   * #offer(byte[])} on a copy of those bytes. The position, limit and byte order of the buffer are
+   * left unchanged.
+   *
+   * @return false if the value returned by cardinality() is unaffected by the appearance of the
+   * value in the stream.
+   */
+  default boolean offer(ByteBuffer value) {
+    final byte[] bytes = new byte[value.remaining()];
+    value.duplicate().get(bytes);
+    return offer(bytes);
+  }
+
+  /**
+   * Offers {@code value} encoded as its 8 bytes in big-endian order. Implementations may override
+   * this to hash the value without allocating, but must produce the same sketch as {@link
+   * #offer(byte[])} on that encoding.
+   *
+   * @return false if the value returned by cardinality() is unaffected by the appearance of value
+   * in the stream.
+   */
+  default boolean offer(long value) {
+    return offer(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+  }
+
+  /**
+   * Offers {@code value} encoded as its 4 bytes in big-endian order. Implementations may override
+   * this to hash the value without allocating, but must produce the same sketch as {@link
+   * #offer(byte[])} on that encoding.
+   *
+   * @return false if the value returned by cardinality() is unaffected by the appearance of value
+   * in the stream.
+   */
+  default boolean offer(int value) {
+    return offer(ByteBuffer.allocate(Integer.BYTES).putInt(value).array());
+  }
+
+  /**
+   * Offers a 128-bit key such as a UUID, encoded as the 8 bytes of {@code mostSigBits} followed by
+   * the 8 bytes of {@code leastSigBits}, both in big-endian order. Implementations may override
+   * this to hash the key without allocating, but must produce the same sketch as {@link
+   * #offer(byte[])} on that encoding.
+   *
+   * @return false if the value returned by cardinality() is unaffected by the appearance of the key
+   * in the stream.
+   */
+  default boolean offer(long mostSigBits, long leastSigBits) {
+    return offer(ByteBuffer.allocate(2 * Long.BYTES)
+        .putLong(mostSigBits)
+        .putLong(leastSigBits)
+        .array());
+  }
+
+  /**
+   * Offers the UTF-8 encoding of {@code value}. Implementations may override this to hash the
+   * characters without allocating, but must produce the same sketch as {@link #offer(byte[])} on
+   * that encoding.
+   *
+   * @return false if the value returned by cardinality() is unaffected by the appearance of value
+   * in the stream.
+   */
+  default boolean offer(CharSequence value) {
+    return offer(value.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Offers every value in {@code values}, as {@link #offer(long)} would. Implementations may
+   * override this to hash values a block at a time before updating the sketch.
+   *
+   * @return the number of values for which {@link #offer(long)} would have returned true, i.e.
+   * which changed the sketch.
+   */
+  default int offerAll(long[] values) {
+    int numChanged = 0;
+    for (long value : values) {
+      if (offer(value)) {
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  /**
+   * Offers every value in {@code values}, as {@link #offer(byte[])} would. Implementations may
+   * override this to hash values a block at a time before updating the sketch.
+   *
+   * @return the number of values for which {@link #offer(byte[])} would have returned true, i.e.
+   * which changed the sketch.
+   */
+  default int offerAll(byte[][] values) {
+    int numChanged = 0;
+    for (byte[] value : values) {
+      if (offer(value)) {
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  /**
+   * Offers {@code offsets.length - 1} values which are laid out back to back in {@code data}, as
+   * in a columnar batch: value {@code i} spans the absolute indexes from {@code offsets[i]}
+   * (inclusive) to {@code offsets[i + 1]} (exclusive). Each value is offered as {@link
+   * #offer(byte[])} would offer a copy of its bytes. The position and limit of {@code data} are
+   * ignored and left unchanged.
+   *
+   * @return the number of values which changed the sketch.
+   */
+  default int offerAll(ByteBuffer data, int[] offsets) {
+    int numChanged = 0;
+    for (int i = 0; i + 1 < offsets.length; i++) {
+      final byte[] value = new byte[offsets[i + 1] - offsets[i]];
+      for (int j = 0; j < value.length; j++) {
+        value[j] = data.get(offsets[i] + j);
+      }
+      if (offer(value)) {
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  /**
+   * Offers the value whose bytes were added to {@code hash}, as {@link #offer(byte[])} would offer
+   * their concatenation. This lets composite or chunked keys be offered without copying them into
+   * one array. The incremental hash is only read, so it can be extended and offered again.
+   *
+   * <p>By default, the hash is passed to {@link #offerHash(long, long)}, which only matches {@link
+   * #offer(byte[])} for sketches which hash values with Murmur3. Implementations which hash values
+   * some other way should reject incremental hashes.
+   *
+   * @throws IllegalArgumentException if this sketch doesn't hash values with Murmur3, or {@code
+   *                                  hash} was started with a seed other than {@link
+   *                                  Murmur3#DEFAULT_SEED}
+   * @throws IllegalStateException    if {@code hash} was never started
+   */
+  default boolean offer(Murmur3.IncrementalHash128 hash) {
+    hash.checkStarted();
+    if (hash.seed != Murmur3.DEFAULT_SEED) {
+      throw new IllegalArgumentException(
+          "Incremental Murmur3 hashes with seed " + hash.seed + " can't be offered to a sketch");
+    }
+
+    final long[] hashcode = hash.end();
+    return offerHash(hashcode[0], hashcode[1]);
+  }
+
+  /**
+   * Offers a value which has already been hashed to 128 bits, skipping the hashing step of {@link
+   * #offer(byte[])}. For a sketch which uses the default {@link Murmur3Hasher128}, passing the two
+   * halves of {@code Murmur3.hash128(bytes)} produces the same sketch as {@code offer(bytes)}.
+   * Sketches built from hashes of another function can only be combined with sketches built from
+   * hashes of that same function.
+   *
+   * @param hllHalf     the first 64 bits of the hash, which select the register and supply the
+   *                    bits searched for a leading one.
+   * @param minHashHalf the last 64 bits of the hash, which supply the min hash bits.
+   * @return false if the value returned by cardinality() is unaffected by the appearance of the
+   * hashed value in the stream.
+   * @throws UnsupportedOperationException unless overridden, since only the implementation knows
+   *                                       how its values are hashed
+   */
+  default boolean offerHash(long hllHalf, long minHashHalf) {
+    throw new UnsupportedOperationException(
+        getClass().getSimpleName() + " doesn't accept values which were already hashed");
+  }
+
+  /**
+   * Equivalent to {@code offerHash(hash.getHllHalf(), hash.getMinHashHalf())}.
+   */
+  default boolean offerHash(Hash128 hash) {
+    return offerHash(hash.getHllHalf(), hash.getMinHashHalf());
+  }
+
   /**
    * @return a deep copy of the {@link IntersectionSketch} instance.
    */
@@ -8,37 +8,86 @@ class LongRegisters implements Registers<LongRegisters> {
   final long[] registers;
   private final int p;
   private final int r;
+  private final RegisterHistogram positions;
 
   LongRegisters(int p, int r) {
-    this(p, r, new long[1 << p]);
+    this(p, r, new long[1 << p], RegisterHistogram.ofEmptyRegisters(NUM_POSITIONS, 1 << p));
   }
 
   LongRegisters(int p, int r, long[] registers) {
+    this(p, r, registers, null);
+  }
+
+  /**
+   * @param positions histogram of {@code registers}, or null to count it
+   */
+  private LongRegisters(int p, int r, long[] registers, RegisterHistogram positions) {
     this.p = p;
     this.r = r;
     this.registers = registers;
+    this.positions = positions != null ? positions : countPositions();
   }
 
   @Override
   public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
-    long currentRegister = registers[registerIndex];
-    int currentLeadingOnePosition = LongPacker.unpackPositionOfFirstOne(currentRegister, r);
-    int incomingLeadingOnePosition = LongPacker.unpackPositionOfFirstOne(incomingRegister, r);
+    final long currentRegister = registers[registerIndex];
+    if (!isGreaterThan(incomingRegister, currentRegister, r)) {
+      return false;
+    }
 
-    if (currentLeadingOnePosition < incomingLeadingOnePosition) {
-      registers[registerIndex] = incomingRegister;
-      return true;
-    } else if (currentLeadingOnePosition == incomingLeadingOnePosition) {
-      long currentMantissa = LongPacker.unpackMantissa(currentRegister, r);
-      long incomingMantissa = LongPacker.unpackMantissa(incomingRegister, r);
+    set(registerIndex, currentRegister, incomingRegister);
+    return true;
+  }
+
+  @Override
+  public int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    int numChanged = 0;
+    for (int i = 0; i < length; i++) {
+      final int registerIndex = registerIndexes[i];
+      final long incomingRegister = incomingRegisters[i];
+      final long currentRegister = registers[registerIndex];
+      if (isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(registerIndex, currentRegister, incomingRegister);
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
 
-      if (currentMantissa > incomingMantissa) {
-        registers[registerIndex] = incomingRegister;
-        return true;
+  @Override
+  public void mergeFrom(Registers<?> other, int fromIndex, int toIndex) {
+    if (!(other instanceof LongRegisters)) {
+      Registers.super.mergeFrom(other, fromIndex, toIndex);
+      return;
+    }
+
+    final long[] otherRegisters = ((LongRegisters) other).registers;
+    for (int i = fromIndex; i < toIndex; i++) {
+      final long incomingRegister = otherRegisters[i];
+      final long currentRegister = registers[i];
+      if (isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(i, currentRegister, incomingRegister);
       }
     }
+  }
+
+  private void set(int registerIndex, long currentRegister, long incomingRegister) {
+    registers[registerIndex] = incomingRegister;
+    positions.move(
+        LongPacker.unpackPositionOfFirstOne(currentRegister, r),
+        LongPacker.unpackPositionOfFirstOne(incomingRegister, r));
+  }
 
-    return false;
+  /**
+   * @return true if {@code incoming} has a later leading one than {@code current}, or the same
+   * leading one and a smaller mantissa.
+   */
+  static boolean isGreaterThan(long incoming, long current, int r) {
+    final int currentLeadingOnePosition = LongPacker.unpackPositionOfFirstOne(current, r);
+    final int incomingLeadingOnePosition = LongPacker.unpackPositionOfFirstOne(incoming, r);
+    return currentLeadingOnePosition < incomingLeadingOnePosition
+        || (currentLeadingOnePosition == incomingLeadingOnePosition
+        && LongPacker.unpackMantissa(current, r) > LongPacker.unpackMantissa(incoming, r));
   }
 
   @Override
@@ -48,7 +97,7 @@ class LongRegisters implements Registers<LongRegisters> {
 
   @Override
   public LongRegisters deepCopy() {
-    return new LongRegisters(p, r, Arrays.copyOf(registers, registers.length));
+    return new LongRegisters(p, r, Arrays.copyOf(registers, registers.length), positions.copy());
   }
 
   @Override
@@ -68,13 +117,13 @@ class LongRegisters implements Registers<LongRegisters> {
 
   @Override
   public int getNumZeroRegisters() {
-    int count = 0;
-    for (long register : registers) {
-      if (register == 0) {
-        count++;
-      }
-    }
-    return count;
+    // only empty registers have no first one
+    return positions.count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    return positions;
   }
 
   @Override
@@ -18,6 +18,9 @@
 
 package com.liveramp.hyperminhash;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * Murmur3 is successor to Murmur2 fast non-crytographic hash algorithms.
  *
@@ -321,6 +324,16 @@ public class Murmur3 {
     return hash128(data, 0, data.length, DEFAULT_SEED);
   }
 
+  /**
+   * Murmur3 128-bit variant, written to {@code out} without allocating.
+   *
+   * @param data - input byte array
+   * @param out  - array of at least 2 longs which receives the hashcode
+   */
+  public static void hash128(byte[] data, long[] out) {
+    hash128(data, 0, data.length, DEFAULT_SEED, out, 0);
+  }
+
   /**
    * Murmur3 128-bit variant.
    *
@@ -331,48 +344,49 @@ public class Murmur3 {
    * @return - hashcode (2 longs)
    */
   public static long[] hash128(byte[] data, int offset, int length, int seed) {
+    final long[] out = new long[2];
+    hash128(data, offset, length, seed, out, 0);
+    return out;
+  }
+
+  /**
+   * Murmur3 128-bit variant, written to {@code out} without allocating.
+   *
+   * @param data      - input byte array
+   * @param offset    - the first element of array
+   * @param length    - length of array
+   * @param seed      - seed. (default is 0)
+   * @param out       - array which receives the hashcode (2 longs)
+   * @param outOffset - index in out at which the hashcode is written
+   */
+  public static void hash128(
+      byte[] data,
+      int offset,
+      int length,
+      int seed,
+      long[] out,
+      int outOffset) {
     long h1 = seed;
     long h2 = seed;
     final int nblocks = length >> 4;
 
     // body
-    for (int i = 0; i < nblocks; i++) {
-      final int i16 = i << 4;
-      long k1 = ((long) data[offset + i16] & 0xff)
-          | (((long) data[offset + i16 + 1] & 0xff) << 8)
-          | (((long) data[offset + i16 + 2] & 0xff) << 16)
-          | (((long) data[offset + i16 + 3] & 0xff) << 24)
-          | (((long) data[offset + i16 + 4] & 0xff) << 32)
-          | (((long) data[offset + i16 + 5] & 0xff) << 40)
-          | (((long) data[offset + i16 + 6] & 0xff) << 48)
-          | (((long) data[offset + i16 + 7] & 0xff) << 56);
-
-      long k2 = ((long) data[offset + i16 + 8] & 0xff)
-          | (((long) data[offset + i16 + 9] & 0xff) << 8)
-          | (((long) data[offset + i16 + 10] & 0xff) << 16)
-          | (((long) data[offset + i16 + 11] & 0xff) << 24)
-          | (((long) data[offset + i16 + 12] & 0xff) << 32)
-          | (((long) data[offset + i16 + 13] & 0xff) << 40)
-          | (((long) data[offset + i16 + 14] & 0xff) << 48)
-          | (((long) data[offset + i16 + 15] & 0xff) << 56);
-
-      // mix functions for k1
-      k1 *= C1;
-      k1 = Long.rotateLeft(k1, R1);
-      k1 *= C2;
-      h1 ^= k1;
-      h1 = Long.rotateLeft(h1, R2);
-      h1 += h2;
-      h1 = h1 * M + N1;
+    if (nblocks > 0) {
+      // Reads each half of a block with a single access instead of assembling it from 8 bytes.
+      final ByteBuffer blocks = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = 0; i < nblocks; i++) {
+        final int i16 = offset + (i << 4);
 
-      // mix functions for k2
-      k2 *= C2;
-      k2 = Long.rotateLeft(k2, R3);
-      k2 *= C1;
-      h2 ^= k2;
-      h2 = Long.rotateLeft(h2, R1);
-      h2 += h1;
-      h2 = h2 * M + N2;
+        h1 ^= mixK1(blocks.getLong(i16));
+        h1 = Long.rotateLeft(h1, R2);
+        h1 += h2;
+        h1 = h1 * M + N1;
+
+        h2 ^= mixK2(blocks.getLong(i16 + 8));
+        h2 = Long.rotateLeft(h2, R1);
+        h2 += h1;
+        h2 = h2 * M + N2;
+      }
     }
 
     // tail
@@ -422,6 +436,272 @@ public class Murmur3 {
     }
 
     // finalization
+    fmix128(h1, h2, length, out, outOffset);
+  }
+
+  /**
+   * Murmur3 128-bit variant of the bytes of {@code data} between the absolute indexes {@code
+   * offset} and {@code offset + length}, written to {@code out}. The bytes are read in place, so
+   * this works without copying for heap, direct and read-only buffers alike. The position, limit
+   * and byte order of the buffer are ignored and left unchanged.
+   *
+   * @param data      - input buffer
+   * @param offset    - absolute index of the first byte
+   * @param length    - number of bytes
+   * @param seed      - seed. (default is 0)
+   * @param out       - array which receives the hashcode (2 longs)
+   * @param outOffset - index in out at which the hashcode is written
+   */
+  public static void hash128(
+      ByteBuffer data,
+      int offset,
+      int length,
+      int seed,
+      long[] out,
+      int outOffset) {
+    if (data.hasArray()) {
+      hash128(data.array(), data.arrayOffset() + offset, length, seed, out, outOffset);
+      return;
+    }
+
+    final boolean littleEndian = data.order() == ByteOrder.LITTLE_ENDIAN;
+    long h1 = seed;
+    long h2 = seed;
+    final int nblocks = length >> 4;
+
+    // body
+    for (int i = 0; i < nblocks; i++) {
+      final int i16 = offset + (i << 4);
+      long k1 = data.getLong(i16);
+      long k2 = data.getLong(i16 + 8);
+      if (!littleEndian) {
+        k1 = Long.reverseBytes(k1);
+        k2 = Long.reverseBytes(k2);
+      }
+
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, R2);
+      h1 += h2;
+      h1 = h1 * M + N1;
+
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, R1);
+      h2 += h1;
+      h2 = h2 * M + N2;
+    }
+
+    // tail
+    long k1 = 0;
+    long k2 = 0;
+    final int tailStart = offset + (nblocks << 4);
+    final int tailLength = length - (nblocks << 4);
+    for (int i = tailLength - 1; i >= 8; i--) {
+      k2 ^= ((long) data.get(tailStart + i) & 0xff) << ((i - 8) << 3);
+    }
+    for (int i = Math.min(tailLength, 8) - 1; i >= 0; i--) {
+      k1 ^= ((long) data.get(tailStart + i) & 0xff) << (i << 3);
+    }
+    if (tailLength > 8) {
+      h2 ^= mixK2(k2);
+    }
+    if (tailLength > 0) {
+      h1 ^= mixK1(k1);
+    }
+
+    fmix128(h1, h2, length, out, outOffset);
+  }
+
+  /**
+   * Murmur3 128-bit variant of the 8 bytes of {@code data} in big-endian order, written to {@code
+   * out} without allocating.
+   *
+   * @param data - input long
+   * @param out  - array of at least 2 longs which receives the hashcode
+   */
+  public static void hash128(long data, long[] out) {
+    hash128(data, out, 0);
+  }
+
+  /**
+   * Same as {@link #hash128(long, long[])}, but writes the hashcode at {@code outOffset}.
+   */
+  public static void hash128(long data, long[] out, int outOffset) {
+    long h1 = DEFAULT_SEED;
+    long h2 = DEFAULT_SEED;
+
+    // Reading the big-endian bytes of data as a little-endian tail is a byte reversal
+    h1 ^= mixK1(Long.reverseBytes(data));
+
+    fmix128(h1, h2, Long.BYTES, out, outOffset);
+  }
+
+  /**
+   * Murmur3 128-bit variant of the 4 bytes of {@code data} in big-endian order, written to {@code
+   * out} without allocating.
+   *
+   * @param data - input int
+   * @param out  - array of at least 2 longs which receives the hashcode
+   */
+  public static void hash128(int data, long[] out) {
+    hash128(data, out, 0);
+  }
+
+  /**
+   * Same as {@link #hash128(int, long[])}, but writes the hashcode at {@code outOffset}.
+   */
+  public static void hash128(int data, long[] out, int outOffset) {
+    long h1 = DEFAULT_SEED;
+    long h2 = DEFAULT_SEED;
+
+    h1 ^= mixK1(Integer.reverseBytes(data) & 0xffffffffL);
+
+    fmix128(h1, h2, Integer.BYTES, out, outOffset);
+  }
+
+  /**
+   * Murmur3 128-bit variant of the 16 bytes of {@code mostSigBits} followed by {@code leastSigBits},
+   * each in big-endian order (i.e. the byte layout of a UUID), written to {@code out} without
+   * allocating.
+   *
+   * @param mostSigBits  - first 8 bytes of input
+   * @param leastSigBits - last 8 bytes of input
+   * @param out          - array of at least 2 longs which receives the hashcode
+   */
+  public static void hash128(long mostSigBits, long leastSigBits, long[] out) {
+    hash128(mostSigBits, leastSigBits, out, 0);
+  }
+
+  /**
+   * Same as {@link #hash128(long, long, long[])}, but writes the hashcode at {@code outOffset}.
+   */
+  public static void hash128(long mostSigBits, long leastSigBits, long[] out, int outOffset) {
+    long h1 = DEFAULT_SEED;
+    long h2 = DEFAULT_SEED;
+
+    h1 ^= mixK1(Long.reverseBytes(mostSigBits));
+    h1 = Long.rotateLeft(h1, R2);
+    h1 += h2;
+    h1 = h1 * M + N1;
+
+    h2 ^= mixK2(Long.reverseBytes(leastSigBits));
+    h2 = Long.rotateLeft(h2, R1);
+    h2 += h1;
+    h2 = h2 * M + N2;
+
+    fmix128(h1, h2, Long.BYTES * 2, out, outOffset);
+  }
+
+  /**
+   * Murmur3 128-bit variant of the UTF-8 encoding of {@code data}, written to {@code out}. The
+   * characters are encoded on the fly, so this gives the same result as hashing {@code
+   * data.toString().getBytes(StandardCharsets.UTF_8)} without allocating. As with {@link
+   * String#getBytes}, unpaired surrogates are encoded as {@code '?'}.
+   *
+   * @param data - input characters
+   * @param out  - array of at least 2 longs which receives the hashcode
+   */
+  public static void hash128(CharSequence data, long[] out) {
+    hash128(data, out, 0);
+  }
+
+  /**
+   * Same as {@link #hash128(CharSequence, long[])}, but writes the hashcode at {@code outOffset}.
+   */
+  public static void hash128(CharSequence data, long[] out, int outOffset) {
+    long h1 = DEFAULT_SEED;
+    long h2 = DEFAULT_SEED;
+    long k1 = 0;
+    long k2 = 0;
+    int blockLength = 0;
+    int length = 0;
+
+    final int numChars = data.length();
+    for (int i = 0; i < numChars; i++) {
+      final char c = data.charAt(i);
+
+      // up to 4 UTF-8 bytes, packed with the first byte in the least significant position
+      final int utf8;
+      final int numBytes;
+      if (c < 0x80) {
+        utf8 = c;
+        numBytes = 1;
+      } else if (c < 0x800) {
+        utf8 = (0xc0 | (c >> 6))
+            | (0x80 | (c & 0x3f)) << 8;
+        numBytes = 2;
+      } else if (!Character.isSurrogate(c)) {
+        utf8 = (0xe0 | (c >> 12))
+            | (0x80 | ((c >> 6) & 0x3f)) << 8
+            | (0x80 | (c & 0x3f)) << 16;
+        numBytes = 3;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < numChars
+          && Character.isLowSurrogate(data.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, data.charAt(++i));
+        utf8 = (0xf0 | (codePoint >> 18))
+            | (0x80 | ((codePoint >> 12) & 0x3f)) << 8
+            | (0x80 | ((codePoint >> 6) & 0x3f)) << 16
+            | (0x80 | (codePoint & 0x3f)) << 24;
+        numBytes = 4;
+      } else {
+        utf8 = '?';
+        numBytes = 1;
+      }
+
+      for (int b = 0; b < numBytes; b++) {
+        final long byteValue = (utf8 >>> (b << 3)) & 0xff;
+        if (blockLength < 8) {
+          k1 |= byteValue << (blockLength << 3);
+        } else {
+          k2 |= byteValue << ((blockLength - 8) << 3);
+        }
+        blockLength++;
+        length++;
+
+        if (blockLength == 16) {
+          h1 ^= mixK1(k1);
+          h1 = Long.rotateLeft(h1, R2);
+          h1 += h2;
+          h1 = h1 * M + N1;
+
+          h2 ^= mixK2(k2);
+          h2 = Long.rotateLeft(h2, R1);
+          h2 += h1;
+          h2 = h2 * M + N2;
+
+          k1 = 0;
+          k2 = 0;
+          blockLength = 0;
+        }
+      }
+    }
+
+    // tail
+    if (blockLength > 8) {
+      h2 ^= mixK2(k2);
+    }
+    if (blockLength > 0) {
+      h1 ^= mixK1(k1);
+    }
+
+    fmix128(h1, h2, length, out, outOffset);
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, R1);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, R3);
+    k2 *= C1;
+    return k2;
+  }
+
+  private static void fmix128(long h1, long h2, long length, long[] out, int outOffset) {
     h1 ^= length;
     h2 ^= length;
 
@@ -434,7 +714,8 @@ public class Murmur3 {
     h1 += h2;
     h2 += h1;
 
-    return new long[]{h1, h2};
+    out[outOffset] = h1;
+    out[outOffset + 1] = h2;
   }
 
   private static long fmix64(long h) {
@@ -538,6 +819,190 @@ public class Murmur3 {
     }
   }
 
+  /**
+   * Computes the Murmur3 128-bit variant of a value which is added in segments, without copying the
+   * segments into one array first. After {@link #start}, any sequence of {@code add} calls produces
+   * the same hashcode as {@link Murmur3#hash128(byte[], int, int, int)} would on the concatenation
+   * of the added bytes. Instances can be reused by calling {@link #start} again.
+   */
+  public static class IncrementalHash128 {
+    // bytes added since the last complete 16 byte block
+    final byte[] tail = new byte[16];
+    int tailLen;
+    long totalLen;
+    int seed;
+    long h1;
+    long h2;
+    // whether start was called, without which the seed would silently be 0
+    private boolean started;
+
+    public final void start() {
+      start(DEFAULT_SEED);
+    }
+
+    public final void start(int seed) {
+      started = true;
+      tailLen = 0;
+      totalLen = 0;
+      this.seed = seed;
+      h1 = seed;
+      h2 = seed;
+    }
+
+    public final void add(byte[] data) {
+      add(data, 0, data.length);
+    }
+
+    public final void add(byte[] data, int offset, int length) {
+      totalLen += length;
+      if (tailLen > 0) {
+        final int numTailBytes = Math.min(16 - tailLen, length);
+        System.arraycopy(data, offset, tail, tailLen, numTailBytes);
+        tailLen += numTailBytes;
+        offset += numTailBytes;
+        length -= numTailBytes;
+        if (tailLen < 16) {
+          return;
+        }
+        mixBlock(readLongLE(tail, 0), readLongLE(tail, 8));
+        tailLen = 0;
+      }
+
+      final int nblocks = length >> 4;
+      if (nblocks > 0) {
+        final ByteBuffer blocks = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < nblocks; i++) {
+          final int i16 = offset + (i << 4);
+          mixBlock(blocks.getLong(i16), blocks.getLong(i16 + 8));
+        }
+      }
+
+      tailLen = length - (nblocks << 4);
+      System.arraycopy(data, offset + (nblocks << 4), tail, 0, tailLen);
+    }
+
+    /**
+     * Adds the 8 bytes of {@code value} in big-endian order.
+     */
+    public final void add(long value) {
+      for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+        addByte((byte) (value >>> shift));
+      }
+    }
+
+    /**
+     * Adds the bytes between the position and the limit of {@code data}. The bytes are read in
+     * place, so this works without copying for heap, direct and read-only buffers alike. The
+     * position, limit and byte order of the buffer are left unchanged.
+     */
+    public final void add(ByteBuffer data) {
+      final int offset = data.position();
+      final int length = data.remaining();
+      if (data.hasArray()) {
+        add(data.array(), data.arrayOffset() + offset, length);
+        return;
+      }
+
+      int i = 0;
+      for (; i < length && tailLen > 0; i++) {
+        addByte(data.get(offset + i));
+      }
+
+      final boolean littleEndian = data.order() == ByteOrder.LITTLE_ENDIAN;
+      for (; i + 16 <= length; i += 16) {
+        long k1 = data.getLong(offset + i);
+        long k2 = data.getLong(offset + i + 8);
+        if (!littleEndian) {
+          k1 = Long.reverseBytes(k1);
+          k2 = Long.reverseBytes(k2);
+        }
+        mixBlock(k1, k2);
+        totalLen += 16;
+      }
+
+      for (; i < length; i++) {
+        addByte(data.get(offset + i));
+      }
+    }
+
+    /**
+     * Writes the hashcode of the bytes added so far to {@code out}. This does not change the
+     * state, so more bytes can still be added afterwards.
+     *
+     * @param out       - array which receives the hashcode (2 longs)
+     * @param outOffset - index in out at which the hashcode is written
+     */
+    public final void end(long[] out, int outOffset) {
+      long k1 = 0;
+      long k2 = 0;
+      for (int i = tailLen - 1; i >= 8; i--) {
+        k2 ^= ((long) tail[i] & 0xff) << ((i - 8) << 3);
+      }
+      for (int i = Math.min(tailLen, 8) - 1; i >= 0; i--) {
+        k1 ^= ((long) tail[i] & 0xff) << (i << 3);
+      }
+
+      long finalH1 = h1;
+      long finalH2 = h2;
+      if (tailLen > 8) {
+        finalH2 ^= mixK2(k2);
+      }
+      if (tailLen > 0) {
+        finalH1 ^= mixK1(k1);
+      }
+
+      fmix128(finalH1, finalH2, totalLen, out, outOffset);
+    }
+
+    /**
+     * @return the hashcode (2 longs) of the bytes added so far
+     */
+    public final long[] end() {
+      final long[] out = new long[2];
+      end(out, 0);
+      return out;
+    }
+
+    void checkStarted() {
+      if (!started) {
+        throw new IllegalStateException(
+            "IncrementalHash128.start() must be called before the hash is offered");
+      }
+    }
+
+    private void addByte(byte b) {
+      totalLen++;
+      tail[tailLen++] = b;
+      if (tailLen == 16) {
+        mixBlock(readLongLE(tail, 0), readLongLE(tail, 8));
+        tailLen = 0;
+      }
+    }
+
+    private void mixBlock(long k1, long k2) {
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, R2);
+      h1 += h2;
+      h1 = h1 * M + N1;
+
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, R1);
+      h2 += h1;
+      h2 = h2 * M + N2;
+    }
+  }
+
+  private static long readLongLE(byte[] data, int offset) {
+    return ((long) data[offset] & 0xff)
+        | (((long) data[offset + 1] & 0xff) << 8)
+        | (((long) data[offset + 2] & 0xff) << 16)
+        | (((long) data[offset + 3] & 0xff) << 24)
+        | (((long) data[offset + 4] & 0xff) << 32)
+        | (((long) data[offset + 5] & 0xff) << 40)
+        | (((long) data[offset + 6] & 0xff) << 48)
+        | (((long) data[offset + 7] & 0xff) << 56);
+  }
+
   private static int orBytes(byte b1, byte b2, byte b3, byte b4) {
     return (b1 & 0xff) | ((b2 & 0xff) << 8) | ((b3 & 0xff) << 16) | ((b4 & 0xff) << 24);
   }
@@ -0,0 +1,50 @@
+package com.liveramp.hyperminhash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The 128-bit variant of {@link Murmur3} with {@link Murmur3#DEFAULT_SEED}. This is the hasher
+ * sketches use unless they're given another one, and the only one understood by sketches
+ * serialized before hashers were configurable.
+ */
+public class Murmur3Hasher128 implements Hasher128 {
+
+  private static final Murmur3Hasher128 INSTANCE = new Murmur3Hasher128();
+
+  private Murmur3Hasher128() {
+  }
+
+  public static Murmur3Hasher128 getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public void hash128(byte[] data, int offset, int length, long[] out, int outOffset) {
+    Murmur3.hash128(data, offset, length, Murmur3.DEFAULT_SEED, out, outOffset);
+  }
+
+  @Override
+  public void hash128(ByteBuffer data, int offset, int length, long[] out, int outOffset) {
+    Murmur3.hash128(data, offset, length, Murmur3.DEFAULT_SEED, out, outOffset);
+  }
+
+  @Override
+  public void hash128(long value, long[] out, int outOffset) {
+    Murmur3.hash128(value, out, outOffset);
+  }
+
+  @Override
+  public void hash128(int value, long[] out, int outOffset) {
+    Murmur3.hash128(value, out, outOffset);
+  }
+
+  @Override
+  public void hash128(long mostSigBits, long leastSigBits, long[] out, int outOffset) {
+    Murmur3.hash128(mostSigBits, leastSigBits, out, outOffset);
+  }
+
+  @Override
+  public void hash128(CharSequence value, long[] out, int outOffset) {
+    Murmur3.hash128(value, out, outOffset);
+  }
+}
@@ -0,0 +1,78 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * A {@link HyperMinHash} whose registers are held off the heap, in a direct buffer, for services
+ * which keep very many sketches in memory at once. The registers then take no heap space, and the
+ * garbage collector neither copies nor scans them, so a large population of sketches doesn't make
+ * collections any longer. Off-heap memory is limited by {@code -XX:MaxDirectMemorySize}, which
+ * defaults to the maximum heap size.
+ *
+ * <p>Call {@link #close()} to free the registers once the sketch isn't needed anymore. Sketches
+ * which are never closed are freed by the garbage collector instead, once they're unreachable.
+ * Closed sketches throw an {@link IllegalStateException} when they're used, including when their
+ * cardinality is estimated.
+ *
+ * <p>An OffHeapHyperMinHash holds exactly the same registers as a {@link HyperMinHash} which was
+ * offered the same values, so it works with {@link HyperMinHashCombiner} and {@link
+ * HyperMinHashSerDe} just the same. Unions and deep copies of an OffHeapHyperMinHash are held off
+ * the heap as well, and must be closed too. The intermediate unions which {@link
+ * HyperMinHashCombiner#parallelUnion} builds along the way are closed by the combiner. A
+ * serialized OffHeapHyperMinHash has the same layout as a {@link HyperMinHash} with the same
+ * parameters, and is deserialized as a plain {@link HyperMinHash}; {@link #copyOf(HyperMinHash)}
+ * moves it off the heap.
+ *
+ * <p>Like {@link HyperMinHash}, it isn't thread-safe. p can be at most 28 with r up to 25, and at
+ * most 27 with larger r.
+ */
+public class OffHeapHyperMinHash extends HyperMinHash implements AutoCloseable {
+
+  /**
+   * @param p HLL precision parameter
+   * @param r Number of MinHash bits to keep
+   */
+  public OffHeapHyperMinHash(int p, int r) {
+    this(p, r, Murmur3Hasher128.getInstance());
+  }
+
+  /**
+   * @param p      HLL precision parameter
+   * @param r      Number of MinHash bits to keep
+   * @param hasher hash function applied to offered values
+   */
+  public OffHeapHyperMinHash(int p, int r, Hasher128 hasher) {
+    this(p, r, new OffHeapRegisters(p, r), hasher);
+  }
+
+  OffHeapHyperMinHash(int p, int r, Registers<?> registers, Hasher128 hasher) {
+    super(p, r, registers, hasher);
+  }
+
+  /**
+   * @return an OffHeapHyperMinHash with the same parameters and registers as {@code sketch}
+   */
+  public static OffHeapHyperMinHash copyOf(HyperMinHash sketch) {
+    final OffHeapHyperMinHash copy = new OffHeapHyperMinHash(sketch.p, sketch.r, sketch.hasher);
+    copy.registers.mergeFrom(sketch.registers);
+    return copy;
+  }
+
+  /**
+   * @return true once the sketch has been closed
+   */
+  public boolean isClosed() {
+    return ((OffHeapRegisters) registers).isReleased();
+  }
+
+  /**
+   * Frees the memory of the registers. Closing a sketch more than once does nothing.
+   */
+  @Override
+  public void close() {
+    ((OffHeapRegisters) registers).release();
+  }
+
+  @Override
+  public OffHeapHyperMinHash deepCopy() {
+    return new OffHeapHyperMinHash(p, r, registers.deepCopy(), hasher);
+  }
+}
@@ -0,0 +1,266 @@
+package com.liveramp.hyperminhash;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Registers held in a direct {@link ByteBuffer} rather than an array, so that they take no space
+ * on the heap and are never copied or scanned by the garbage collector. Registers are ints for r
+ * up to 25 and longs otherwise, like {@link IntRegisters} and {@link LongRegisters}, in native
+ * byte order.
+ *
+ * <p>The memory is freed by {@link #release()}, or by the garbage collector once the registers
+ * are unreachable if they're never released. Released registers throw an {@link
+ * IllegalStateException} when they're used. Like the array-backed registers, these aren't
+ * thread-safe, and they must not be released while another thread uses them.
+ */
+class OffHeapRegisters implements Registers<OffHeapRegisters> {
+
+  // frees the memory of a direct buffer, or does nothing if this JVM doesn't let us
+  private static final BufferReleaser RELEASER = BufferReleaser.create();
+
+  private final int p;
+  private final int r;
+  // the width of each register, as a shift of the register index
+  private final int shift;
+  private final RegisterHistogram positions;
+  // null once released
+  private ByteBuffer registers;
+
+  OffHeapRegisters(int p, int r) {
+    this(p, r, RegisterHistogram.ofEmptyRegisters(NUM_POSITIONS, 1 << p));
+  }
+
+  private OffHeapRegisters(int p, int r, RegisterHistogram positions) {
+    this.p = p;
+    this.r = r;
+    this.shift = r > 25 ? 3 : 2;
+    if (p > Integer.SIZE - 2 - shift) {
+      throw new IllegalArgumentException(
+          "p cannot be greater than " + (Integer.SIZE - 2 - shift) + " when r is " + r
+              + " and using OffHeapRegisters, since a direct buffer holds less than 2 GB");
+    }
+    this.positions = positions;
+    // direct buffers are zeroed, so every register starts out empty
+    this.registers = ByteBuffer.allocateDirect((1 << p) << shift).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Frees the memory of these registers. They can't be used afterwards. Releasing registers more
+   * than once does nothing.
+   */
+  void release() {
+    final ByteBuffer buffer = registers;
+    registers = null;
+    if (buffer != null) {
+      RELEASER.release(buffer);
+    }
+  }
+
+  /**
+   * @return true once {@link #release()} has been called
+   */
+  boolean isReleased() {
+    return registers == null;
+  }
+
+  private ByteBuffer buffer() {
+    final ByteBuffer buffer = registers;
+    if (buffer == null) {
+      throw new IllegalStateException("sketch is closed");
+    }
+    return buffer;
+  }
+
+  private long get(ByteBuffer buffer, int index) {
+    return shift == 3 ? buffer.getLong(index << 3) : buffer.getInt(index << 2);
+  }
+
+  @Override
+  public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
+    final ByteBuffer buffer = buffer();
+    final long currentRegister = get(buffer, registerIndex);
+    if (!LongRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+      return false;
+    }
+
+    set(buffer, registerIndex, currentRegister, incomingRegister);
+    return true;
+  }
+
+  @Override
+  public int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    final ByteBuffer buffer = buffer();
+    int numChanged = 0;
+    for (int i = 0; i < length; i++) {
+      final int registerIndex = registerIndexes[i];
+      final long incomingRegister = incomingRegisters[i];
+      final long currentRegister = get(buffer, registerIndex);
+      if (LongRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(buffer, registerIndex, currentRegister, incomingRegister);
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  @Override
+  public void mergeFrom(Registers<?> other, int fromIndex, int toIndex) {
+    final ByteBuffer buffer = buffer();
+    if (!(other instanceof OffHeapRegisters)) {
+      Registers.super.mergeFrom(other, fromIndex, toIndex);
+      return;
+    }
+
+    final ByteBuffer otherBuffer = ((OffHeapRegisters) other).buffer();
+    for (int i = fromIndex; i < toIndex; i++) {
+      final long incomingRegister = get(otherBuffer, i);
+      final long currentRegister = get(buffer, i);
+      if (LongRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(buffer, i, currentRegister, incomingRegister);
+      }
+    }
+  }
+
+  private void set(
+      ByteBuffer buffer,
+      int registerIndex,
+      long currentRegister,
+      long incomingRegister) {
+    if (shift == 3) {
+      buffer.putLong(registerIndex << 3, incomingRegister);
+    } else {
+      buffer.putInt(registerIndex << 2, Math.toIntExact(incomingRegister));
+    }
+    positions.move(
+        LongPacker.unpackPositionOfFirstOne(currentRegister, r),
+        LongPacker.unpackPositionOfFirstOne(incomingRegister, r));
+  }
+
+  @Override
+  public long getRegisterAtIndex(int index) {
+    return get(buffer(), index);
+  }
+
+  @Override
+  public OffHeapRegisters deepCopy() {
+    final OffHeapRegisters copy = new OffHeapRegisters(p, r, positions.copy());
+    // a duplicate has its own position, so copying doesn't change ours
+    copy.registers.put(buffer().duplicate());
+    copy.registers.clear();
+    return copy;
+  }
+
+  @Override
+  public int getNumRegisters() {
+    buffer();
+    return 1 << p;
+  }
+
+  @Override
+  public int getPositionOfFirstOneAtRegister(int index) {
+    return LongPacker.unpackPositionOfFirstOne(getRegisterAtIndex(index), r);
+  }
+
+  @Override
+  public long getMantissaAtRegister(int index) {
+    return LongPacker.unpackMantissa(getRegisterAtIndex(index), r);
+  }
+
+  @Override
+  public int getNumZeroRegisters() {
+    // only empty registers have no first one
+    return getPositionHistogram().count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    buffer();
+    return positions;
+  }
+
+  @Override
+  public String toString() {
+    if (registers == null) {
+      return "OffHeapRegisters{released, p=" + p + ", r=" + r + '}';
+    }
+
+    final StringBuilder values = new StringBuilder("[");
+    for (int i = 0; i < getNumRegisters(); i++) {
+      if (i > 0) {
+        values.append(", ");
+      }
+      values.append(getRegisterAtIndex(i));
+    }
+    return "OffHeapRegisters{" +
+        "registers=" + values.append(']') +
+        ", p=" + p +
+        ", r=" + r +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    OffHeapRegisters that = (OffHeapRegisters) o;
+    // ByteBuffer.equals compares the remaining bytes, which are all of them
+    return p == that.p &&
+        r == that.r &&
+        Objects.equals(registers, that.registers);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Objects.hash(p, r);
+    result = 31 * result + Objects.hashCode(registers);
+    return result;
+  }
+
+  /**
+   * Frees the memory of direct buffers right away. There's no public API for that in Java 8, so
+   * this uses {@code sun.misc.Unsafe.invokeCleaner} on Java 9 and later, and the buffer's cleaner
+   * on Java 8. If neither can be found, buffers are left for the garbage collector to free.
+   */
+  private interface BufferReleaser {
+
+    void release(ByteBuffer buffer);
+
+    static BufferReleaser create() {
+      try {
+        final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        final Object unsafe = theUnsafe.get(null);
+        return buffer -> invoke(invokeCleaner, unsafe, buffer);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // not Java 9 or later
+      }
+
+      try {
+        final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+        final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+        return buffer -> invoke(clean, invoke(cleaner, buffer));
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        return buffer -> {
+        };
+      }
+    }
+
+    static Object invoke(Method method, Object target, Object... args) {
+      try {
+        return method.invoke(target, args);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Could not release direct buffer", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package com.liveramp.hyperminhash;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Unions sketches on a {@link ForkJoinPool}, for the combiners' {@code parallelUnion} methods.
+ *
+ * <p>Many sketches are unioned with a tree reduction: each leaf copies the first of at most
+ * {@code threshold} consecutive sketches and merges the rest into it, and each inner node merges
+ * the union of its right half into the union of its left half. A few very large sketches are
+ * unioned by splitting their registers into ranges instead, and merging each range of every
+ * sketch in its own task.
+ *
+ * <p>Unions only ever raise registers, in an order which doesn't affect the result, so both give
+ * exactly the registers of a sequential union. The result is always built on a copy of the first
+ * sketch, so it also has the same type.
+ */
+final class ParallelUnion {
+
+  static final int DEFAULT_THRESHOLD = 64;
+
+  // Smaller sketches are merged quickly enough that splitting their registers costs more than it
+  // saves.
+  private static final int MIN_REGISTERS_TO_SPLIT = 1 << 20;
+  // ranges are split until they hold at most this many registers
+  private static final int MAX_REGISTERS_PER_RANGE = 1 << 16;
+
+  private ParallelUnion() {
+  }
+
+  static void checkThreshold(int threshold) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("Threshold must be positive, but was " + threshold);
+    }
+  }
+
+  /**
+   * @param copy  returns a deep copy of a sketch
+   * @param merge merges the second sketch into the first
+   */
+  static <T> T treeUnion(
+      List<T> sketches,
+      ForkJoinPool pool,
+      int threshold,
+      UnaryOperator<T> copy,
+      BiConsumer<T, T> merge) {
+    return treeUnion(sketches, pool, threshold, copy, merge, union -> {
+    });
+  }
+
+  /**
+   * @param copy    returns a deep copy of a sketch
+   * @param merge   merges the second sketch into the first
+   * @param discard frees an intermediate union once it has been merged into another, which is
+   *                never done to the returned union
+   */
+  static <T> T treeUnion(
+      List<T> sketches,
+      ForkJoinPool pool,
+      int threshold,
+      UnaryOperator<T> copy,
+      BiConsumer<T, T> merge,
+      Consumer<T> discard) {
+    return pool.invoke(
+        new TreeUnionTask<>(sketches, 0, sketches.size(), threshold, copy, merge, discard));
+  }
+
+  /**
+   * @return true if {@link #registerRangeUnion} is worthwhile for sketches with {@code
+   * numRegisters} registers, given that a tree reduction would merge them in a single task
+   */
+  static boolean shouldSplitRegisters(int numSketches, int numRegisters, int threshold) {
+    return numSketches <= threshold && numRegisters >= MIN_REGISTERS_TO_SPLIT;
+  }
+
+  /**
+   * Merges each of {@code sources} into {@code target}, splitting the registers into ranges which
+   * are merged by separate tasks. The tasks race to update the histogram of {@code target}, so
+   * each of them also counts the positions of its own range, and the sum of those replaces it.
+   */
+  static void registerRangeUnion(
+      Registers<?> target, List<Registers<?>> sources, ForkJoinPool pool) {
+    final RegisterHistogram positions =
+        pool.invoke(new RegisterRangeTask(target, sources, 0, target.getNumRegisters()));
+    target.getPositionHistogram().setAll(positions);
+  }
+
+  private static class TreeUnionTask<T> extends RecursiveTask<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<T> sketches;
+    private final int from;
+    private final int to;
+    private final int threshold;
+    private final UnaryOperator<T> copy;
+    private final BiConsumer<T, T> merge;
+    private final Consumer<T> discard;
+
+    TreeUnionTask(
+        List<T> sketches,
+        int from,
+        int to,
+        int threshold,
+        UnaryOperator<T> copy,
+        BiConsumer<T, T> merge,
+        Consumer<T> discard) {
+      this.sketches = sketches;
+      this.from = from;
+      this.to = to;
+      this.threshold = threshold;
+      this.copy = copy;
+      this.merge = merge;
+      this.discard = discard;
+    }
+
+    @Override
+    protected T compute() {
+      if (to - from <= threshold) {
+        final T union = copy.apply(sketches.get(from));
+        for (int i = from + 1; i < to; i++) {
+          merge.accept(union, sketches.get(i));
+        }
+        return union;
+      }
+
+      final int mid = (from + to) >>> 1;
+      final TreeUnionTask<T> left =
+          new TreeUnionTask<>(sketches, from, mid, threshold, copy, merge, discard);
+      final TreeUnionTask<T> right =
+          new TreeUnionTask<>(sketches, mid, to, threshold, copy, merge, discard);
+      right.fork();
+      final T union = left.compute();
+      final T rightUnion = right.join();
+      merge.accept(union, rightUnion);
+      discard.accept(rightUnion);
+      return union;
+    }
+  }
+
+  private static class RegisterRangeTask extends RecursiveTask<RegisterHistogram> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Registers<?> target;
+    private final List<Registers<?>> sources;
+    private final int fromIndex;
+    private final int toIndex;
+
+    RegisterRangeTask(Registers<?> target, List<Registers<?>> sources, int fromIndex, int toIndex) {
+      this.target = target;
+      this.sources = sources;
+      this.fromIndex = fromIndex;
+      this.toIndex = toIndex;
+    }
+
+    /**
+     * @return the histogram of the positions of the merged registers of the range
+     */
+    @Override
+    protected RegisterHistogram compute() {
+      if (toIndex - fromIndex <= MAX_REGISTERS_PER_RANGE) {
+        for (Registers<?> source : sources) {
+          target.mergeFrom(source, fromIndex, toIndex);
+        }
+        final RegisterHistogram positions = new RegisterHistogram(Registers.NUM_POSITIONS);
+        for (int i = fromIndex; i < toIndex; i++) {
+          positions.add(target.getPositionOfFirstOneAtRegister(i));
+        }
+        return positions;
+      }
+
+      final int mid = (fromIndex + toIndex) >>> 1;
+      final RegisterRangeTask right = new RegisterRangeTask(target, sources, mid, toIndex);
+      right.fork();
+      final RegisterHistogram positions =
+          new RegisterRangeTask(target, sources, fromIndex, mid).compute();
+      positions.addAll(right.join());
+      return positions;
+    }
+  }
+}
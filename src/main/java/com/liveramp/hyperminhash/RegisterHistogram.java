@@ -0,0 +1,120 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Arrays;
+
+/**
+ * Number of registers of a sketch in each bucket of the part of a register which the cardinality
+ * estimators need: the position of the first one for {@link HyperMinHash}, and the leading zeros
+ * for {@link BetaMinHash}. Registers keep it up to date as they change, so cardinalities are
+ * estimated from its few buckets instead of from every register.
+ *
+ * <p>Cardinality estimates only depend on these counts, and the scans which estimate cardinalities
+ * without a sketch, such as the combiners' {@code unionCardinality}, count their registers into a
+ * histogram as well. So every estimate for the same registers is computed from the same sum, in
+ * the same order. Like the registers it belongs to, a histogram isn't thread-safe.
+ */
+final class RegisterHistogram {
+
+  private final int[] counts;
+
+  /**
+   * @return a histogram of {@code numRegisters} registers which are all in bucket 0
+   */
+  static RegisterHistogram ofEmptyRegisters(int numBuckets, int numRegisters) {
+    final RegisterHistogram histogram = new RegisterHistogram(numBuckets);
+    histogram.add(0, numRegisters);
+    return histogram;
+  }
+
+  /**
+   * Creates a histogram of no registers at all, which registers are then added to.
+   */
+  RegisterHistogram(int numBuckets) {
+    this(new int[numBuckets]);
+  }
+
+  private RegisterHistogram(int[] counts) {
+    this.counts = counts;
+  }
+
+  void add(int bucket) {
+    counts[bucket]++;
+  }
+
+  void add(int bucket, int numRegisters) {
+    counts[bucket] += numRegisters;
+  }
+
+  void addAll(RegisterHistogram other) {
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      counts[bucket] += other.counts[bucket];
+    }
+  }
+
+  /**
+   * Replaces every count with that of {@code other}, e.g. once registers which were updated by
+   * several threads at once have been counted again.
+   */
+  void setAll(RegisterHistogram other) {
+    System.arraycopy(other.counts, 0, counts, 0, counts.length);
+  }
+
+  /**
+   * Records that a register moved from {@code fromBucket} to {@code toBucket}, which may be the
+   * same bucket.
+   */
+  void move(int fromBucket, int toBucket) {
+    counts[fromBucket]--;
+    counts[toBucket]++;
+  }
+
+  int count(int bucket) {
+    return counts[bucket];
+  }
+
+  int getNumBuckets() {
+    return counts.length;
+  }
+
+  /**
+   * @param weights weight of a register in each bucket
+   * @return the sum of the weights of all registers, summed from the last bucket to the first
+   */
+  double weightedSum(double[] weights) {
+    double sum = 0;
+    for (int bucket = counts.length - 1; bucket >= 0; bucket--) {
+      if (counts[bucket] != 0) {
+        sum += counts[bucket] * weights[bucket];
+      }
+    }
+    return sum;
+  }
+
+  RegisterHistogram copy() {
+    return new RegisterHistogram(Arrays.copyOf(counts, counts.length));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RegisterHistogram that = (RegisterHistogram) o;
+    return Arrays.equals(counts, that.counts);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(counts);
+  }
+
+  @Override
+  public String toString() {
+    return "RegisterHistogram{" +
+        "counts=" + Arrays.toString(counts) +
+        '}';
+  }
+}
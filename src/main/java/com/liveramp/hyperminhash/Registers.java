@@ -5,18 +5,39 @@ package com.liveramp.hyperminhash;
  * representation possible for registers without HMH's "business logic" having to know about it.
  * <p>
  * For example, if R=20, then we can use an int to represent a register instead of a long (
- * since we'd use 6 bits for leading zeros and 20 bits for the minHash portion).
+ * since we'd use 6 bits for leading zeros and 20 bits for the minHash portion), and if R=10, a
+ * short.
  */
 interface Registers<T extends Registers<T>> {
 
+  // IntPacker and LongPacker store the position of the first one in 6 bits
+  int NUM_POSITIONS = 1 << 6;
+
   /**
-   * @return a {@link Registers} object of the appropriate size.
+   * @return a {@link Registers} object of the appropriate size: the narrowest of byte, short, int
+   * and long which fits 6 + r bits.
    */
-  static Registers newRegisters(int p, int r) {
+  static Registers<?> newRegisters(int p, int r) {
     if (r > 25) {
       return new LongRegisters(p, r);
-    } else {
+    } else if (r > 10) {
       return new IntRegisters(p, r);
+    } else if (r > 2) {
+      return new ShortRegisters(p, r);
+    } else {
+      return new ByteRegisters(p, r);
+    }
+  }
+
+  /**
+   * @return a thread-safe {@link Registers} object of the appropriate size, whose updates are
+   * lock-free.
+   */
+  static Registers<?> newAtomicRegisters(int p, int r) {
+    if (r > 25) {
+      return new AtomicLongRegisters(p, r);
+    } else {
+      return new AtomicIntRegisters(p, r);
     }
   }
 
@@ -27,6 +48,52 @@ interface Registers<T extends Registers<T>> {
    */
   boolean updateIfGreaterThan(int registerIndex, long incomingRegister);
 
+  /**
+   * Applies {@link #updateIfGreaterThan(int, long)} to the first {@code length} pairs of {@code
+   * registerIndexes} and {@code incomingRegisters}, in order. Implementations override this to
+   * apply a whole batch in one tight loop instead of one interface call per register.
+   *
+   * @return the number of updates which changed a register
+   */
+  default int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    int numChanged = 0;
+    for (int i = 0; i < length; i++) {
+      if (updateIfGreaterThan(registerIndexes[i], incomingRegisters[i])) {
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  /**
+   * Raises each register of this object to the corresponding register of {@code other}, with the
+   * ordering of {@link #updateIfGreaterThan(int, long)}.
+   *
+   * @param other registers with the same p and r as this object
+   */
+  default void mergeFrom(Registers<?> other) {
+    mergeFrom(other, 0, getNumRegisters());
+  }
+
+  /**
+   * Like {@link #mergeFrom(Registers)}, but only for the registers from {@code fromIndex}
+   * (inclusive) to {@code toIndex} (exclusive). Registers are visited in index order, and
+   * implementations override this with a tight loop for sources of their own type. Merges of
+   * disjoint ranges may run on different threads at once, but since they race to update {@link
+   * #getPositionHistogram()}, the caller must then replace it with a count of the merged registers.
+   * Sparse sources only visit their set registers, which may be in any order.
+   */
+  default void mergeFrom(Registers<?> other, int fromIndex, int toIndex) {
+    if (other instanceof SparseRegisters) {
+      ((SparseRegisters) other).mergeInto(this, fromIndex, toIndex);
+      return;
+    }
+
+    for (int i = fromIndex; i < toIndex; i++) {
+      updateIfGreaterThan(i, other.getRegisterAtIndex(i));
+    }
+  }
+
   /**
    * Returns the value of the register at the given index, casting to a long if needed.
    *
@@ -61,4 +128,23 @@ interface Registers<T extends Registers<T>> {
    * @return The number of registers whose value is 0
    */
   int getNumZeroRegisters();
+
+  /**
+   * @return the number of registers with each position of the first one, which must not be
+   * modified. Implementations keep this up to date as their registers change, so it takes
+   * O({@link #NUM_POSITIONS}) rather than O(number of registers) time.
+   */
+  RegisterHistogram getPositionHistogram();
+
+  /**
+   * @return the number of registers with each position of the first one, counted from scratch.
+   * This is always equal to {@link #getPositionHistogram()}.
+   */
+  default RegisterHistogram countPositions() {
+    final RegisterHistogram histogram = new RegisterHistogram(NUM_POSITIONS);
+    for (int i = 0; i < getNumRegisters(); i++) {
+      histogram.add(getPositionOfFirstOneAtRegister(i));
+    }
+    return histogram;
+  }
 }
@@ -9,13 +9,15 @@ import java.util.Optional;
  */
 class SerializationTokens {
 
-  private static final Map<Class, Byte> classToToken;
-  private static final Map<Byte, Class> tokenToClass;
+  private static final Map<Class<?>, Byte> classToToken;
+  private static final Map<Byte, Class<?>> tokenToClass;
+  private static final Map<Byte, Hasher128> tokenToHasher;
 
   static {
     // Tokens can only be added. They should not be removed or edited.
     classToToken = new HashMap<>();
     tokenToClass = new HashMap<>();
+    tokenToHasher = new HashMap<>();
 
     classToToken.put(HyperMinHash.class, (byte) 1);
     tokenToClass.put((byte) 1, HyperMinHash.class);
@@ -28,14 +30,38 @@ class SerializationTokens {
 
     classToToken.put(IntRegisters.class, (byte) 4);
     tokenToClass.put((byte) 4, IntRegisters.class);
+
+    classToToken.put(Murmur3Hasher128.class, (byte) 5);
+    tokenToClass.put((byte) 5, Murmur3Hasher128.class);
+    tokenToHasher.put((byte) 5, Murmur3Hasher128.getInstance());
+
+    classToToken.put(Xxh3Hasher128.class, (byte) 6);
+    tokenToClass.put((byte) 6, Xxh3Hasher128.class);
+    tokenToHasher.put((byte) 6, Xxh3Hasher128.getInstance());
+
+    classToToken.put(SparseRegisters.class, (byte) 7);
+    tokenToClass.put((byte) 7, SparseRegisters.class);
+
+    classToToken.put(BitPackedRegisters.class, (byte) 8);
+    tokenToClass.put((byte) 8, BitPackedRegisters.class);
+
+    classToToken.put(ShortRegisters.class, (byte) 9);
+    tokenToClass.put((byte) 9, ShortRegisters.class);
+
+    classToToken.put(ByteRegisters.class, (byte) 10);
+    tokenToClass.put((byte) 10, ByteRegisters.class);
   }
 
-  static Optional<Byte> getTokenForClass(Class clazz) {
+  static Optional<Byte> getTokenForClass(Class<?> clazz) {
     return Optional.ofNullable(classToToken.get(clazz));
   }
 
-  static Optional<Class> getClassForToken(byte token) {
+  static Optional<Class<?>> getClassForToken(byte token) {
     return Optional.ofNullable(tokenToClass.get(token));
   }
 
+  static Optional<Hasher128> getHasherForToken(byte token) {
+    return Optional.ofNullable(tokenToHasher.get(token));
+  }
+
 }
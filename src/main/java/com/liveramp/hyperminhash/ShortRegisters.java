@@ -0,0 +1,167 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Registers of 6 + r bits for r up to 10, each held in a short. They're read as unsigned values, so
+ * they take the same values and ordering as {@link IntRegisters}.
+ */
+class ShortRegisters implements Registers<ShortRegisters> {
+
+  final short[] registers;
+  private final int p;
+  private final int r;
+  private final RegisterHistogram positions;
+
+  ShortRegisters(int p, int r) {
+    this(p, r, new short[1 << p], RegisterHistogram.ofEmptyRegisters(NUM_POSITIONS, 1 << p));
+  }
+
+  ShortRegisters(int p, int r, short[] registers) {
+    this(p, r, registers, null);
+  }
+
+  /**
+   * @param positions histogram of {@code registers}, or null to count it
+   */
+  private ShortRegisters(int p, int r, short[] registers, RegisterHistogram positions) {
+    if (r > 10) {
+      throw new IllegalArgumentException("R cannot be greater than 10 when using ShortRegisters");
+    }
+
+    this.p = p;
+    this.r = r;
+    this.registers = registers;
+    this.positions = positions != null ? positions : countPositions();
+  }
+
+  @Override
+  public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
+    final int intIncomingRegister = (int) incomingRegister;
+    final int currentRegister = get(registerIndex);
+    if (!IntRegisters.isGreaterThan(intIncomingRegister, currentRegister, r)) {
+      return false;
+    }
+
+    set(registerIndex, currentRegister, intIncomingRegister);
+    return true;
+  }
+
+  @Override
+  public int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    int numChanged = 0;
+    for (int i = 0; i < length; i++) {
+      final int registerIndex = registerIndexes[i];
+      final int incomingRegister = (int) incomingRegisters[i];
+      final int currentRegister = get(registerIndex);
+      if (IntRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(registerIndex, currentRegister, incomingRegister);
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  @Override
+  public void mergeFrom(Registers<?> other, int fromIndex, int toIndex) {
+    if (!(other instanceof ShortRegisters)) {
+      Registers.super.mergeFrom(other, fromIndex, toIndex);
+      return;
+    }
+
+    final short[] otherRegisters = ((ShortRegisters) other).registers;
+    for (int i = fromIndex; i < toIndex; i++) {
+      final int incomingRegister = otherRegisters[i] & 0xFFFF;
+      final int currentRegister = get(i);
+      if (IntRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+        set(i, currentRegister, incomingRegister);
+      }
+    }
+  }
+
+  // registers are unsigned
+  private int get(int registerIndex) {
+    return registers[registerIndex] & 0xFFFF;
+  }
+
+  private void set(int registerIndex, int currentRegister, int incomingRegister) {
+    registers[registerIndex] = (short) incomingRegister;
+    positions.move(
+        IntPacker.unpackPositionOfFirstOne(currentRegister, r),
+        IntPacker.unpackPositionOfFirstOne(incomingRegister, r));
+  }
+
+  @Override
+  public long getRegisterAtIndex(int index) {
+    return get(index);
+  }
+
+  @Override
+  public ShortRegisters deepCopy() {
+    return new ShortRegisters(p, r, Arrays.copyOf(registers, registers.length), positions.copy());
+  }
+
+  @Override
+  public int getNumRegisters() {
+    return registers.length;
+  }
+
+  @Override
+  public int getPositionOfFirstOneAtRegister(int index) {
+    return IntPacker.unpackPositionOfFirstOne(get(index), r);
+  }
+
+  @Override
+  public long getMantissaAtRegister(int index) {
+    return (long) IntPacker.unpackMantissa(get(index), r);
+  }
+
+  @Override
+  public int getNumZeroRegisters() {
+    // only empty registers have no first one
+    return positions.count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    return positions;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder values = new StringBuilder("[");
+    for (int i = 0; i < registers.length; i++) {
+      if (i > 0) {
+        values.append(", ");
+      }
+      values.append(get(i));
+    }
+    return "ShortRegisters{" +
+        "registers=" + values.append(']') +
+        ", p=" + p +
+        ", r=" + r +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ShortRegisters that = (ShortRegisters) o;
+    return p == that.p &&
+        r == that.r &&
+        Arrays.equals(registers, that.registers);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Objects.hash(p, r);
+    result = 31 * result + Arrays.hashCode(registers);
+    return result;
+  }
+}
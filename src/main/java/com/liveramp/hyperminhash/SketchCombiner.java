@@ -19,6 +19,15 @@ public interface SketchCombiner<T extends IntersectionSketch<T>> extends Seriali
    */
   T union(Collection<T> sketches);
 
+  /**
+   * Return an estimate of the cardinality of the union of the sets represented by the sketches in
+   * {@code sketches}. This is the same as the cardinality of {@link #union(Collection)}, but
+   * implementations may compute it without building the union.
+   */
+  default long unionCardinality(Collection<T> sketches) {
+    return union(sketches).cardinality();
+  }
+
   /**
    * Return an estimate of the cardinality of the intersection of the elements in the sets
    * represented by {@code sketches}.
@@ -0,0 +1,70 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * Estimates of how the sets represented by several sketches overlap, which {@link
+ * HyperMinHashCombiner#overlap} and {@link BetaMinHashCombiner#overlap} compute together in a
+ * single scan of the sketches' registers.
+ */
+public class SketchOverlap {
+
+  private final long unionCardinality;
+  private final double similarity;
+
+  SketchOverlap(long unionCardinality, double similarity) {
+    this.unionCardinality = unionCardinality;
+    this.similarity = similarity;
+  }
+
+  /**
+   * @return an estimate of the cardinality of the union of the sets, the same as the cardinality of
+   * the union of the sketches
+   */
+  public long unionCardinality() {
+    return unionCardinality;
+  }
+
+  /**
+   * @return an estimate of the Jaccard index of the sets, the same as {@link
+   * SketchCombiner#similarity}
+   */
+  public double similarity() {
+    return similarity;
+  }
+
+  /**
+   * @return an estimate of the cardinality of the intersection of the sets, the same as {@link
+   * SketchCombiner#intersectionCardinality}
+   */
+  public long intersectionCardinality() {
+    return (long) (unionCardinality * similarity);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SketchOverlap that = (SketchOverlap) o;
+    return unionCardinality == that.unionCardinality
+        && Double.compare(similarity, that.similarity) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Long.hashCode(unionCardinality);
+    result = 31 * result + Double.hashCode(similarity);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "SketchOverlap{" +
+        "unionCardinality=" + unionCardinality +
+        ", similarity=" + similarity +
+        ", intersectionCardinality=" + intersectionCardinality() +
+        '}';
+  }
+}
@@ -0,0 +1,69 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * A {@link BetaMinHash} for sketches which are usually offered only a few distinct values, such
+ * as one sketch per user or per key of a large table. It starts out sparse, keeping only the
+ * registers which are set, in a hash table of 4 bytes per slot. Once more than 3072 registers are
+ * set, it switches to the same dense registers as a {@link BetaMinHash}. A sketch of 2,000 values
+ * takes about 12 KB instead of 32 KB.
+ *
+ * <p>The registers are always exactly those of a {@link BetaMinHash} which was offered the same
+ * values, so it's equal to that sketch, and cardinalities, unions and intersections are the same.
+ * A serialized SparseBetaMinHash which is still sparse only holds its set registers and is
+ * deserialized as a SparseBetaMinHash. Once dense, it has the same layout as a {@link
+ * BetaMinHash} and is deserialized as a plain {@link BetaMinHash}.
+ */
+public class SparseBetaMinHash extends BetaMinHash {
+
+  public SparseBetaMinHash() {
+    this(Murmur3Hasher128.getInstance());
+  }
+
+  /**
+   * @param hasher hash function applied to offered values
+   */
+  public SparseBetaMinHash(Hasher128 hasher) {
+    this(new SparseShortRegisters(), hasher);
+  }
+
+  SparseBetaMinHash(SparseShortRegisters sparseRegisters, Hasher128 hasher) {
+    this(null, sparseRegisters, countLeadingZeros(sparseRegisters), hasher);
+  }
+
+  private SparseBetaMinHash(
+      short[] registers,
+      SparseShortRegisters sparseRegisters,
+      RegisterHistogram leadingZeroCounts,
+      Hasher128 hasher) {
+    super(registers, sparseRegisters, leadingZeroCounts, hasher);
+  }
+
+  private static RegisterHistogram countLeadingZeros(SparseShortRegisters sparseRegisters) {
+    final RegisterHistogram leadingZeroCounts = RegisterHistogram.ofEmptyRegisters(
+        BetaMinHashCardinalityGetter.NUM_BUCKETS,
+        NUM_REGISTERS);
+    for (int slot = 0; slot < sparseRegisters.capacity(); slot++) {
+      leadingZeroCounts.move(
+          0,
+          BetaMinHashCardinalityGetter.bucket(sparseRegisters.register(slot)));
+    }
+    return leadingZeroCounts;
+  }
+
+  /**
+   * @return true while the registers are kept sparse
+   */
+  public boolean isSparse() {
+    return registers == null;
+  }
+
+  @Override
+  public SparseBetaMinHash deepCopy() {
+    final BetaMinHash copy = super.deepCopy();
+    return new SparseBetaMinHash(
+        copy.registers,
+        copy.sparseRegisters,
+        copy.leadingZeroCounts,
+        hasher);
+  }
+}
@@ -0,0 +1,54 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * A {@link HyperMinHash} for sketches which are usually offered only a few distinct values, such
+ * as one sketch per user or per key of a large table. It starts out with sparse registers, which
+ * only keep the registers that are set, in a hash table of 12 bytes per slot. It switches to the
+ * same dense registers as a {@link HyperMinHash} once more than 3/32 of the registers are set, at
+ * which point the table takes 3/8 of the memory of 2^p int registers, or 3/4 of 2^p short
+ * registers when r <= 10. With p = 16 and r = 10, a sketch of 2,000 values takes about 37 KB
+ * instead of 128 KB.
+ *
+ * <p>The registers are always exactly those of a {@link HyperMinHash} which was offered the same
+ * values, so cardinalities, unions and intersections are the same, and sparse and dense sketches
+ * can be combined with each other. A serialized SparseHyperMinHash which is still sparse only
+ * holds its set registers and is deserialized as a SparseHyperMinHash. Once dense, it has the same
+ * layout as a {@link HyperMinHash} and is deserialized as a plain {@link HyperMinHash}.
+ *
+ * <p>Like {@link HyperMinHash}, it isn't thread-safe.
+ */
+public class SparseHyperMinHash extends HyperMinHash {
+
+  /**
+   * @param p HLL precision parameter
+   * @param r Number of MinHash bits to keep
+   */
+  public SparseHyperMinHash(int p, int r) {
+    this(p, r, Murmur3Hasher128.getInstance());
+  }
+
+  /**
+   * @param p      HLL precision parameter
+   * @param r      Number of MinHash bits to keep
+   * @param hasher hash function applied to offered values
+   */
+  public SparseHyperMinHash(int p, int r, Hasher128 hasher) {
+    this(p, r, new SparseRegisters(p, r), hasher);
+  }
+
+  SparseHyperMinHash(int p, int r, Registers<?> registers, Hasher128 hasher) {
+    super(p, r, registers, hasher);
+  }
+
+  /**
+   * @return true while the registers are kept sparse
+   */
+  public boolean isSparse() {
+    return ((SparseRegisters) registers).isSparse();
+  }
+
+  @Override
+  public SparseHyperMinHash deepCopy() {
+    return new SparseHyperMinHash(p, r, registers.deepCopy(), hasher);
+  }
+}
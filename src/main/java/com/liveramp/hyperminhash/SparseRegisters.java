@@ -0,0 +1,364 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Registers of a sketch which only a few values have been offered to. Only the registers which
+ * aren't empty are kept, in a small open-addressing hash table from their index to their value.
+ * Once the table would need more than {@link #maxCapacity(int)} slots, where it would stop being
+ * much smaller than dense registers, the registers are moved into the dense registers of {@link
+ * Registers#newRegisters(int, int)}, and every method delegates to those from then on.
+ *
+ * <p>This is the sparse representation of HyperLogLog++, without its extra precision: the sketch
+ * is exactly the same as one which was dense all along.
+ */
+class SparseRegisters implements Registers<SparseRegisters> {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final int p;
+  private final int r;
+  private final int maxCapacity;
+
+  // Slots of the hash table, probed linearly. A slot holds the index of its register plus one,
+  // so that 0 marks an empty slot, and its value. These are null once the registers are dense.
+  private int[] keys;
+  private long[] values;
+  private int size;
+  private RegisterHistogram positions;
+
+  // the dense registers, which are null until there are too many set registers for the table
+  private Registers<?> dense;
+
+  SparseRegisters(int p, int r) {
+    this.p = p;
+    this.r = r;
+    this.maxCapacity = maxCapacity(p);
+    final int capacity = Math.min(INITIAL_CAPACITY, maxCapacity);
+    this.keys = new int[capacity];
+    this.values = new long[capacity];
+    this.positions = RegisterHistogram.ofEmptyRegisters(NUM_POSITIONS, 1 << p);
+  }
+
+  private SparseRegisters(SparseRegisters other) {
+    this.p = other.p;
+    this.r = other.r;
+    this.maxCapacity = other.maxCapacity;
+    if (other.dense != null) {
+      this.dense = other.dense.deepCopy();
+    } else {
+      this.keys = Arrays.copyOf(other.keys, other.keys.length);
+      this.values = Arrays.copyOf(other.values, other.values.length);
+      this.size = other.size;
+      this.positions = other.positions.copy();
+    }
+  }
+
+  /**
+   * @return the largest number of slots of the hash table at precision {@code p}, which is an
+   * eighth of the number of registers. With 12 bytes per slot, the table takes at most 3/8 of
+   * the memory of dense int registers, and 3/4 of dense short registers when r <= 10. It isn't
+   * smaller for short registers, since sparse sketches of that size may already be serialized.
+   */
+  static int maxCapacity(int p) {
+    return Math.max((1 << p) / 8, 2);
+  }
+
+  /**
+   * @return the largest number of registers which are kept sparse at precision {@code p}
+   */
+  static int maxSparseRegisters(int p) {
+    return maxSize(maxCapacity(p));
+  }
+
+  // the table is grown when it's more than three quarters full, which keeps probe sequences short
+  private static int maxSize(int capacity) {
+    return capacity - Math.max(capacity >> 2, 1);
+  }
+
+  /**
+   * @return true while the registers are kept sparse
+   */
+  boolean isSparse() {
+    return dense == null;
+  }
+
+  /**
+   * @return the number of set registers while they're sparse
+   */
+  int getNumSparseRegisters() {
+    return size;
+  }
+
+  /**
+   * @return the indexes of the set registers in increasing order, while they're sparse
+   */
+  int[] getSparseIndexes() {
+    final int[] indexes = new int[size];
+    int i = 0;
+    for (int key : keys) {
+      if (key != 0) {
+        indexes[i++] = key - 1;
+      }
+    }
+    Arrays.sort(indexes);
+    return indexes;
+  }
+
+  /**
+   * @return the dense registers, which are null while the registers are sparse
+   */
+  Registers<?> getDenseRegisters() {
+    return dense;
+  }
+
+  /**
+   * Moves the registers into dense registers, if they aren't already. This can't be undone.
+   */
+  void densify() {
+    if (dense != null) {
+      return;
+    }
+
+    final Registers<?> denseRegisters = Registers.newRegisters(p, r);
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != 0) {
+        denseRegisters.updateIfGreaterThan(keys[slot] - 1, values[slot]);
+      }
+    }
+    dense = denseRegisters;
+    keys = null;
+    values = null;
+    positions = null;
+  }
+
+  /**
+   * @return the slot holding the register at {@code registerIndex}, or the empty slot where it
+   * would be inserted
+   */
+  private static int findSlot(int[] keys, int registerIndex) {
+    final int key = registerIndex + 1;
+    int slot = firstSlot(key, keys.length);
+    while (keys[slot] != 0 && keys[slot] != key) {
+      slot = slot + 1 == keys.length ? 0 : slot + 1;
+    }
+    return slot;
+  }
+
+  private static int firstSlot(int key, int capacity) {
+    // Fibonacci hashing spreads neighbouring indexes over the table, and the product of the hash
+    // and the capacity maps it to a slot without a division
+    final long hash = (key * 0x9E3779B9) & 0xFFFFFFFFL;
+    return (int) ((hash * capacity) >>> Integer.SIZE);
+  }
+
+  @Override
+  public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
+    if (dense != null) {
+      return dense.updateIfGreaterThan(registerIndex, incomingRegister);
+    }
+
+    int slot = findSlot(keys, registerIndex);
+    final long currentRegister = values[slot];
+    // empty registers are only greater than registers with no first one, so they're never stored
+    if (!LongRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+      return false;
+    }
+
+    if (keys[slot] == 0) {
+      if (size == maxSize(keys.length)) {
+        if (keys.length == maxCapacity) {
+          densify();
+          return dense.updateIfGreaterThan(registerIndex, incomingRegister);
+        }
+        grow();
+        slot = findSlot(keys, registerIndex);
+      }
+      keys[slot] = registerIndex + 1;
+      size++;
+    }
+    values[slot] = incomingRegister;
+    positions.move(
+        LongPacker.unpackPositionOfFirstOne(currentRegister, r),
+        LongPacker.unpackPositionOfFirstOne(incomingRegister, r));
+    return true;
+  }
+
+  private void grow() {
+    final int capacity = Math.min(keys.length + (keys.length >> 1), maxCapacity);
+    final int[] newKeys = new int[capacity];
+    final long[] newValues = new long[capacity];
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != 0) {
+        final int newSlot = findSlot(newKeys, keys[slot] - 1);
+        newKeys[newSlot] = keys[slot];
+        newValues[newSlot] = values[slot];
+      }
+    }
+    keys = newKeys;
+    values = newValues;
+  }
+
+  @Override
+  public int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    if (dense != null) {
+      return dense.updateIfGreaterThan(registerIndexes, incomingRegisters, length);
+    }
+    return Registers.super.updateIfGreaterThan(registerIndexes, incomingRegisters, length);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Sparse registers are only merged range by range once they're dense, see {@link
+   * #densify()}. Merged into other registers, only the set registers are visited.
+   */
+  @Override
+  public void mergeFrom(Registers<?> other, int fromIndex, int toIndex) {
+    if (dense != null) {
+      dense.mergeFrom(other, fromIndex, toIndex);
+    } else {
+      // a source which is dense stays sparse here if only a few of its registers are set
+      Registers.super.mergeFrom(other, fromIndex, toIndex);
+    }
+  }
+
+  /**
+   * Merges these registers from {@code fromIndex} (inclusive) to {@code toIndex} (exclusive) into
+   * {@code target}, visiting only the set registers while they're sparse.
+   */
+  void mergeInto(Registers<?> target, int fromIndex, int toIndex) {
+    if (dense != null) {
+      target.mergeFrom(dense, fromIndex, toIndex);
+      return;
+    }
+
+    for (int slot = 0; slot < keys.length; slot++) {
+      final int registerIndex = keys[slot] - 1;
+      if (registerIndex >= fromIndex && registerIndex < toIndex) {
+        target.updateIfGreaterThan(registerIndex, values[slot]);
+      }
+    }
+  }
+
+  @Override
+  public long getRegisterAtIndex(int index) {
+    if (dense != null) {
+      return dense.getRegisterAtIndex(index);
+    }
+    // empty slots have a value of 0
+    return values[findSlot(keys, index)];
+  }
+
+  @Override
+  public SparseRegisters deepCopy() {
+    return new SparseRegisters(this);
+  }
+
+  @Override
+  public int getNumRegisters() {
+    return 1 << p;
+  }
+
+  @Override
+  public int getPositionOfFirstOneAtRegister(int index) {
+    return LongPacker.unpackPositionOfFirstOne(getRegisterAtIndex(index), r);
+  }
+
+  @Override
+  public long getMantissaAtRegister(int index) {
+    return LongPacker.unpackMantissa(getRegisterAtIndex(index), r);
+  }
+
+  @Override
+  public int getNumZeroRegisters() {
+    return getPositionHistogram().count(0);
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    return dense != null ? dense.getPositionHistogram() : positions;
+  }
+
+  @Override
+  public String toString() {
+    if (dense != null) {
+      return "SparseRegisters{" +
+          "dense=" + dense +
+          ", p=" + p +
+          ", r=" + r +
+          '}';
+    }
+
+    final StringBuilder registers = new StringBuilder("{");
+    for (int index : getSparseIndexes()) {
+      if (registers.length() > 1) {
+        registers.append(", ");
+      }
+      registers.append(index).append('=').append(getRegisterAtIndex(index));
+    }
+    return "SparseRegisters{" +
+        "registers=" + registers.append('}') +
+        ", p=" + p +
+        ", r=" + r +
+        '}';
+  }
+
+  /**
+   * Sparse registers are equal to sparse registers with the same p, r and register values, no
+   * matter whether either of them is dense by now.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SparseRegisters that = (SparseRegisters) o;
+    if (p != that.p || r != that.r) {
+      return false;
+    }
+    if (dense == null && that.dense == null) {
+      if (size != that.size) {
+        return false;
+      }
+      for (int slot = 0; slot < keys.length; slot++) {
+        if (keys[slot] != 0 && values[slot] != that.getRegisterAtIndex(keys[slot] - 1)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (int i = 0; i < getNumRegisters(); i++) {
+      if (getRegisterAtIndex(i) != that.getRegisterAtIndex(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    // a sum over the set registers, which is the same in any order and whether or not they're
+    // dense
+    int result = 0;
+    if (dense == null) {
+      for (int slot = 0; slot < keys.length; slot++) {
+        if (keys[slot] != 0) {
+          result += 31 * (keys[slot] - 1) + Long.hashCode(values[slot]);
+        }
+      }
+    } else {
+      for (int i = 0; i < getNumRegisters(); i++) {
+        final long register = dense.getRegisterAtIndex(i);
+        if (register != 0) {
+          result += 31 * i + Long.hashCode(register);
+        }
+      }
+    }
+    return 31 * Objects.hash(p, r) + result;
+  }
+}
@@ -0,0 +1,148 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Arrays;
+
+/**
+ * The set registers of a sparse {@link BetaMinHash}, in a small open-addressing hash table. Each
+ * slot is an int with the index of its register plus one in the upper 16 bits, so that 0 marks an
+ * empty slot, and the register in the lower 16 bits.
+ */
+final class SparseShortRegisters {
+
+  // a full table takes half of the memory of the dense registers
+  static final int MAX_CAPACITY = BetaMinHash.NUM_REGISTERS / 4;
+  // the table is grown when it's more than three quarters full, which keeps probe sequences short
+  static final int MAX_SPARSE_REGISTERS = MAX_CAPACITY - MAX_CAPACITY / 4;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private int[] slots;
+  private int size;
+
+  SparseShortRegisters() {
+    this(new int[INITIAL_CAPACITY], 0);
+  }
+
+  private SparseShortRegisters(int[] slots, int size) {
+    this.slots = slots;
+    this.size = size;
+  }
+
+  /**
+   * @return the number of set registers
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of slots, which set registers are found in with {@link #index(int)}
+   */
+  int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * @return the index of the register in {@code slot}, or -1 if the slot is empty
+   */
+  int index(int slot) {
+    return (slots[slot] >>> Short.SIZE) - 1;
+  }
+
+  /**
+   * @return the register in {@code slot}
+   */
+  short register(int slot) {
+    return (short) slots[slot];
+  }
+
+  /**
+   * @return the value of the register at {@code index}, which is 0 if it isn't set
+   */
+  short get(int index) {
+    // empty slots hold 0
+    return (short) slots[findSlot(slots, index)];
+  }
+
+  /**
+   * Sets the register at {@code index} to {@code register}, which isn't 0.
+   *
+   * @return false, without setting the register, if it isn't set yet and there are already {@link
+   * #MAX_SPARSE_REGISTERS} set registers
+   */
+  boolean set(int index, short register) {
+    int slot = findSlot(slots, index);
+    if (slots[slot] == 0) {
+      if (size == MAX_SPARSE_REGISTERS) {
+        return false;
+      }
+      if (size == slots.length - slots.length / 4) {
+        grow();
+        slot = findSlot(slots, index);
+      }
+      size++;
+    }
+    slots[slot] = ((index + 1) << Short.SIZE) | (register & 0xFFFF);
+    return true;
+  }
+
+  private void grow() {
+    final int[] newSlots = new int[Math.min(slots.length + (slots.length >> 1), MAX_CAPACITY)];
+    for (int packedRegister : slots) {
+      if (packedRegister != 0) {
+        newSlots[findSlot(newSlots, (packedRegister >>> Short.SIZE) - 1)] = packedRegister;
+      }
+    }
+    slots = newSlots;
+  }
+
+  /**
+   * @return the slot holding the register at {@code index}, or the empty slot where it would be
+   * inserted
+   */
+  private static int findSlot(int[] slots, int index) {
+    final int key = index + 1;
+    // Fibonacci hashing spreads neighbouring indexes over the table, and the product of the hash
+    // and the capacity maps it to a slot without a division
+    final long hash = (key * 0x9E3779B9) & 0xFFFFFFFFL;
+    int slot = (int) ((hash * slots.length) >>> Integer.SIZE);
+    while (slots[slot] != 0 && slots[slot] >>> Short.SIZE != key) {
+      slot = slot + 1 == slots.length ? 0 : slot + 1;
+    }
+    return slot;
+  }
+
+  /**
+   * @return the set registers in increasing order of index, each with its index plus one in the
+   * upper and its value in the lower 16 bits
+   */
+  int[] sortedPackedRegisters() {
+    final int[] packedRegisters = new int[size];
+    int i = 0;
+    for (int packedRegister : slots) {
+      if (packedRegister != 0) {
+        packedRegisters[i++] = packedRegister;
+      }
+    }
+    // the indexes are in the upper bits, so this sorts by index
+    Arrays.sort(packedRegisters);
+    return packedRegisters;
+  }
+
+  /**
+   * @return the dense registers holding the same values
+   */
+  short[] toDense() {
+    final short[] registers = new short[BetaMinHash.NUM_REGISTERS];
+    for (int packedRegister : slots) {
+      if (packedRegister != 0) {
+        registers[(packedRegister >>> Short.SIZE) - 1] = (short) packedRegister;
+      }
+    }
+    return registers;
+  }
+
+  SparseShortRegisters copy() {
+    return new SparseShortRegisters(Arrays.copyOf(slots, slots.length), size);
+  }
+}
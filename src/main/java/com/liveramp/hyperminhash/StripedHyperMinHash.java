@@ -0,0 +1,44 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * A {@link HyperMinHash} for very hot shared sketches. Like {@link ConcurrentHyperMinHash}, many
+ * threads can offer values to it at once, but writing threads are spread over register stripes, so
+ * writers rarely contend on popular registers.
+ *
+ * <p>The stripes are only folded together when the sketch is read, e.g. by {@link #cardinality()},
+ * by serialization or by the {@link HyperMinHashCombiner}. The fold is cached until the next offer
+ * changes a stripe, so repeated reads of a quiet sketch are cheap. However many threads write,
+ * there are at most as many stripes of 2^p longs as processors, rounded up to a power of two and
+ * capped at 64. Stripes are kept for the lifetime of the sketch.
+ *
+ * <p>A serialized StripedHyperMinHash has the same layout as a {@link HyperMinHash} holding the
+ * fold, and is deserialized as a plain {@link HyperMinHash}.
+ */
+public class StripedHyperMinHash extends ConcurrentHyperMinHash {
+
+  /**
+   * @param p HLL precision parameter
+   * @param r Number of MinHash bits to keep
+   */
+  public StripedHyperMinHash(int p, int r) {
+    this(p, r, Murmur3Hasher128.getInstance());
+  }
+
+  /**
+   * @param p      HLL precision parameter
+   * @param r      Number of MinHash bits to keep
+   * @param hasher hash function applied to offered values
+   */
+  public StripedHyperMinHash(int p, int r, Hasher128 hasher) {
+    this(p, r, new StripedRegisters(p, r), hasher);
+  }
+
+  StripedHyperMinHash(int p, int r, Registers<?> registers, Hasher128 hasher) {
+    super(p, r, registers, hasher);
+  }
+
+  @Override
+  public StripedHyperMinHash deepCopy() {
+    return new StripedHyperMinHash(p, r, registers.deepCopy(), hasher);
+  }
+}
@@ -0,0 +1,211 @@
+package com.liveramp.hyperminhash;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link Registers} which spread writing threads over a fixed pool of stripes. Threads are dealt
+ * stripes round robin, so as long as there are no more writers than stripes, updates only touch
+ * the stripe of the calling thread and writers never contend with each other. Reads see the
+ * stripes folded together with the usual {@link #updateIfGreaterThan(int, long)} ordering. The
+ * fold is cached until the next update changes a stripe.
+ *
+ * <p>Stripes are only allocated once a thread is dealt them, so the registers take at most {@link
+ * #DEFAULT_NUM_STRIPES} stripes of 2^p longs however many threads write to them.
+ */
+class StripedRegisters implements Registers<StripedRegisters> {
+
+  // one stripe per processor, rounded up to a power of two, since more can't write at once
+  static final int DEFAULT_NUM_STRIPES =
+      Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+  private final int p;
+  private final int r;
+  // registers which were already present when this object was created
+  private final Registers<?> base;
+  // allocated when the first thread is dealt each of them
+  private final AtomicReferenceArray<AtomicLongArray> stripes;
+  private final AtomicInteger numThreads = new AtomicInteger();
+  private final ThreadLocal<AtomicLongArray> threadStripe =
+      ThreadLocal.withInitial(this::dealStripe);
+
+  private volatile boolean dirty;
+  private volatile Registers<?> folded;
+
+  StripedRegisters(int p, int r) {
+    this(p, r, Registers.newRegisters(p, r));
+  }
+
+  StripedRegisters(int p, int r, Registers<?> base) {
+    this(p, r, base, DEFAULT_NUM_STRIPES);
+  }
+
+  /**
+   * @param numStripes the most stripes to allocate, which must be a power of two
+   */
+  StripedRegisters(int p, int r, Registers<?> base, int numStripes) {
+    if (Integer.bitCount(numStripes) != 1) {
+      throw new IllegalArgumentException(
+          "The number of stripes must be a power of two, but it is " + numStripes);
+    }
+
+    this.p = p;
+    this.r = r;
+    this.base = base;
+    this.folded = base;
+    this.stripes = new AtomicReferenceArray<>(numStripes);
+  }
+
+  private AtomicLongArray dealStripe() {
+    final int index = numThreads.getAndIncrement() & (stripes.length() - 1);
+    final AtomicLongArray stripe = stripes.get(index);
+    if (stripe != null) {
+      return stripe;
+    }
+    stripes.compareAndSet(index, null, new AtomicLongArray(1 << p));
+    return stripes.get(index);
+  }
+
+  int getNumAllocatedStripes() {
+    int numAllocated = 0;
+    for (int i = 0; i < stripes.length(); i++) {
+      if (stripes.get(i) != null) {
+        numAllocated++;
+      }
+    }
+    return numAllocated;
+  }
+
+  @Override
+  public boolean updateIfGreaterThan(int registerIndex, long incomingRegister) {
+    return updateIfGreaterThan(threadStripe.get(), registerIndex, incomingRegister);
+  }
+
+  @Override
+  public int updateIfGreaterThan(int[] registerIndexes, long[] incomingRegisters, int length) {
+    final AtomicLongArray stripe = threadStripe.get();
+    int numChanged = 0;
+    for (int i = 0; i < length; i++) {
+      if (updateIfGreaterThan(stripe, registerIndexes[i], incomingRegisters[i])) {
+        numChanged++;
+      }
+    }
+    return numChanged;
+  }
+
+  /**
+   * Once there are more writing threads than stripes, threads share stripes, so registers are
+   * raised with a compare-and-set loop like {@link AtomicLongRegisters}. The register is written
+   * before the dirty flag is read, so a fold which clears the flag afterwards is sure to see the
+   * new value.
+   *
+   * <p>Like the other {@link Registers}, this returns whether the register of the stripe changed.
+   * A stripe may be raised by a value that another stripe already exceeds, so the folded registers
+   * don't necessarily change.
+   */
+  private boolean updateIfGreaterThan(AtomicLongArray stripe, int index, long incomingRegister) {
+    long currentRegister = stripe.get(index);
+    while (LongRegisters.isGreaterThan(incomingRegister, currentRegister, r)) {
+      if (stripe.compareAndSet(index, currentRegister, incomingRegister)) {
+        if (!dirty) {
+          dirty = true;
+        }
+        return true;
+      }
+      currentRegister = stripe.get(index);
+    }
+    return false;
+  }
+
+  /**
+   * @return plain registers holding the fold of all stripes. These are shared by all readers until
+   * the next write, so they must not be modified.
+   */
+  Registers<?> fold() {
+    if (!dirty) {
+      return folded;
+    }
+
+    synchronized (this) {
+      if (dirty) {
+        dirty = false;
+        final Registers<?> fold = base.deepCopy();
+        for (int s = 0; s < stripes.length(); s++) {
+          final AtomicLongArray stripe = stripes.get(s);
+          if (stripe == null) {
+            continue;
+          }
+          for (int i = 0; i < stripe.length(); i++) {
+            final long register = stripe.get(i);
+            if (register != 0) {
+              fold.updateIfGreaterThan(i, register);
+            }
+          }
+        }
+        folded = fold;
+      }
+      return folded;
+    }
+  }
+
+  @Override
+  public long getRegisterAtIndex(int index) {
+    return fold().getRegisterAtIndex(index);
+  }
+
+  @Override
+  public StripedRegisters deepCopy() {
+    return new StripedRegisters(p, r, fold().deepCopy(), stripes.length());
+  }
+
+  @Override
+  public int getNumRegisters() {
+    return 1 << p;
+  }
+
+  @Override
+  public int getPositionOfFirstOneAtRegister(int index) {
+    return fold().getPositionOfFirstOneAtRegister(index);
+  }
+
+  @Override
+  public long getMantissaAtRegister(int index) {
+    return fold().getMantissaAtRegister(index);
+  }
+
+  @Override
+  public int getNumZeroRegisters() {
+    return fold().getNumZeroRegisters();
+  }
+
+  @Override
+  public RegisterHistogram getPositionHistogram() {
+    return fold().getPositionHistogram();
+  }
+
+  @Override
+  public String toString() {
+    return "StripedRegisters{" +
+        "numStripes=" + getNumAllocatedStripes() +
+        ", folded=" + fold() +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    StripedRegisters that = (StripedRegisters) o;
+    return fold().equals(that.fold());
+  }
+
+  @Override
+  public int hashCode() {
+    return fold().hashCode();
+  }
+}
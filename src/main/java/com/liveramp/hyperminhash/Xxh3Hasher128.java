@@ -0,0 +1,436 @@
+package com.liveramp.hyperminhash;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Pure Java port of the 128-bit variant of XXH3 (https://github.com/Cyan4973/xxHash), with seed 0
+ * and the default secret. For keys of up to 16 bytes XXH3 needs no loop at all, which makes it
+ * considerably cheaper than {@link Murmur3} on the short keys that sketches are usually fed.
+ *
+ * <p>The first half of the hash written to {@code out} is XXH3's low 64 bits, the second half is
+ * its high 64 bits.
+ */
+public class Xxh3Hasher128 implements Hasher128 {
+
+  private static final Xxh3Hasher128 INSTANCE = new Xxh3Hasher128();
+
+  private static final long PRIME32_1 = 0x9E3779B1L;
+  private static final long PRIME32_2 = 0x85EBCA77L;
+  private static final long PRIME32_3 = 0xC2B2AE3DL;
+  private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME64_3 = 0x165667B19E3779F9L;
+  private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+  private static final long PRIME_MX1 = 0x165667919E3779F9L;
+  private static final long PRIME_MX2 = 0x9FB21C651E98DF25L;
+
+  private static final int STRIPE_LENGTH = 64;
+  private static final int SECRET_CONSUME_RATE = 8;
+  private static final int MIDSIZE_MAX = 240;
+  private static final int MIDSIZE_START_OFFSET = 3;
+  private static final int MIDSIZE_LAST_OFFSET = 17;
+  private static final int SECRET_SIZE_MIN = 136;
+  private static final int SECRET_LAST_ACC_START = 7;
+  private static final int SECRET_MERGE_ACCS_START = 11;
+
+  private static final byte[] SECRET = toBytes(new int[]{
+      0xb8, 0xfe, 0x6c, 0x39, 0x23, 0xa4, 0x4b, 0xbe, 0x7c, 0x01, 0x81, 0x2c, 0xf7, 0x21, 0xad, 0x1c,
+      0xde, 0xd4, 0x6d, 0xe9, 0x83, 0x90, 0x97, 0xdb, 0x72, 0x40, 0xa4, 0xa4, 0xb7, 0xb3, 0x67, 0x1f,
+      0xcb, 0x79, 0xe6, 0x4e, 0xcc, 0xc0, 0xe5, 0x78, 0x82, 0x5a, 0xd0, 0x7d, 0xcc, 0xff, 0x72, 0x21,
+      0xb8, 0x08, 0x46, 0x74, 0xf7, 0x43, 0x24, 0x8e, 0xe0, 0x35, 0x90, 0xe6, 0x81, 0x3a, 0x26, 0x4c,
+      0x3c, 0x28, 0x52, 0xbb, 0x91, 0xc3, 0x00, 0xcb, 0x88, 0xd0, 0x65, 0x8b, 0x1b, 0x53, 0x2e, 0xa3,
+      0x71, 0x64, 0x48, 0x97, 0xa2, 0x0d, 0xf9, 0x4e, 0x38, 0x19, 0xef, 0x46, 0xa9, 0xde, 0xac, 0xd8,
+      0xa8, 0xfa, 0x76, 0x3f, 0xe3, 0x9c, 0x34, 0x3f, 0xf9, 0xdc, 0xbb, 0xc7, 0xc7, 0x0b, 0x4f, 0x1d,
+      0x8a, 0x51, 0xe0, 0x4b, 0xcd, 0xb4, 0x59, 0x31, 0xc8, 0x9f, 0x7e, 0xc9, 0xd9, 0x78, 0x73, 0x64,
+      0xea, 0xc5, 0xac, 0x83, 0x34, 0xd3, 0xeb, 0xc3, 0xc5, 0x81, 0xa0, 0xff, 0xfa, 0x13, 0x63, 0xeb,
+      0x17, 0x0d, 0xdd, 0x51, 0xb7, 0xf0, 0xda, 0x49, 0xd3, 0x16, 0x55, 0x26, 0x29, 0xd4, 0x68, 0x9e,
+      0x2b, 0x16, 0xbe, 0x58, 0x7d, 0x47, 0xa1, 0xfc, 0x8f, 0xf8, 0xb8, 0xd1, 0x7a, 0xd0, 0x31, 0xce,
+      0x45, 0xcb, 0x3a, 0x8f, 0x95, 0x16, 0x04, 0x28, 0xaf, 0xd7, 0xfb, 0xca, 0xbb, 0x4b, 0x40, 0x7e,
+  });
+
+  // The little-endian long starting at each byte of the secret, so that reading the secret doesn't
+  // cost more than an array access.
+  private static final long[] SECRET_LONGS = readSecretLongs();
+
+  // The secret is constant, so the words read from it by the short input paths are as well.
+  private static final long BITFLIP_1TO3_LOW = readIntLE(SECRET, 0) ^ readIntLE(SECRET, 4);
+  private static final long BITFLIP_1TO3_HIGH = readIntLE(SECRET, 8) ^ readIntLE(SECRET, 12);
+  private static final long BITFLIP_4TO8 = SECRET_LONGS[16] ^ SECRET_LONGS[24];
+  private static final long BITFLIP_9TO16_LOW = SECRET_LONGS[32] ^ SECRET_LONGS[40];
+  private static final long BITFLIP_9TO16_HIGH = SECRET_LONGS[48] ^ SECRET_LONGS[56];
+
+  // Math.multiplyHigh is an intrinsic on Java 9+, but we still compile against Java 8. A static
+  // final handle is constant-folded by the JIT, so calls through it are as cheap as direct calls.
+  private static final MethodHandle MULTIPLY_HIGH = findMultiplyHigh();
+
+  private Xxh3Hasher128() {
+  }
+
+  public static Xxh3Hasher128 getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public void hash128(byte[] data, int offset, int length, long[] out, int outOffset) {
+    if (length <= 16) {
+      if (length > 8) {
+        hash9To16(readLongLE(data, offset), readLongLE(data, offset + length - 8), length, out,
+            outOffset);
+      } else if (length >= 4) {
+        hash4To8(readIntLE(data, offset), readIntLE(data, offset + length - 4), length, out,
+            outOffset);
+      } else if (length > 0) {
+        hash1To3(data[offset], data[offset + (length >> 1)], data[offset + length - 1], length,
+            out, outOffset);
+      } else {
+        out[outOffset] = xxh64Avalanche(SECRET_LONGS[64] ^ SECRET_LONGS[72]);
+        out[outOffset + 1] = xxh64Avalanche(SECRET_LONGS[80] ^ SECRET_LONGS[88]);
+      }
+    } else if (length <= 128) {
+      hash17To128(data, offset, length, out, outOffset);
+    } else if (length <= MIDSIZE_MAX) {
+      hash129To240(data, offset, length, out, outOffset);
+    } else {
+      hashLong(data, offset, length, out, outOffset);
+    }
+  }
+
+  @Override
+  public void hash128(long value, long[] out, int outOffset) {
+    // The big-endian encoding of value, read as two little-endian ints
+    final long reversed = Long.reverseBytes(value);
+    hash4To8(reversed & 0xFFFFFFFFL, reversed >>> 32, Long.BYTES, out, outOffset);
+  }
+
+  @Override
+  public void hash128(int value, long[] out, int outOffset) {
+    final long reversed = Integer.reverseBytes(value) & 0xFFFFFFFFL;
+    hash4To8(reversed, reversed, Integer.BYTES, out, outOffset);
+  }
+
+  @Override
+  public void hash128(long mostSigBits, long leastSigBits, long[] out, int outOffset) {
+    hash9To16(
+        Long.reverseBytes(mostSigBits),
+        Long.reverseBytes(leastSigBits),
+        2 * Long.BYTES,
+        out,
+        outOffset);
+  }
+
+  private static void hash1To3(
+      byte c1,
+      byte c2,
+      byte c3,
+      int length,
+      long[] out,
+      int outOffset) {
+    final int combinedLow = ((c1 & 0xff) << 16) | ((c2 & 0xff) << 24) | (c3 & 0xff)
+        | (length << 8);
+    final int combinedHigh = Integer.rotateLeft(Integer.reverseBytes(combinedLow), 13);
+    out[outOffset] = xxh64Avalanche((combinedLow & 0xFFFFFFFFL) ^ BITFLIP_1TO3_LOW);
+    out[outOffset + 1] = xxh64Avalanche((combinedHigh & 0xFFFFFFFFL) ^ BITFLIP_1TO3_HIGH);
+  }
+
+  // inputLow and inputHigh are the first and last 4 bytes of the input, as unsigned ints
+  private static void hash4To8(
+      long inputLow,
+      long inputHigh,
+      int length,
+      long[] out,
+      int outOffset) {
+    final long keyed = (inputLow + (inputHigh << 32)) ^ BITFLIP_4TO8;
+    final long multiplier = PRIME64_1 + ((long) length << 2);
+
+    long low = keyed * multiplier;
+    long high = unsignedMultiplyHigh(keyed, multiplier);
+    high += low << 1;
+    low ^= high >>> 3;
+    low = xorShift(low, 35);
+    low *= PRIME_MX2;
+    low = xorShift(low, 28);
+
+    out[outOffset] = low;
+    out[outOffset + 1] = xxh3Avalanche(high);
+  }
+
+  // inputLow and inputHigh are the first and last 8 bytes of the input
+  private static void hash9To16(
+      long inputLow,
+      long inputHigh,
+      int length,
+      long[] out,
+      int outOffset) {
+    final long product = inputLow ^ inputHigh ^ BITFLIP_9TO16_LOW;
+    long low = product * PRIME64_1;
+    long high = unsignedMultiplyHigh(product, PRIME64_1);
+    low += (long) (length - 1) << 54;
+    inputHigh ^= BITFLIP_9TO16_HIGH;
+    high += inputHigh + (inputHigh & 0xFFFFFFFFL) * (PRIME32_2 - 1);
+    low ^= Long.reverseBytes(high);
+
+    final long hashLow = low * PRIME64_2;
+    final long hashHigh = unsignedMultiplyHigh(low, PRIME64_2) + high * PRIME64_2;
+    out[outOffset] = xxh3Avalanche(hashLow);
+    out[outOffset + 1] = xxh3Avalanche(hashHigh);
+  }
+
+  private static void hash17To128(byte[] data, int offset, int length, long[] out, int outOffset) {
+    long accLow = length * PRIME64_1;
+    long accHigh = 0;
+
+    if (length > 32) {
+      if (length > 64) {
+        if (length > 96) {
+          accLow += mix16(data, offset + 48, 96);
+          accLow ^= readLongLE(data, offset + length - 64)
+              + readLongLE(data, offset + length - 56);
+          accHigh += mix16(data, offset + length - 64, 112);
+          accHigh ^= readLongLE(data, offset + 48) + readLongLE(data, offset + 56);
+        }
+        accLow += mix16(data, offset + 32, 64);
+        accLow ^= readLongLE(data, offset + length - 48) + readLongLE(data, offset + length - 40);
+        accHigh += mix16(data, offset + length - 48, 80);
+        accHigh ^= readLongLE(data, offset + 32) + readLongLE(data, offset + 40);
+      }
+      accLow += mix16(data, offset + 16, 32);
+      accLow ^= readLongLE(data, offset + length - 32) + readLongLE(data, offset + length - 24);
+      accHigh += mix16(data, offset + length - 32, 48);
+      accHigh ^= readLongLE(data, offset + 16) + readLongLE(data, offset + 24);
+    }
+    accLow += mix16(data, offset, 0);
+    accLow ^= readLongLE(data, offset + length - 16) + readLongLE(data, offset + length - 8);
+    accHigh += mix16(data, offset + length - 16, 16);
+    accHigh ^= readLongLE(data, offset) + readLongLE(data, offset + 8);
+
+    finishMidSize(accLow, accHigh, length, out, outOffset);
+  }
+
+  private static void hash129To240(
+      byte[] data,
+      int offset,
+      int length,
+      long[] out,
+      int outOffset) {
+    long accLow = length * PRIME64_1;
+    long accHigh = 0;
+
+    int i = 32;
+    for (; i < 160; i += 32) {
+      final int input1 = offset + i - 32;
+      final int input2 = offset + i - 16;
+      accLow += mix16(data, input1, i - 32);
+      accLow ^= readLongLE(data, input2) + readLongLE(data, input2 + 8);
+      accHigh += mix16(data, input2, i - 16);
+      accHigh ^= readLongLE(data, input1) + readLongLE(data, input1 + 8);
+    }
+    accLow = xxh3Avalanche(accLow);
+    accHigh = xxh3Avalanche(accHigh);
+
+    for (; i <= length; i += 32) {
+      final int input1 = offset + i - 32;
+      final int input2 = offset + i - 16;
+      final int secretOffset = MIDSIZE_START_OFFSET + i - 160;
+      accLow += mix16(data, input1, secretOffset);
+      accLow ^= readLongLE(data, input2) + readLongLE(data, input2 + 8);
+      accHigh += mix16(data, input2, secretOffset + 16);
+      accHigh ^= readLongLE(data, input1) + readLongLE(data, input1 + 8);
+    }
+
+    // last 32 bytes, with the two halves swapped
+    final int input1 = offset + length - 16;
+    final int input2 = offset + length - 32;
+    final int secretOffset = SECRET_SIZE_MIN - MIDSIZE_LAST_OFFSET - 16;
+    accLow += mix16(data, input1, secretOffset);
+    accLow ^= readLongLE(data, input2) + readLongLE(data, input2 + 8);
+    accHigh += mix16(data, input2, secretOffset + 16);
+    accHigh ^= readLongLE(data, input1) + readLongLE(data, input1 + 8);
+
+    finishMidSize(accLow, accHigh, length, out, outOffset);
+  }
+
+  private static void finishMidSize(
+      long accLow,
+      long accHigh,
+      int length,
+      long[] out,
+      int outOffset) {
+    final long low = accLow + accHigh;
+    final long high = accLow * PRIME64_1 + accHigh * PRIME64_4 + length * PRIME64_2;
+    out[outOffset] = xxh3Avalanche(low);
+    out[outOffset + 1] = -xxh3Avalanche(high);
+  }
+
+  private static void hashLong(byte[] data, int offset, int length, long[] out, int outOffset) {
+    // Long inputs are read through a buffer, which reads whole words at a time where the JVM
+    // supports it. Its allocation is negligible next to hashing more than 240 bytes.
+    final ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    final long[] acc = {
+        PRIME32_3, PRIME64_1, PRIME64_2, PRIME64_3, PRIME64_4, PRIME32_2, PRIME64_5, PRIME32_1
+    };
+    final int stripesPerBlock = (SECRET.length - STRIPE_LENGTH) / SECRET_CONSUME_RATE;
+    final int blockLength = STRIPE_LENGTH * stripesPerBlock;
+    final int numBlocks = (length - 1) / blockLength;
+
+    for (int block = 0; block < numBlocks; block++) {
+      accumulate(acc, buffer, offset + block * blockLength, stripesPerBlock);
+      scramble(acc, SECRET.length - STRIPE_LENGTH);
+    }
+
+    final int numStripes = ((length - 1) - blockLength * numBlocks) / STRIPE_LENGTH;
+    accumulate(acc, buffer, offset + numBlocks * blockLength, numStripes);
+    accumulateStripe(
+        acc,
+        buffer,
+        offset + length - STRIPE_LENGTH,
+        SECRET.length - STRIPE_LENGTH - SECRET_LAST_ACC_START);
+
+    out[outOffset] = mergeAccumulators(acc, SECRET_MERGE_ACCS_START, length * PRIME64_1);
+    out[outOffset + 1] = mergeAccumulators(
+        acc,
+        SECRET.length - STRIPE_LENGTH - SECRET_MERGE_ACCS_START,
+        ~(length * PRIME64_2));
+  }
+
+  private static void accumulate(long[] acc, ByteBuffer data, int offset, int numStripes) {
+    for (int stripe = 0; stripe < numStripes; stripe++) {
+      accumulateStripe(acc, data, offset + stripe * STRIPE_LENGTH, stripe * SECRET_CONSUME_RATE);
+    }
+  }
+
+  private static void accumulateStripe(
+      long[] acc,
+      ByteBuffer data,
+      int offset,
+      int secretOffset) {
+    for (int i = 0; i < 8; i++) {
+      final long value = data.getLong(offset + 8 * i);
+      final long key = value ^ SECRET_LONGS[secretOffset + 8 * i];
+      acc[i ^ 1] += value;
+      acc[i] += (key & 0xFFFFFFFFL) * (key >>> 32);
+    }
+  }
+
+  private static void scramble(long[] acc, int secretOffset) {
+    for (int i = 0; i < 8; i++) {
+      long accumulator = xorShift(acc[i], 47);
+      accumulator ^= SECRET_LONGS[secretOffset + 8 * i];
+      acc[i] = accumulator * PRIME32_1;
+    }
+  }
+
+  private static long mergeAccumulators(long[] acc, int secretOffset, long start) {
+    long result = start;
+    for (int i = 0; i < 4; i++) {
+      result += multiplyFold(
+          acc[2 * i] ^ SECRET_LONGS[secretOffset + 16 * i],
+          acc[2 * i + 1] ^ SECRET_LONGS[secretOffset + 16 * i + 8]);
+    }
+    return xxh3Avalanche(result);
+  }
+
+  private static long mix16(byte[] data, int offset, int secretOffset) {
+    return multiplyFold(
+        readLongLE(data, offset) ^ SECRET_LONGS[secretOffset],
+        readLongLE(data, offset + 8) ^ SECRET_LONGS[secretOffset + 8]);
+  }
+
+  // xor of the low and high halves of the full 128-bit product
+  private static long multiplyFold(long a, long b) {
+    return (a * b) ^ unsignedMultiplyHigh(a, b);
+  }
+
+  // high 64 bits of the unsigned 128-bit product
+  private static long unsignedMultiplyHigh(long a, long b) {
+    if (MULTIPLY_HIGH != null) {
+      final long signedHigh;
+      try {
+        signedHigh = (long) MULTIPLY_HIGH.invokeExact(a, b);
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+      // Math.multiplyHigh treats its arguments as signed
+      return signedHigh + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    // from Hacker's Delight
+    final long aLow = a & 0xFFFFFFFFL;
+    final long aHigh = a >>> 32;
+    final long bLow = b & 0xFFFFFFFFL;
+    final long bHigh = b >>> 32;
+
+    final long lowLow = aLow * bLow;
+    final long cross = aHigh * bLow + (lowLow >>> 32);
+    final long middle = (cross & 0xFFFFFFFFL) + aLow * bHigh;
+    return aHigh * bHigh + (cross >>> 32) + (middle >>> 32);
+  }
+
+  private static long xxh64Avalanche(long h) {
+    h ^= h >>> 33;
+    h *= PRIME64_2;
+    h ^= h >>> 29;
+    h *= PRIME64_3;
+    return h ^ (h >>> 32);
+  }
+
+  private static long xxh3Avalanche(long h) {
+    h = xorShift(h, 37);
+    h *= PRIME_MX1;
+    return xorShift(h, 32);
+  }
+
+  private static long xorShift(long value, int shift) {
+    return value ^ (value >>> shift);
+  }
+
+  private static long readLongLE(byte[] data, int offset) {
+    return ((long) data[offset] & 0xff)
+        | (((long) data[offset + 1] & 0xff) << 8)
+        | (((long) data[offset + 2] & 0xff) << 16)
+        | (((long) data[offset + 3] & 0xff) << 24)
+        | (((long) data[offset + 4] & 0xff) << 32)
+        | (((long) data[offset + 5] & 0xff) << 40)
+        | (((long) data[offset + 6] & 0xff) << 48)
+        | (((long) data[offset + 7] & 0xff) << 56);
+  }
+
+  // the int at offset, as an unsigned value
+  private static long readIntLE(byte[] data, int offset) {
+    return ((long) data[offset] & 0xff)
+        | (((long) data[offset + 1] & 0xff) << 8)
+        | (((long) data[offset + 2] & 0xff) << 16)
+        | (((long) data[offset + 3] & 0xff) << 24);
+  }
+
+  private static MethodHandle findMultiplyHigh() {
+    try {
+      return MethodHandles.publicLookup().findStatic(
+          Math.class,
+          "multiplyHigh",
+          MethodType.methodType(long.class, long.class, long.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  private static long[] readSecretLongs() {
+    final long[] secretLongs = new long[SECRET.length - Long.BYTES + 1];
+    for (int i = 0; i < secretLongs.length; i++) {
+      secretLongs[i] = readLongLE(SECRET, i);
+    }
+    return secretLongs;
+  }
+
+  private static byte[] toBytes(int[] values) {
+    final byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+}
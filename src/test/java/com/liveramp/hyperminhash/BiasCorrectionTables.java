@@ -0,0 +1,103 @@
+package com.liveramp.hyperminhash;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the {@code bias-correction-<p>.bin} resources which {@link BiasCorrection} reads, from
+ * the HLL++ tables in the test resource {@code hllpp-bias-correction.txt}. Run it from the root of
+ * the project to regenerate them:
+ *
+ * <pre>
+ * mvn test-compile org.codehaus.mojo:exec-maven-plugin:3.1.0:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.liveramp.hyperminhash.BiasCorrectionTables
+ * </pre>
+ */
+public class BiasCorrectionTables {
+
+  static final String TABLES = "hllpp-bias-correction.txt";
+
+  private static final Path RESOURCES = Paths.get("src/main/resources/com/liveramp/hyperminhash");
+
+  public static void main(String[] args) throws IOException {
+    final double[][][] tables = readTables();
+    for (int p = BiasCorrection.MIN_P; p <= BiasCorrection.MAX_P; p++) {
+      final double[][] table = tables[p - BiasCorrection.MIN_P];
+      Files.write(RESOURCES.resolve("bias-correction-" + p + ".bin"), toBytes(table[0], table[1]));
+    }
+  }
+
+  /**
+   * @return the raw estimates and the biases of each precision, from {@link BiasCorrection#MIN_P}
+   * on
+   */
+  static double[][][] readTables() throws IOException {
+    final double[][][] tables = new double[BiasCorrection.MAX_P - BiasCorrection.MIN_P + 1][2][];
+    try (InputStream resource = BiasCorrectionTables.class.getResourceAsStream(TABLES)) {
+      final BufferedReader reader =
+          new BufferedReader(new InputStreamReader(resource, StandardCharsets.UTF_8));
+      String header = null;
+      final StringBuilder values = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("#") || line.isEmpty()) {
+          continue;
+        }
+        if (line.startsWith("[")) {
+          addRow(tables, header, values);
+          header = line;
+          values.setLength(0);
+        } else {
+          values.append(line).append(' ');
+        }
+      }
+      addRow(tables, header, values);
+    }
+    return tables;
+  }
+
+  // header is "[<p> raw estimates]" or "[<p> biases]"
+  private static void addRow(double[][][] tables, String header, StringBuilder values) {
+    if (header == null) {
+      return;
+    }
+
+    final String[] words = header.substring(1, header.length() - 1).split(" ", 2);
+    final int p = Integer.parseInt(words[0]);
+    final List<Double> row = new ArrayList<>();
+    for (String value : values.toString().split(",")) {
+      if (!value.trim().isEmpty()) {
+        row.add(Double.parseDouble(value.trim()));
+      }
+    }
+    tables[p - BiasCorrection.MIN_P][words[1].equals("raw estimates") ? 0 : 1] =
+        row.stream().mapToDouble(Double::doubleValue).toArray();
+  }
+
+  /**
+   * @return the contents of a resource in the format {@link BiasCorrection} reads
+   */
+  static byte[] toBytes(double[] rawEstimates, double[] biases) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(rawEstimates.length);
+      for (double rawEstimate : rawEstimates) {
+        out.writeDouble(rawEstimate);
+      }
+      for (double bias : biases) {
+        out.writeDouble(bias);
+      }
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -3,10 +3,18 @@ package com.liveramp.hyperminhash;
 import org.junit.Assert;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.List;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 class CommonTests {
 
@@ -179,6 +187,410 @@ class CommonTests {
     }
   }
 
+  static <Sketch extends IntersectionSketch<Sketch>> void testPrimitiveOffersMatchByteArrays(
+      final Supplier<Sketch> emptySketch,
+      final int numElements,
+      final Random random) {
+    final Sketch fromPrimitives = emptySketch.get();
+    final Sketch fromByteArrays = emptySketch.get();
+
+    for (int i = 0; i < numElements; i++) {
+      final long longValue = random.nextLong();
+      Assert.assertEquals(
+          fromByteArrays.offer(longToByteArray(longValue)),
+          fromPrimitives.offer(longValue));
+
+      final int intValue = random.nextInt();
+      Assert.assertEquals(
+          fromByteArrays.offer(intToByteArray(intValue)),
+          fromPrimitives.offer(intValue));
+
+      final long mostSigBits = random.nextLong();
+      final long leastSigBits = random.nextLong();
+      Assert.assertEquals(
+          fromByteArrays.offer(ByteBuffer.allocate(16).putLong(mostSigBits).putLong(leastSigBits)
+              .array()),
+          fromPrimitives.offer(mostSigBits, leastSigBits));
+
+      final String string = randomString(random);
+      Assert.assertEquals(
+          fromByteArrays.offer(string.getBytes(StandardCharsets.UTF_8)),
+          fromPrimitives.offer(string));
+    }
+
+    Assert.assertEquals(fromByteArrays, fromPrimitives);
+  }
+
+  static <Sketch extends IntersectionSketch<Sketch>> void testRangeOffersMatchByteArrays(
+      final Supplier<Sketch> emptySketch,
+      final int numElements,
+      final Random random) {
+    final Sketch fromByteArrays = emptySketch.get();
+    final Sketch fromRanges = emptySketch.get();
+    final Sketch fromHeapBuffers = emptySketch.get();
+    final Sketch fromDirectBuffers = emptySketch.get();
+
+    for (int i = 0; i < numElements; i++) {
+      final byte[] value = randomByteArray(random);
+      final int prefixLength = random.nextInt(8);
+      final byte[] record = new byte[prefixLength + value.length + random.nextInt(8)];
+      random.nextBytes(record);
+      System.arraycopy(value, 0, record, prefixLength, value.length);
+
+      final boolean changed = fromByteArrays.offer(value);
+      Assert.assertEquals(changed, fromRanges.offer(record, prefixLength, value.length));
+
+      final ByteBuffer heap = ByteBuffer.wrap(record, prefixLength, value.length);
+      final ByteBuffer heapView = random.nextBoolean() ? heap : heap.asReadOnlyBuffer();
+      Assert.assertEquals(changed, fromHeapBuffers.offer(heapView));
+      Assert.assertEquals(prefixLength, heapView.position());
+
+      final ByteBuffer direct = ByteBuffer.allocateDirect(record.length)
+          .order(random.nextBoolean() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+      direct.put(record);
+      direct.position(prefixLength).limit(prefixLength + value.length);
+      final ByteBuffer directView = random.nextBoolean() ? direct : direct.asReadOnlyBuffer();
+      Assert.assertEquals(changed, fromDirectBuffers.offer(directView));
+      Assert.assertEquals(prefixLength + value.length, directView.limit());
+    }
+
+    Assert.assertEquals(fromByteArrays, fromRanges);
+    Assert.assertEquals(fromByteArrays, fromHeapBuffers);
+    Assert.assertEquals(fromByteArrays, fromDirectBuffers);
+  }
+
+  static <Sketch extends IntersectionSketch<Sketch>> void testOfferHashMatchesOffer(
+      final Supplier<Sketch> emptySketch,
+      final int numElements,
+      final Random random) {
+    final Sketch fromBytes = emptySketch.get();
+    final Sketch fromHalves = emptySketch.get();
+    final Sketch fromHash128 = emptySketch.get();
+
+    for (int i = 0; i < numElements; i++) {
+      final byte[] bytes = randomByteArray(random);
+      final long[] hash = Murmur3.hash128(bytes);
+
+      final boolean changed = fromBytes.offer(bytes);
+      Assert.assertEquals(changed, fromHalves.offerHash(hash[0], hash[1]));
+      Assert.assertEquals(changed, fromHash128.offerHash(Hash128.of(hash)));
+    }
+
+    Assert.assertEquals(fromBytes, fromHalves);
+    Assert.assertEquals(fromBytes, fromHash128);
+  }
+
+  static <Sketch extends IntersectionSketch<Sketch>> void testOfferAllMatchesOffer(
+      final Supplier<Sketch> emptySketch,
+      final int numElements,
+      final Random random) {
+    final long[] longs = new long[numElements];
+    final byte[][] byteArrays = new byte[numElements][];
+    final int[] offsets = new int[numElements + 1];
+    for (int i = 0; i < numElements; i++) {
+      longs[i] = random.nextLong();
+      byteArrays[i] = randomByteArray(random);
+      offsets[i + 1] = offsets[i] + byteArrays[i].length;
+    }
+
+    final Sketch expected = emptySketch.get();
+    int expectedNumChanged = 0;
+    for (long value : longs) {
+      expectedNumChanged += expected.offer(value) ? 1 : 0;
+    }
+    Sketch actual = emptySketch.get();
+    Assert.assertEquals(expectedNumChanged, actual.offerAll(longs));
+    Assert.assertEquals(expected, actual);
+
+    // offerAll reuses the arrays of the sketch's earlier calls, whether they're larger or smaller
+    actual = emptySketch.get();
+    actual.offerAll(Arrays.copyOf(longs, Math.min(numElements, 1)));
+    actual.offerAll(longs);
+    actual.offerAll(Arrays.copyOf(longs, Math.min(numElements, 1)));
+    Assert.assertEquals(expected, actual);
+
+    final Sketch expectedFromBytes = emptySketch.get();
+    expectedNumChanged = 0;
+    for (byte[] value : byteArrays) {
+      expectedNumChanged += expectedFromBytes.offer(value) ? 1 : 0;
+    }
+    actual = emptySketch.get();
+    Assert.assertEquals(expectedNumChanged, actual.offerAll(byteArrays));
+    Assert.assertEquals(expectedFromBytes, actual);
+
+    final ByteBuffer heap = ByteBuffer.allocate(offsets[numElements] + 3);
+    final ByteBuffer direct = ByteBuffer.allocateDirect(offsets[numElements] + 3)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    for (ByteBuffer buffer : Arrays.asList(heap, direct)) {
+      // start the values at an unaligned offset to exercise the offsets
+      buffer.position(3);
+      for (byte[] value : byteArrays) {
+        buffer.put(value);
+      }
+      final int[] shiftedOffsets = Arrays.stream(offsets).map(offset -> offset + 3).toArray();
+
+      for (ByteBuffer view : Arrays.asList(buffer, buffer.asReadOnlyBuffer())) {
+        actual = emptySketch.get();
+        Assert.assertEquals(expectedNumChanged, actual.offerAll(view, shiftedOffsets));
+        Assert.assertEquals(expectedFromBytes, actual);
+      }
+    }
+  }
+
+  static <Sketch extends IntersectionSketch<Sketch>> void testMergeIntoMatchesOffers(
+      final Supplier<Sketch> emptySketch,
+      final SketchCombiner<Sketch> combiner,
+      final BiFunction<Sketch, List<Sketch>, Sketch> mergeInto,
+      final int numSketches,
+      final int elementsPerSketch,
+      final Random random) {
+    final Sketch allElements = emptySketch.get();
+    final List<Sketch> sources = new ArrayList<>(numSketches);
+    final List<Sketch> sourceCopies = new ArrayList<>(numSketches);
+    for (int i = 0; i < numSketches; i++) {
+      final Sketch source = emptySketch.get();
+      for (int j = 0; j < elementsPerSketch; j++) {
+        // draw from a small range so that the sketches overlap
+        final long value = random.nextInt(numSketches * elementsPerSketch);
+        source.offer(value);
+        allElements.offer(value);
+      }
+      sources.add(source);
+      sourceCopies.add(source.deepCopy());
+    }
+
+    final Sketch target = emptySketch.get();
+    Assert.assertSame(target, mergeInto.apply(target, sources));
+    Assert.assertEquals(allElements, target);
+    Assert.assertEquals(allElements, combiner.union(sources));
+    Assert.assertEquals(sourceCopies, sources);
+
+    // merging into a non-empty target keeps what it had
+    final Sketch partial = sources.get(0).deepCopy();
+    mergeInto.apply(partial, sources.subList(1, numSketches));
+    Assert.assertEquals(allElements, partial);
+  }
+
+  static <Sketch extends IntersectionSketch<Sketch>> void testParallelUnionMatchesUnion(
+      final Supplier<Sketch> emptySketch,
+      final SketchCombiner<Sketch> combiner,
+      final BiFunction<List<Sketch>, Integer, Sketch> parallelUnionWithThreshold,
+      final int numSketches,
+      final int elementsPerSketch,
+      final Random random) {
+    final List<Sketch> sketches = new ArrayList<>(numSketches);
+    for (int i = 0; i < numSketches; i++) {
+      final Sketch sketch = emptySketch.get();
+      for (int j = 0; j < elementsPerSketch; j++) {
+        sketch.offer(random.nextLong());
+      }
+      sketches.add(sketch);
+    }
+
+    final Sketch expected = combiner.union(sketches);
+    for (int threshold : new int[]{1, 2, 7, numSketches, numSketches + 1}) {
+      Assert.assertEquals(expected, parallelUnionWithThreshold.apply(sketches, threshold));
+    }
+    Assert.assertEquals(
+        sketches.get(0),
+        parallelUnionWithThreshold.apply(sketches.subList(0, 1), 1));
+  }
+
+  static <Sketch extends IntersectionSketch<Sketch>> void testOverlapMatchesUnion(
+      final Supplier<Sketch> emptySketch,
+      final SketchCombiner<Sketch> combiner,
+      final Function<List<Sketch>, SketchOverlap> overlap,
+      final int numSketches,
+      final int elementsPerSketch,
+      final Random random) {
+    final List<Sketch> sketches =
+        buildUnevenlyOverlappingSketches(emptySketch, numSketches, elementsPerSketch, random);
+
+    for (int size = 1; size <= numSketches; size++) {
+      final List<Sketch> subset = sketches.subList(0, size);
+      final SketchOverlap result = overlap.apply(subset);
+      Assert.assertEquals(combiner.union(subset).cardinality(), result.unionCardinality());
+      Assert.assertEquals(
+          (long) (result.unionCardinality() * result.similarity()),
+          result.intersectionCardinality());
+    }
+    Assert.assertEquals(1.0, overlap.apply(sketches.subList(0, 1)).similarity(), 0);
+
+    // the intersection of two sketches is also |A| + |B| - |A u B|, which only needs the
+    // cardinalities of the sketches and of their union
+    for (int i = 0; i < numSketches; i++) {
+      for (int j = i + 1; j < numSketches; j++) {
+        final List<Sketch> pair = Arrays.asList(sketches.get(i), sketches.get(j));
+        final long unionCardinality = combiner.union(pair).cardinality();
+        final long expectedIntersection =
+            pair.get(0).cardinality() + pair.get(1).cardinality() - unionCardinality;
+        final SketchOverlap result = overlap.apply(pair);
+        Assert.assertEquals(
+            expectedIntersection,
+            result.intersectionCardinality(),
+            expectedIntersection * 0.1);
+        Assert.assertEquals(
+            expectedIntersection / (double) unionCardinality,
+            result.similarity(),
+            0.05);
+      }
+    }
+  }
+
+  static <Sketch extends IntersectionSketch<Sketch>> void testUnionCardinalityMatchesUnion(
+      final Supplier<Sketch> emptySketch,
+      final SketchCombiner<Sketch> combiner,
+      final Function<List<Sketch>, Long> unionCardinality,
+      final int numSketches,
+      final int elementsPerSketch,
+      final Random random) {
+    final List<Sketch> sketches =
+        buildUnevenlyOverlappingSketches(emptySketch, numSketches, elementsPerSketch, random);
+
+    for (int size = 1; size <= numSketches; size++) {
+      final List<Sketch> subset = sketches.subList(0, size);
+      final long expected = combiner.union(subset).cardinality();
+      Assert.assertEquals(expected, combiner.unionCardinality(subset));
+      Assert.assertEquals(expected, (long) unionCardinality.apply(subset));
+    }
+  }
+
+  static <Sketch extends IntersectionSketch<Sketch>> void testIncrementalOfferMatchesOffer(
+      final Supplier<Sketch> emptySketch,
+      final int numElements,
+      final Random random) {
+    final Sketch fromConcatenations = emptySketch.get();
+    final Sketch fromIncremental = emptySketch.get();
+    final Murmur3.IncrementalHash128 hash = new Murmur3.IncrementalHash128();
+
+    for (int i = 0; i < numElements; i++) {
+      // a composite key of a tenant id, a namespace and a record id
+      final long tenant = random.nextInt(10);
+      final byte[] namespace = randomString(random).getBytes(StandardCharsets.UTF_8);
+      final ByteBuffer id = ByteBuffer.allocateDirect(16);
+      id.putLong(random.nextLong()).putLong(random.nextLong()).flip();
+
+      final ByteBuffer concatenation = ByteBuffer.allocate(Long.BYTES + namespace.length + 16);
+      concatenation.putLong(tenant).put(namespace).put(id.duplicate());
+
+      hash.start();
+      hash.add(tenant);
+      hash.add(namespace);
+      hash.add(id);
+
+      Assert.assertEquals(
+          fromConcatenations.offer(concatenation.array()),
+          fromIncremental.offer(hash));
+    }
+
+    Assert.assertEquals(fromConcatenations, fromIncremental);
+  }
+
+  // Offers the same values to both sketches, one or two at a time, checking that they report the
+  // same changes. check compares them every checkInterval values and after the last one.
+  static <Sketch extends IntersectionSketch<Sketch>, Actual extends Sketch> Actual testOffersMatch(
+      final Supplier<Sketch> expectedSketch,
+      final Supplier<Actual> emptySketch,
+      final int numElements,
+      final int checkInterval,
+      final BiConsumer<Sketch, Actual> check,
+      final Random random) {
+    final Sketch expected = expectedSketch.get();
+    final Actual actual = emptySketch.get();
+    for (int i = 0; i < numElements; i++) {
+      final long value = random.nextLong();
+      if (i % 3 == 0) {
+        Assert.assertEquals(expected.offer(value), actual.offer(value));
+      } else {
+        Assert.assertEquals(
+            expected.offerAll(new long[]{value, value + 1}),
+            actual.offerAll(new long[]{value, value + 1}));
+      }
+
+      if ((i + 1) % checkInterval == 0 || i == numElements - 1) {
+        check.accept(expected, actual);
+      }
+    }
+    return actual;
+  }
+
+  // testOffersMatch against a HyperMinHash with the same parameters and hasher, which the sketch
+  // must match with assertMatchesHyperMinHash once all values are offered
+  static <Actual extends HyperMinHash> Actual testOffersMatchHyperMinHash(
+      final Supplier<Actual> emptySketch,
+      final int numElements,
+      final Random random) {
+    return testOffersMatchHyperMinHash(
+        emptySketch,
+        numElements,
+        numElements,
+        (expected, actual) -> {
+        },
+        random);
+  }
+
+  // like testOffersMatchHyperMinHash, also running check every checkInterval values
+  static <Actual extends HyperMinHash> Actual testOffersMatchHyperMinHash(
+      final Supplier<Actual> emptySketch,
+      final int numElements,
+      final int checkInterval,
+      final BiConsumer<HyperMinHash, Actual> check,
+      final Random random) {
+    final Actual sketch = emptySketch.get();
+    return testOffersMatch(
+        () -> new HyperMinHash(sketch.p, sketch.r, sketch.hasher),
+        () -> sketch,
+        numElements,
+        checkInterval,
+        (expected, actual) -> {
+          assertMatchesHyperMinHash(expected, actual);
+          check.accept(expected, actual);
+        },
+        random);
+  }
+
+  // checks that actual has the registers and the cardinality of expected, and that the positions
+  // it counted as its registers were updated are those of its registers
+  static void assertMatchesHyperMinHash(HyperMinHash expected, HyperMinHash actual) {
+    assertSameRegisters(expected, actual);
+    Assert.assertEquals(expected.cardinality(), actual.cardinality());
+    Assert.assertEquals(
+        actual.registers.countPositions(),
+        actual.registers.getPositionHistogram());
+  }
+
+  // compares register values only, so sketches with different kinds of registers can be compared
+  static void assertSameRegisters(HyperMinHash expected, HyperMinHash actual) {
+    Assert.assertEquals(expected.registers.getNumRegisters(), actual.registers.getNumRegisters());
+    for (int i = 0; i < expected.registers.getNumRegisters(); i++) {
+      Assert.assertEquals(
+          expected.registers.getRegisterAtIndex(i),
+          actual.registers.getRegisterAtIndex(i));
+    }
+  }
+
+  // every value is offered to a random subset of the sketches, so that they overlap unevenly
+  private static <Sketch extends IntersectionSketch<Sketch>> List<Sketch>
+  buildUnevenlyOverlappingSketches(
+      Supplier<Sketch> emptySketch,
+      int numSketches,
+      int numElements,
+      Random random) {
+    final List<Sketch> sketches = new ArrayList<>(numSketches);
+    for (int i = 0; i < numSketches; i++) {
+      sketches.add(emptySketch.get());
+    }
+    for (int i = 0; i < numElements; i++) {
+      final long value = random.nextLong();
+      for (Sketch sketch : sketches) {
+        if (random.nextInt(4) != 0) {
+          sketch.offer(value);
+        }
+      }
+    }
+    return sketches;
+  }
+
   // builds equally sized sketches which share numSharedElements items
   private static <Sketch extends IntersectionSketch<Sketch>> void buildIntersectingSketches(
       long sketchSize,
@@ -206,6 +618,29 @@ class CommonTests {
     return b;
   }
 
+  // Mixes one, two, and three byte UTF-8 characters with surrogate pairs and unpaired surrogates.
+  private static String randomString(final Random random) {
+    final int n = random.nextInt(40);
+    final StringBuilder builder = new StringBuilder(n);
+    for (int i = 0; i < n; i++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          builder.append((char) random.nextInt(0x80));
+          break;
+        case 1:
+          builder.append((char) random.nextInt(0x800));
+          break;
+        case 2:
+          builder.appendCodePoint(Character.MIN_SUPPLEMENTARY_CODE_POINT
+              + random.nextInt(Character.MAX_CODE_POINT - Character.MIN_SUPPLEMENTARY_CODE_POINT));
+          break;
+        default:
+          builder.append((char) random.nextInt(Character.MAX_VALUE + 1));
+      }
+    }
+    return builder.toString();
+  }
+
   public static final byte[] intToByteArray(int value) {
     return new byte[]{
         (byte) (value >>> 24),
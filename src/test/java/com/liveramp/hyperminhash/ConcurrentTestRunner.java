@@ -0,0 +1,32 @@
+package com.liveramp.hyperminhash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+public class ConcurrentTestRunner {
+
+  // Runs test on numThreads threads at once, passing each its index, and rethrows any failure.
+  static void runConcurrently(int numThreads, IntConsumer test) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      final List<Callable<Void>> tasks = new ArrayList<>();
+      for (int thread = 0; thread < numThreads; thread++) {
+        final int threadIndex = thread;
+        tasks.add(() -> {
+          test.accept(threadIndex);
+          return null;
+        });
+      }
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.liveramp.hyperminhash;
+
+/**
+ * The exact sum of algorithm 2.1.5 in the HyperMinHash paper, which BetaMinHashCombiner used to
+ * compute on every call. It's the reference which {@link BetaMinHashCollisions} and {@link
+ * HyperMinHashCollisions} are tested against, and which the benchmarks compare them with.
+ */
+public final class ExactCollisions {
+
+  private ExactCollisions() {
+  }
+
+  /**
+   * @return the expected number of registers in which sketches of independent sets with the given
+   * cardinalities collide, in O(2^(q + r)) for each sketch
+   */
+  public static double expectedCollisions(int p, int q, int r, double... cardinalities) {
+    final int _2q = 1 << q;
+    final int _2r = 1 << r;
+
+    double x = 0;
+    double b1 = 0;
+    double b2 = 0;
+
+    for (int i = 1; i <= _2q; i++) {
+      for (int j = 1; j <= _2r; j++) {
+        if (i != _2q) {
+          double den = Math.pow(2, p + r + i);
+          b1 = (_2r + j) / den;
+          b2 = (_2r + j + 1) / den;
+        } else {
+          double den = Math.pow(2, p + r + i - 1);
+          b1 = j / den;
+          b2 = (j + 1) / den;
+        }
+
+        double product = 1;
+        for (double cardinality : cardinalities) {
+          product *= Math.pow(1 - b2, cardinality) - Math.pow(1 - b1, cardinality);
+        }
+
+        x += product;
+      }
+    }
+    return x * Math.pow(2, p);
+  }
+}
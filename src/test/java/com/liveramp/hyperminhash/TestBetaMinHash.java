@@ -1,7 +1,12 @@
 package com.liveramp.hyperminhash;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 import static org.junit.Assert.assertEquals;
 
 public class TestBetaMinHash {
@@ -29,6 +34,166 @@ public class TestBetaMinHash {
     );
   }
 
+  @Test
+  public void testPrimitiveOffersMatchByteArrays() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> CommonTests.testPrimitiveOffersMatchByteArrays(
+            () -> new BetaMinHash(),
+            10_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testRangeOffersMatchByteArrays() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> {
+          CommonTests.testRangeOffersMatchByteArrays(() -> new BetaMinHash(), 10_000, random);
+          CommonTests.testRangeOffersMatchByteArrays(
+              () -> new BetaMinHash(Xxh3Hasher128.getInstance()),
+              10_000,
+              random);
+        }
+    );
+  }
+
+  @Test
+  public void testOfferHashMatchesOffer() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> CommonTests.testOfferHashMatchesOffer(
+            () -> new BetaMinHash(),
+            10_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testOfferAllMatchesOffer() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> CommonTests.testOfferAllMatchesOffer(
+            () -> new BetaMinHash(),
+            5_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testIncrementalOfferMatchesOffer() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> CommonTests.testIncrementalOfferMatchesOffer(
+            () -> new BetaMinHash(),
+            10_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testIncrementalOfferRequiresMurmur3() {
+    final Murmur3.IncrementalHash128 hash = new Murmur3.IncrementalHash128();
+    hash.start();
+    hash.add(42L);
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> new BetaMinHash(Xxh3Hasher128.getInstance()).offer(hash));
+
+    hash.start(1);
+    hash.add(42L);
+    Assert.assertThrows(IllegalArgumentException.class, () -> new BetaMinHash().offer(hash));
+  }
+
+  @Test
+  public void testOffersWithXxh3Hasher() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> {
+          CommonTests.testPrimitiveOffersMatchByteArrays(
+              () -> new BetaMinHash(Xxh3Hasher128.getInstance()),
+              10_000,
+              random);
+          CommonTests.testOfferAllMatchesOffer(
+              () -> new BetaMinHash(Xxh3Hasher128.getInstance()),
+              5_000,
+              random);
+        }
+    );
+  }
+
+  @Test
+  public void testDeepCopy() {
+    final BetaMinHash sketch = new BetaMinHash(Xxh3Hasher128.getInstance());
+    for (long i = 0; i < 10_000; i++) {
+      sketch.offer(i);
+    }
+
+    final BetaMinHash copy = sketch.deepCopy();
+    assertEquals(sketch, copy);
+    Assert.assertNotSame(sketch.registers, copy.registers);
+  }
+
+  @Test
+  public void testLeadingZeroCountsMatchRecount() {
+    final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+    final BetaMinHashSerde serde = new BetaMinHashSerde();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          final BetaMinHash sketch = new BetaMinHash();
+          final BetaMinHash other = new BetaMinHash();
+          assertLeadingZeroCountsMatchRecount(sketch);
+
+          for (int i = 0; i < 20_000; i++) {
+            sketch.offer(random.nextLong());
+            other.offer(random.nextLong());
+          }
+          assertLeadingZeroCountsMatchRecount(sketch);
+
+          final long[] values = new long[5_000];
+          for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextLong();
+          }
+          sketch.offerAll(values);
+          assertLeadingZeroCountsMatchRecount(sketch);
+
+          assertLeadingZeroCountsMatchRecount(combiner.union(Arrays.asList(other, sketch)));
+          combiner.mergeInto(sketch, other);
+          assertLeadingZeroCountsMatchRecount(sketch);
+          assertLeadingZeroCountsMatchRecount(sketch.deepCopy());
+          assertLeadingZeroCountsMatchRecount(serde.fromBytes(serde.toBytes(sketch)));
+
+          // registers with 32 or more leading zeros don't fit into a positive short
+          sketch.setRegister(0, (short) (32 << BetaMinHash.R));
+          assertLeadingZeroCountsMatchRecount(sketch);
+        }
+    );
+  }
+
+  private static void assertLeadingZeroCountsMatchRecount(BetaMinHash sketch) {
+    final RegisterHistogram recount =
+        BetaMinHashCardinalityGetter.countLeadingZeros(sketch.registers);
+    Assert.assertEquals(recount, sketch.leadingZeroCounts);
+    Assert.assertEquals(BetaMinHashCardinalityGetter.cardinality(recount), sketch.cardinality());
+  }
+
+  @Test
+  public void testCombiningDifferentHashersFails() {
+    final BetaMinHash murmur3 = new BetaMinHash();
+    final BetaMinHash xxh3 = new BetaMinHash(Xxh3Hasher128.getInstance());
+    final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+
+    Assert.assertNotEquals(murmur3, xxh3);
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> combiner.union(Arrays.asList(murmur3, xxh3)));
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> combiner.similarity(Arrays.asList(murmur3, xxh3)));
+  }
+
   @Test
   public void testUnion() {
     final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
@@ -47,6 +212,109 @@ public class TestBetaMinHash {
     );
   }
 
+  @Test
+  public void testMergeInto() {
+    final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> CommonTests.testMergeIntoMatchesOffers(
+            () -> new BetaMinHash(),
+            combiner,
+            combiner::mergeInto,
+            10,
+            10_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testParallelUnion() {
+    final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      RandomTestRunner.runRandomizedTest(
+          3,
+          (random) -> CommonTests.testParallelUnionMatchesUnion(
+              () -> new BetaMinHash(),
+              combiner,
+              (sketches, threshold) -> combiner.parallelUnion(sketches, pool, threshold),
+              50,
+              1_000,
+              random)
+      );
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testMergeIntoChecksSourcesFirst() {
+    final BetaMinHash target = new BetaMinHash();
+    final BetaMinHash sameHasher = new BetaMinHash();
+    sameHasher.offer(1L);
+    final BetaMinHash otherHasher = new BetaMinHash(Xxh3Hasher128.getInstance());
+
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> BetaMinHashCombiner.getInstance().mergeInto(target, sameHasher, otherHasher));
+    assertEquals(new BetaMinHash(), target);
+  }
+
+  @Test
+  public void testUnionCardinality() {
+    final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          CommonTests.testUnionCardinalityMatchesUnion(
+              () -> new BetaMinHash(),
+              combiner,
+              (sketches) -> combiner.unionCardinality(sketches.toArray(new BetaMinHash[0])),
+              5,
+              50_000,
+              random);
+          CommonTests.testUnionCardinalityMatchesUnion(
+              () -> new BetaMinHash(),
+              combiner,
+              (sketches) -> combiner.unionCardinality(sketches.toArray(new BetaMinHash[0])),
+              3,
+              100,
+              random);
+        }
+    );
+  }
+
+  @Test
+  public void testOverlap() {
+    final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          CommonTests.testOverlapMatchesUnion(
+              () -> new BetaMinHash(),
+              combiner,
+              combiner::overlap,
+              4,
+              20_000,
+              random);
+          CommonTests.testOverlapMatchesUnion(
+              () -> new BetaMinHash(),
+              combiner,
+              (sketches) -> combiner.overlap(sketches.toArray(new BetaMinHash[0])),
+              3,
+              1_000,
+              random);
+        }
+    );
+  }
+
+  @Test
+  public void testOverlapOfNoSketchesFails() {
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> BetaMinHashCombiner.getInstance().overlap());
+  }
+
   @Test
   public void testIntersectionCardinality() {
     final int overlapSlices = 20;
@@ -94,4 +362,39 @@ public class TestBetaMinHash {
         numIter
     );
   }
+
+  @Test
+  public void testRegistersMatchBitHelperPacking() {
+    RandomTestRunner.runRandomizedTest(10, rng -> {
+      final BetaMinHash sketch = new BetaMinHash();
+      final short[] expectedRegisters = new short[BetaMinHash.NUM_REGISTERS];
+
+      for (int i = 0; i < 100_000; i++) {
+        final byte[] bytes = new byte[rng.nextInt(32)];
+        rng.nextBytes(bytes);
+        sketch.offer(bytes);
+        offerUsingBitHelper(expectedRegisters, bytes);
+      }
+
+      Assert.assertArrayEquals(expectedRegisters, sketch.registers);
+    });
+  }
+
+  // Reference implementation which converts the hash to bit strings using BitHelper.
+  private static void offerUsingBitHelper(short[] registers, byte[] bytes) {
+    final long[] hash = Murmur3.hash128(bytes);
+    final byte[] hashBytes = ByteBuffer.allocate(16).putLong(hash[0]).putLong(hash[1]).array();
+
+    final int registerIndex = (int) BitHelper.getLeftmostBits(hash[0], BetaMinHash.P);
+    final short leftmostOneBitPosition = BitHelper.getLeftmostOneBitPosition(
+        hashBytes,
+        BetaMinHash.P,
+        BetaMinHash.Q);
+    final short rBits = (short) BitHelper.getRightmostBits(hashBytes, BetaMinHash.R);
+    final short packedRegister = (short) ((leftmostOneBitPosition << BetaMinHash.R) | rBits);
+
+    if (registers[registerIndex] < packedRegister) {
+      registers[registerIndex] = packedRegister;
+    }
+  }
 }
@@ -0,0 +1,72 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBetaMinHashCollisions {
+
+  @Test
+  public void testMatchesExactSumWithinTolerance() {
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          for (int i = 0; i < 10; i++) {
+            final double[] cardinalities = randomCardinalities(random, i % 5 == 0 ? 3 : 2);
+            assertWithinTolerance(
+                ExactCollisions.expectedCollisions(
+                    BetaMinHash.P,
+                    BetaMinHash.Q,
+                    BetaMinHash.R,
+                    cardinalities),
+                BetaMinHashCollisions.expectedCollisions(cardinalities));
+          }
+        }
+    );
+  }
+
+  @Test
+  public void testCachedResultsMatch() {
+    final double[] cardinalities = {123_456, 7_890_123};
+    final double expected = BetaMinHashCollisions.expectedCollisions(cardinalities);
+    Assert.assertEquals(expected, BetaMinHashCollisions.expectedCollisions(cardinalities), 0);
+    // the order of the cardinalities doesn't matter
+    Assert.assertEquals(expected, BetaMinHashCollisions.expectedCollisions(7_890_123, 123_456), 0);
+    // nor do changes smaller than the rounding
+    Assert.assertEquals(expected, BetaMinHashCollisions.expectedCollisions(123_457, 7_890_124), 0);
+  }
+
+  @Test
+  public void testRoundCardinality() {
+    Assert.assertEquals(0, BetaMinHashCollisions.roundCardinality(0), 0);
+    // integers with at most 12 significant bits are kept as they are
+    Assert.assertEquals(4095, BetaMinHashCollisions.roundCardinality(4095), 0);
+    Assert.assertEquals(4096 * 1024, BetaMinHashCollisions.roundCardinality(4096 * 1024), 0);
+    // others are rounded to the nearest such value
+    Assert.assertEquals(8192, BetaMinHashCollisions.roundCardinality(8193), 0);
+    Assert.assertEquals(8196, BetaMinHashCollisions.roundCardinality(8195), 0);
+
+    final Random random = new Random(0);
+    for (int i = 0; i < 10_000; i++) {
+      final double cardinality = Math.floor(Math.pow(10, random.nextDouble() * 12));
+      final double rounded = BetaMinHashCollisions.roundCardinality(cardinality);
+      Assert.assertEquals(cardinality, rounded, cardinality / 4096);
+    }
+  }
+
+  private static double[] randomCardinalities(Random random, int numSketches) {
+    final double[] cardinalities = new double[numSketches];
+    for (int i = 0; i < numSketches; i++) {
+      // spread evenly over the orders of magnitude from 1 to 10^10
+      cardinalities[i] = Math.floor(Math.pow(10, random.nextDouble() * 10));
+    }
+    return cardinalities;
+  }
+
+  private static void assertWithinTolerance(double exact, double actual) {
+    final double tolerance = Math.max(
+        BetaMinHashCollisions.ABSOLUTE_TOLERANCE,
+        BetaMinHashCollisions.RELATIVE_TOLERANCE * Math.abs(exact));
+    Assert.assertEquals(exact, actual, tolerance);
+  }
+}
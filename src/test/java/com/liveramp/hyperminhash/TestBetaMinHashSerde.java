@@ -3,6 +3,15 @@ package com.liveramp.hyperminhash;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 public class TestBetaMinHashSerde {
@@ -46,6 +55,177 @@ public class TestBetaMinHashSerde {
 
   }
 
+  @Test
+  public void testRoundtripWithXxh3Hasher() {
+    BetaMinHashSerde serde = new BetaMinHashSerde();
+    RandomTestRunner.runRandomizedTest(100, rng -> {
+      BetaMinHash sketch = new BetaMinHash(Xxh3Hasher128.getInstance());
+      for (int j = 0; j < 1000; j++) {
+        sketch.offer(randomByteArrayOfLength(rng, 50));
+      }
+
+      byte[] bytes = serde.toBytes(sketch);
+      Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+      Assert.assertEquals(BetaMinHash.VERSION_WITH_HASHER, bytes[1]);
+      BetaMinHash roundtripped = serde.fromBytes(bytes);
+      Assert.assertEquals(sketch, roundtripped);
+      Assert.assertSame(Xxh3Hasher128.getInstance(), roundtripped.hasher);
+    });
+  }
+
+  @Test
+  public void testMurmur3SketchesKeepVersion1Format() {
+    // sketches with the default hasher must stay readable by versions without configurable hashers
+    BetaMinHashSerde serde = new BetaMinHashSerde();
+    BetaMinHash sketch = new BetaMinHash();
+    sketch.offer(42L);
+
+    byte[] bytes = serde.toBytes(sketch);
+    Assert.assertEquals(BetaMinHash.VERSION, bytes[1]);
+    Assert.assertSame(Murmur3Hasher128.getInstance(), serde.fromBytes(bytes).hasher);
+  }
+
+  @Test
+  public void testViewMatchesDeserializedSketch() {
+    BetaMinHashSerde serde = new BetaMinHashSerde();
+    RandomTestRunner.runRandomizedTest(100, rng -> {
+      BetaMinHash first = new BetaMinHash(Xxh3Hasher128.getInstance());
+      BetaMinHash second = new BetaMinHash(Xxh3Hasher128.getInstance());
+      for (int j = 0; j < 10_000; j++) {
+        first.offer(rng.nextLong());
+        second.offer(rng.nextLong());
+      }
+
+      // both sketches in one buffer, not at position 0
+      byte[] firstBytes = serde.toBytes(first);
+      byte[] secondBytes = serde.toBytes(second);
+      ByteBuffer buffer = ByteBuffer.allocate(3 + firstBytes.length + secondBytes.length);
+      buffer.position(3);
+      buffer.put(firstBytes).put(secondBytes);
+      buffer.position(3);
+
+      BetaMinHash firstView = serde.view(buffer);
+      Assert.assertEquals(3, buffer.position());
+      buffer.position(3 + firstBytes.length);
+      BetaMinHash secondView = serde.view(buffer);
+
+      Assert.assertEquals(first, firstView);
+      Assert.assertEquals(first.hashCode(), firstView.hashCode());
+      Assert.assertEquals(second, secondView);
+      Assert.assertEquals(first.cardinality(), firstView.cardinality());
+      Assert.assertArrayEquals(firstBytes, serde.toBytes(firstView));
+
+      BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+      List<BetaMinHash> sketches = Arrays.asList(first, second);
+      List<BetaMinHash> views = Arrays.asList(firstView, secondView);
+      Assert.assertEquals(combiner.union(sketches), combiner.union(views));
+      Assert.assertEquals(combiner.unionCardinality(sketches), combiner.unionCardinality(views));
+      Assert.assertEquals(combiner.similarity(sketches), combiner.similarity(views), 0);
+
+      // copies can be updated, but views can't
+      BetaMinHash copy = firstView.deepCopy();
+      copy.offer(-1L);
+      Assert.assertThrows(UnsupportedOperationException.class, () -> firstView.offer(-1L));
+      Assert.assertThrows(
+          UnsupportedOperationException.class,
+          () -> firstView.offerAll(new long[]{-1L}));
+      Assert.assertThrows(
+          UnsupportedOperationException.class,
+          () -> combiner.mergeInto(firstView, Arrays.asList(second)));
+    });
+  }
+
+  @Test
+  public void testViewOfMappedFile() throws IOException {
+    BetaMinHashSerde serde = new BetaMinHashSerde();
+    BetaMinHash dense = new BetaMinHash();
+    SparseBetaMinHash sparse = new SparseBetaMinHash();
+    for (long j = 0; j < 10_000; j++) {
+      dense.offer(j);
+      if (j < 100) {
+        sparse.offer(j);
+      }
+    }
+    byte[] denseBytes = serde.toBytes(dense);
+    byte[] sparseBytes = serde.toBytes(sparse);
+
+    File file = File.createTempFile("sketches", ".bin");
+    // some platforms can't delete a file while it's mapped
+    file.deleteOnExit();
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.write(denseBytes);
+      randomAccessFile.write(sparseBytes);
+      MappedByteBuffer buffer = randomAccessFile.getChannel()
+          .map(FileChannel.MapMode.READ_ONLY, 0, denseBytes.length + sparseBytes.length);
+
+      BetaMinHash denseView = serde.view(buffer);
+      Assert.assertTrue(denseView instanceof BetaMinHashView);
+      Assert.assertEquals(dense, denseView);
+      Assert.assertEquals(dense.cardinality(), denseView.cardinality());
+
+      // sparse sketches are read into memory
+      buffer.position(denseBytes.length);
+      Assert.assertEquals(sparse, serde.view(buffer));
+    }
+  }
+
+  @Test
+  public void testRejectsTooManySparseRegisters() {
+    BetaMinHashSerde serde = new BetaMinHashSerde();
+    SparseBetaMinHash sparse = new SparseBetaMinHash();
+    for (long j = 0; j < 100; j++) {
+      sparse.offer(j);
+    }
+    byte[] bytes = serde.toBytes(sparse);
+    // after the serde token, the version and the hasher serde token
+    int numSparseRegistersOffset = 3;
+    Assert.assertEquals(
+        sparse.sparseRegisters.size(),
+        ByteBuffer.wrap(bytes).getInt(numSparseRegistersOffset));
+
+    for (int numSparseRegisters : new int[]{
+        SparseShortRegisters.MAX_SPARSE_REGISTERS + 1, Integer.MAX_VALUE, -1}) {
+      ByteBuffer.wrap(bytes).putInt(numSparseRegistersOffset, numSparseRegisters);
+      Assert.assertThrows(IllegalArgumentException.class, () -> serde.fromBytes(bytes));
+      Assert.assertThrows(IllegalArgumentException.class, () -> serde.view(ByteBuffer.wrap(bytes)));
+    }
+  }
+
+  @Test
+  public void testRejectsInvalidSparseRegisters() {
+    BetaMinHashSerde serde = new BetaMinHashSerde();
+    SparseBetaMinHash sparse = new SparseBetaMinHash();
+    for (long j = 0; j < 100; j++) {
+      sparse.offer(j);
+    }
+    byte[] valid = serde.toBytes(sparse);
+    // an index and a register for each sparse register, after the number of them
+    int first = 7;
+    int second = first + 4;
+
+    List<byte[]> invalid = new ArrayList<>();
+    for (short index : new short[]{-1, (short) BetaMinHash.NUM_REGISTERS, Short.MAX_VALUE}) {
+      invalid.add(ByteBuffer.wrap(valid.clone()).putShort(first, index).array());
+    }
+    short firstIndex = ByteBuffer.wrap(valid).getShort(first);
+    short secondIndex = ByteBuffer.wrap(valid).getShort(second);
+    // duplicate
+    invalid.add(ByteBuffer.wrap(valid.clone()).putShort(second, firstIndex).array());
+    // out of order
+    invalid.add(ByteBuffer.wrap(valid.clone())
+        .putShort(first, secondIndex)
+        .putShort(second, firstIndex)
+        .array());
+    // not set
+    invalid.add(ByteBuffer.wrap(valid.clone()).putShort(first + 2, (short) 0).array());
+
+    for (byte[] bytes : invalid) {
+      Assert.assertThrows(IllegalArgumentException.class, () -> serde.fromBytes(bytes));
+      Assert.assertThrows(IllegalArgumentException.class, () -> serde.view(ByteBuffer.wrap(bytes)));
+    }
+    Assert.assertEquals(sparse, serde.fromBytes(valid));
+  }
+
   private byte[] randomByteArrayOfLength(Random rng, int n) {
     byte[] bytes = new byte[n];
     rng.nextBytes(bytes);
@@ -0,0 +1,105 @@
+package com.liveramp.hyperminhash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBitPackedHyperMinHash {
+
+  @Test
+  public void testOffersMatchHyperMinHash() {
+    RandomTestRunner.runRandomizedTest(50, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      // every width from 8 to 63 bits, so registers straddle words at every offset
+      final int r = 2 + rng.nextInt(56);
+      CommonTests.testOffersMatchHyperMinHash(() -> new BitPackedHyperMinHash(p, r), 2000, rng);
+    });
+  }
+
+  @Test
+  public void testSerialization() {
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    RandomTestRunner.runRandomizedTest(50, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = 2 + rng.nextInt(56);
+      final BitPackedHyperMinHash sketch =
+          new BitPackedHyperMinHash(p, r, Xxh3Hasher128.getInstance());
+      for (int i = 0; i < 1000; i++) {
+        sketch.offer(rng.nextLong());
+      }
+
+      final byte[] bytes = serde.toBytes(sketch);
+      Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+      // with r = 2 or 10, narrow registers already take a whole byte or short
+      Assert.assertTrue(bytes.length <= new HyperMinHashSerDe(true)
+          .sizeInBytes(new HyperMinHash(p, r, Xxh3Hasher128.getInstance())));
+      final HyperMinHash deserialized = serde.fromBytes(bytes);
+      Assert.assertTrue(deserialized instanceof BitPackedHyperMinHash);
+      Assert.assertEquals(sketch, deserialized);
+    });
+  }
+
+  @Test
+  public void testShrinksIntRegisters() {
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    // 26 bits instead of 32 for each of the 2^15 registers, behind the same header
+    Assert.assertEquals(26 << 9, BitPackedRegisters.numWords(15, 20));
+    Assert.assertEquals(
+        (1 << 15) * 6 / Byte.SIZE,
+        serde.sizeInBytes(new HyperMinHash(15, 20))
+            - serde.sizeInBytes(new BitPackedHyperMinHash(15, 20)));
+  }
+
+  @Test
+  public void testCombinersMatchHyperMinHash() {
+    RandomTestRunner.runRandomizedTest(20, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = 2 + rng.nextInt(56);
+      final List<HyperMinHash> packed = new ArrayList<>();
+      final List<HyperMinHash> unpacked = new ArrayList<>();
+      final List<HyperMinHash> mixed = new ArrayList<>();
+      for (int j = 0; j < 5; j++) {
+        final BitPackedHyperMinHash packedSketch = new BitPackedHyperMinHash(p, r);
+        final HyperMinHash sketch = new HyperMinHash(p, r);
+        final int numValues = rng.nextInt(5000);
+        for (int i = 0; i < numValues; i++) {
+          final long value = rng.nextLong();
+          packedSketch.offer(value);
+          sketch.offer(value);
+        }
+        packed.add(packedSketch);
+        unpacked.add(sketch);
+        mixed.add(j % 2 == 0 ? packedSketch : sketch);
+      }
+
+      final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+      final HyperMinHash expected = combiner.union(unpacked);
+      for (List<HyperMinHash> sketches : Arrays.asList(packed, mixed)) {
+        CommonTests.assertSameRegisters(expected, combiner.union(sketches));
+        Assert.assertEquals(expected.cardinality(), combiner.unionCardinality(sketches));
+        Assert.assertEquals(combiner.overlap(unpacked), combiner.overlap(sketches));
+
+        final HyperMinHash target = new BitPackedHyperMinHash(p, r);
+        combiner.mergeInto(target, sketches);
+        CommonTests.assertMatchesHyperMinHash(expected, target);
+      }
+    });
+  }
+
+  @Test
+  public void testDeepCopy() {
+    final BitPackedHyperMinHash sketch = new BitPackedHyperMinHash(14, 30);
+    for (long i = 0; i < 10_000; i++) {
+      sketch.offer(i);
+    }
+
+    final BitPackedHyperMinHash copy = sketch.deepCopy();
+    Assert.assertEquals(sketch, copy);
+    Assert.assertEquals(sketch.hashCode(), copy.hashCode());
+    copy.offer(-1L);
+    copy.offer(-2L);
+    Assert.assertNotEquals(sketch, copy);
+  }
+}
@@ -0,0 +1,88 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestConcurrentHyperMinHash {
+
+  private static final int NUM_THREADS = 8;
+
+  @Test
+  public void testConcurrentOffersMatchSequentialOffers() throws Exception {
+    // r = 10 uses int registers, r = 35 uses long registers
+    for (int r : new int[]{10, 35}) {
+      final long[] values = new long[200_000];
+      final HyperMinHash expected = new HyperMinHash(10, r);
+      for (int i = 0; i < values.length; i++) {
+        // duplicates make threads race on the same registers
+        values[i] = i % 50_000;
+        expected.offer(values[i]);
+      }
+
+      final ConcurrentHyperMinHash sketch = new ConcurrentHyperMinHash(10, r);
+      ConcurrentTestRunner.runConcurrently(NUM_THREADS, thread -> {
+        for (int i = thread; i < values.length; i += NUM_THREADS) {
+          if (i % 3 == 0) {
+            sketch.offerAll(new long[]{values[i]});
+          } else {
+            sketch.offer(values[i]);
+          }
+        }
+      });
+
+      // no update of the registers or of the counted positions was lost
+      CommonTests.assertMatchesHyperMinHash(expected, sketch);
+    }
+  }
+
+  @Test
+  public void testSerializesAsHyperMinHash() {
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    RandomTestRunner.runRandomizedTest(100, rng -> {
+      final int p = Math.max(rng.nextInt(17), 4);
+      final int r = Math.max(rng.nextInt(57), 4);
+      final HyperMinHash expected = new HyperMinHash(p, r);
+      final ConcurrentHyperMinHash sketch = new ConcurrentHyperMinHash(p, r);
+      for (int i = 0; i < 1000; i++) {
+        final long value = rng.nextLong();
+        expected.offer(value);
+        sketch.offer(value);
+      }
+
+      final byte[] bytes = serde.toBytes(sketch);
+      Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+      Assert.assertArrayEquals(serde.toBytes(expected), bytes);
+      Assert.assertEquals(expected, serde.fromBytes(bytes));
+    });
+  }
+
+  @Test
+  public void testDeepCopy() {
+    final ConcurrentHyperMinHash sketch = new ConcurrentHyperMinHash(14, 35);
+    for (long i = 0; i < 10_000; i++) {
+      sketch.offer(i);
+    }
+
+    final ConcurrentHyperMinHash copy = sketch.deepCopy();
+    Assert.assertEquals(sketch, copy);
+    copy.offer(-1L);
+    copy.offer(-2L);
+    Assert.assertNotEquals(sketch, copy);
+  }
+
+  @Test
+  public void testUnionWithHyperMinHash() {
+    final HyperMinHash plain = new HyperMinHash(14, 20);
+    final ConcurrentHyperMinHash concurrent = new ConcurrentHyperMinHash(14, 20);
+    final HyperMinHash expected = new HyperMinHash(14, 20);
+    for (long i = 0; i < 20_000; i++) {
+      (i % 2 == 0 ? plain : concurrent).offer(i);
+      expected.offer(i);
+    }
+
+    final HyperMinHash union = HyperMinHashCombiner.getInstance()
+        .union(Arrays.asList(plain, concurrent));
+    CommonTests.assertSameRegisters(expected, union);
+  }
+}
@@ -1,5 +1,14 @@
 package com.liveramp.hyperminhash;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -21,4 +30,250 @@ public class TestHmhCardinalityEstimator {
     Assert.assertEquals(expectedOutput, actualEstimate, 0.0001);
   }
 
+  @Test
+  public void testBiasCorrectionOutsideClosestEstimates() {
+    // 12 and 11 are the closest raw estimates to 13, but don't surround it
+    final double[] rawEstimates = {0.0, 11.0, 12.0, 20.0,};
+    final double[] biases = {1.0, 3.0, 1.0, -2.0,};
+    final long basicEstimate = 13;
+    final double slope = ((12.0 - 1.0) - (11.0 - 3.0)) / (12.0 - 11.0);
+    final double expectedOutput = 11.0 - 3.0 + (slope * (13.0 - 11.0));
+    final double actualEstimate = HmhCardinalityEstimator.biasCorrectEstimate(
+        basicEstimate,
+        rawEstimates,
+        biases
+    );
+
+    Assert.assertEquals(expectedOutput, actualEstimate, 0.0001);
+  }
+
+  @Test
+  public void testBiasCorrectionWithEquallyCloseEstimates() {
+    // 10 and 20 are both 5 away from 15, and 0 and 30 both 15 away. Of those, the raw estimates
+    // which come last in the row are used.
+    final double[] rawEstimates = {10.0, 0.0, 20.0, 30.0, 10.0,};
+    final double[] biases = {1.0, 2.0, 3.0, 4.0, 5.0,};
+    final long basicEstimate = 15;
+    final double slope = ((30.0 - 4.0) - (10.0 - 5.0)) / (30.0 - 10.0);
+    final double expectedOutput = 10.0 - 5.0 + (slope * (15.0 - 10.0));
+    final double actualEstimate = HmhCardinalityEstimator.biasCorrectEstimate(
+        basicEstimate,
+        rawEstimates,
+        biases
+    );
+
+    Assert.assertEquals(expectedOutput, actualEstimate, 0.0001);
+  }
+
+  @Test
+  public void testBiasCorrectionDataForEveryPrecision() {
+    // length, first and last raw estimates and first and last biases of each precision's row in
+    // the HLL++ appendix
+    final double[][] expectedRows = {
+        {79, 11.0, 77.2394, 10.0, -1.7606},
+        {159, 23.0, 158.5852, 22.0, -0.414800000000014},
+        {200, 46.0, 318.9858, 45.0, 0.985799999999983},
+        {200, 92.0, 638.6102, 91.0, 2.61019999999996},
+        {200, 184.2152, 1274.5192, 183.2152, 1.51919999999996},
+        {201, 369.0, 2553.768, 368.0, -6.23199999999997},
+        {200, 738.1256, 5084.1828, 737.1256, -9.81720000000041},
+        {201, 1477.0, 10229.9176, 1476.0, -10.0823999999993},
+        {201, 2954.0, 20463.22, 2953.0, -15.7799999999988},
+        {200, 5908.5052, 40717.2424, 5907.5052, -37.7575999999972},
+        {201, 11817.475, 81876.3884, 11816.475, -42.6116000000038},
+        {201, 23635.0036, 163729.2842, 23634.0036, -109.715800000005},
+        {200, 47271.0, 325847.1542, 47270.0, -193.84580000001},
+        {201, 94542.0, 654941.845, 94541.0, -417.155000000028},
+        {200, 189084.0, 1303455.691, 189083.0, -713.308999999892},
+    };
+
+    for (int p = BiasCorrection.MIN_P; p <= BiasCorrection.MAX_P; p++) {
+      final BiasCorrection biasCorrection = BiasCorrection.forPrecision(p);
+      final double[] expectedRow = expectedRows[p - BiasCorrection.MIN_P];
+      final double[] rawEstimates = biasCorrection.rawEstimates;
+      final double[] biases = biasCorrection.biases;
+
+      Assert.assertEquals((int) expectedRow[0], rawEstimates.length);
+      Assert.assertEquals(rawEstimates.length, biases.length);
+      Assert.assertEquals(expectedRow[1], rawEstimates[0], 0);
+      Assert.assertEquals(expectedRow[2], rawEstimates[rawEstimates.length - 1], 0);
+      Assert.assertEquals(expectedRow[3], biases[0], 0);
+      Assert.assertEquals(expectedRow[4], biases[biases.length - 1], 0);
+      // loaded once, then reused
+      Assert.assertSame(biasCorrection, BiasCorrection.forPrecision(p));
+    }
+  }
+
+  @Test
+  public void testBiasCorrectionResourcesMatchPublishedTables() throws IOException {
+    final double[][][] tables = BiasCorrectionTables.readTables();
+    for (int p = BiasCorrection.MIN_P; p <= BiasCorrection.MAX_P; p++) {
+      final double[][] table = tables[p - BiasCorrection.MIN_P];
+      Assert.assertEquals(table[0].length, table[1].length);
+      Assert.assertArrayEquals(
+          BiasCorrectionTables.toBytes(table[0], table[1]),
+          readResource("bias-correction-" + p + ".bin"));
+    }
+  }
+
+  @Test
+  public void testBiasCorrectionMatchesPreviousEstimatesForEveryPrecision() {
+    for (int p = BiasCorrection.MIN_P; p <= BiasCorrection.MAX_P; p++) {
+      final BiasCorrection biasCorrection = BiasCorrection.forPrecision(p);
+
+      // every estimate within a few of a raw estimate, where the closest two change
+      for (double rawEstimate : biasCorrection.rawEstimates) {
+        for (long estimate = (long) rawEstimate - 2; estimate <= (long) rawEstimate + 3;
+            estimate++) {
+          assertBiasCorrectionMatchesPrevious(estimate, biasCorrection);
+        }
+      }
+    }
+
+    RandomTestRunner.runRandomizedTest(10, random -> {
+      final int p = BiasCorrection.MIN_P
+          + random.nextInt(BiasCorrection.MAX_P - BiasCorrection.MIN_P + 1);
+      final BiasCorrection biasCorrection = BiasCorrection.forPrecision(p);
+      final double[] rawEstimates = biasCorrection.rawEstimates;
+      final double maxEstimate = rawEstimates[rawEstimates.length - 1];
+      for (int j = 0; j < 1000; j++) {
+        final long estimate = (long) (random.nextDouble() * maxEstimate);
+        assertBiasCorrectionMatchesPrevious(estimate, biasCorrection);
+      }
+    });
+  }
+
+  @Test
+  public void testBiasCorrectionMatchesPreviousEstimatesForUnsortedRows() {
+    RandomTestRunner.runRandomizedTest(1000, random -> {
+      // few distinct values, so that rows have duplicates and estimates are often equally close to
+      // several raw estimates
+      final double[] rawEstimates = new double[2 + random.nextInt(10)];
+      final double[] biases = new double[rawEstimates.length];
+      for (int i = 0; i < rawEstimates.length; i++) {
+        rawEstimates[i] = random.nextInt(8) * 2.5;
+        biases[i] = random.nextInt(5) - 2;
+      }
+      // at least two raw estimates at different distances from any estimate
+      rawEstimates[1] = rawEstimates[0] + 0.75;
+
+      assertBiasCorrectionMatchesPrevious(random.nextInt(25) - 2, rawEstimates, biases);
+    });
+  }
+
+  @Test
+  public void testImprovedEstimateOfEmptyRegisters() {
+    for (int p = 4; p <= 30; p++) {
+      final RegisterHistogram positions =
+          RegisterHistogram.ofEmptyRegisters(Registers.NUM_POSITIONS, 1 << p);
+      Assert.assertEquals(0, HmhCardinalityEstimator.improvedEstimate(positions, p), 0);
+      Assert.assertEquals(0, HmhCardinalityEstimator.estimateCardinality(positions, p));
+    }
+  }
+
+  @Test
+  public void testImprovedEstimateForEveryPrecision() {
+    RandomTestRunner.runRandomizedTest(1, random -> {
+      for (int p = 4; p <= 30; p++) {
+        for (int cardinality : new int[]{1, 1_000, 100_000}) {
+          final double estimate = HmhCardinalityEstimator.improvedEstimate(
+              positionsOfRandomHashes(p, cardinality, random),
+              p);
+          // 5 standard errors of HyperLogLog, or of a sketch with one register per value when
+          // there are fewer values than registers
+          final double standardError = 1.04 / Math.sqrt(Math.min(1 << p, cardinality));
+          Assert.assertEquals(
+              "p = " + p,
+              cardinality,
+              estimate,
+              5 * standardError * cardinality);
+        }
+      }
+    });
+  }
+
+  // Registers with the positions of the first one which HyperMinHash would give them for
+  // numHashes random hashes, kept in a map so that even p = 30 needs little memory
+  private static RegisterHistogram positionsOfRandomHashes(int p, int numHashes, Random random) {
+    final Map<Integer, Integer> positionsByRegister = new HashMap<>();
+    for (int i = 0; i < numHashes; i++) {
+      final long hash = random.nextLong();
+      final int register = (int) (hash >>> (Long.SIZE - p));
+      final int position = Long.numberOfLeadingZeros((hash << p) | (1L << (p - 1))) + 1;
+      positionsByRegister.merge(register, position, Math::max);
+    }
+
+    final RegisterHistogram positions =
+        RegisterHistogram.ofEmptyRegisters(Registers.NUM_POSITIONS, 1 << p);
+    for (int position : positionsByRegister.values()) {
+      positions.move(0, position);
+    }
+    return positions;
+  }
+
+  private static void assertBiasCorrectionMatchesPrevious(
+      long estimate,
+      BiasCorrection biasCorrection) {
+    Assert.assertEquals(
+        "estimate " + estimate,
+        treeMapBiasCorrectEstimate(estimate, biasCorrection.rawEstimates, biasCorrection.biases),
+        biasCorrection.correct(estimate),
+        0);
+  }
+
+  private static void assertBiasCorrectionMatchesPrevious(
+      long estimate,
+      double[] rawEstimates,
+      double[] biases) {
+    Assert.assertEquals(
+        "estimate " + estimate,
+        treeMapBiasCorrectEstimate(estimate, rawEstimates, biases),
+        HmhCardinalityEstimator.biasCorrectEstimate(estimate, rawEstimates, biases),
+        0);
+  }
+
+  // How biasCorrectEstimate used to find the closest two raw estimates, with a map of every raw
+  // estimate's index by its distance to the estimate
+  private static double treeMapBiasCorrectEstimate(
+      final long estimate,
+      final double[] rawEstimates,
+      final double[] biases) {
+
+    final SortedMap<Double, Integer> indexesByDifference = new TreeMap<>();
+    for (int i = 0; i < rawEstimates.length; i++) {
+      indexesByDifference.put(Math.abs(estimate - rawEstimates[i]), i);
+    }
+
+    final Iterator<Double> ascDiffIter = indexesByDifference.keySet().iterator();
+    final int smallestDiffIndex = indexesByDifference.get(ascDiffIter.next());
+    final int secondSmallestDiffIndex = indexesByDifference.get(ascDiffIter.next());
+
+    final int firstIndex;
+    final int secondIndex;
+    if (rawEstimates[smallestDiffIndex] < rawEstimates[secondSmallestDiffIndex]) {
+      firstIndex = smallestDiffIndex;
+      secondIndex = secondSmallestDiffIndex;
+    } else {
+      secondIndex = smallestDiffIndex;
+      firstIndex = secondSmallestDiffIndex;
+    }
+
+    final double x1 = rawEstimates[firstIndex];
+    final double x2 = rawEstimates[secondIndex];
+    final double y1 = x1 - biases[firstIndex];
+    final double y2 = x2 - biases[secondIndex];
+    return (estimate - x1) * ((y2 - y1) / (x2 - x1)) + y1;
+  }
+
+  private static byte[] readResource(String name) throws IOException {
+    try (InputStream resource = BiasCorrection.class.getResourceAsStream(name)) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = resource.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+      return bytes.toByteArray();
+    }
+  }
 }
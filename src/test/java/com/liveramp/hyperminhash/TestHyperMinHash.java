@@ -1,5 +1,10 @@
 package com.liveramp.hyperminhash;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -28,6 +33,181 @@ public class TestHyperMinHash {
     );
   }
 
+  @Test
+  public void testCardinalityBeyondBiasCorrectionData() {
+    // the HLL++ bias correction data stops at p = 18
+    RandomTestRunner.runRandomizedTest(
+        1,
+        (random) -> CommonTests.testCardinality(
+            new HyperMinHash(20, 4),
+            1_000_000,
+            1_000,
+            random,
+            1.0)
+    );
+  }
+
+  @Test
+  public void testPrimitiveOffersMatchByteArrays() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> CommonTests.testPrimitiveOffersMatchByteArrays(
+            () -> new HyperMinHash(14, 35),
+            10_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testRangeOffersMatchByteArrays() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> {
+          CommonTests.testRangeOffersMatchByteArrays(
+              () -> new HyperMinHash(14, 35),
+              10_000,
+              random);
+          CommonTests.testRangeOffersMatchByteArrays(
+              () -> new HyperMinHash(14, 35, Xxh3Hasher128.getInstance()),
+              10_000,
+              random);
+        }
+    );
+  }
+
+  @Test
+  public void testOfferHashMatchesOffer() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> CommonTests.testOfferHashMatchesOffer(
+            () -> new HyperMinHash(14, 35),
+            10_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testOfferAllMatchesOffer() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> CommonTests.testOfferAllMatchesOffer(
+            () -> new HyperMinHash(14, 35),
+            5_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testIncrementalOfferMatchesOffer() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> CommonTests.testIncrementalOfferMatchesOffer(
+            () -> new HyperMinHash(14, 35),
+            10_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testIncrementalOfferRequiresMurmur3() {
+    final Murmur3.IncrementalHash128 hash = new Murmur3.IncrementalHash128();
+    hash.start();
+    hash.add(42L);
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> new HyperMinHash(14, 35, Xxh3Hasher128.getInstance()).offer(hash));
+
+    hash.start(1);
+    hash.add(42L);
+    Assert.assertThrows(IllegalArgumentException.class, () -> new HyperMinHash(14, 35).offer(hash));
+  }
+
+  @Test
+  public void testIncrementalOfferRequiresStart() {
+    final Murmur3.IncrementalHash128 hash = new Murmur3.IncrementalHash128();
+    hash.add(42L);
+    Assert.assertThrows(IllegalStateException.class, () -> new HyperMinHash(14, 35).offer(hash));
+    Assert.assertThrows(IllegalStateException.class, () -> new BetaMinHash().offer(hash));
+    Assert.assertThrows(IllegalStateException.class, () -> new CountingSketch().offer(hash));
+  }
+
+  @Test
+  public void testHashedOffersAreUnsupportedByDefault() {
+    final Murmur3.IncrementalHash128 hash = new Murmur3.IncrementalHash128();
+    hash.start();
+    hash.add(42L);
+    final CountingSketch sketch = new CountingSketch();
+    Assert.assertThrows(UnsupportedOperationException.class, () -> sketch.offerHash(1L, 2L));
+    Assert.assertThrows(UnsupportedOperationException.class, () -> sketch.offer(hash));
+    Assert.assertTrue(sketch.offer(42L));
+    Assert.assertEquals(1, sketch.cardinality());
+  }
+
+  // implements only the abstract methods, like a sketch from outside this library
+  private static class CountingSketch implements IntersectionSketch<CountingSketch> {
+
+    private long count;
+
+    @Override
+    public long cardinality() {
+      return count;
+    }
+
+    @Override
+    public boolean offer(byte[] bytes) {
+      count++;
+      return true;
+    }
+
+    @Override
+    public CountingSketch deepCopy() {
+      final CountingSketch copy = new CountingSketch();
+      copy.count = count;
+      return copy;
+    }
+  }
+
+  @Test
+  public void testOffersWithXxh3Hasher() {
+    RandomTestRunner.runRandomizedTest(
+        10,
+        (random) -> {
+          CommonTests.testPrimitiveOffersMatchByteArrays(
+              () -> new HyperMinHash(14, 35, Xxh3Hasher128.getInstance()),
+              10_000,
+              random);
+          CommonTests.testOfferAllMatchesOffer(
+              () -> new HyperMinHash(14, 35, Xxh3Hasher128.getInstance()),
+              5_000,
+              random);
+        }
+    );
+  }
+
+  @Test
+  public void testDeepCopyKeepsHasher() {
+    final HyperMinHash sketch = new HyperMinHash(14, 35, Xxh3Hasher128.getInstance());
+    sketch.offer(42L);
+    final HyperMinHash copy = sketch.deepCopy();
+    assertEquals(sketch, copy);
+    assertEquals(Xxh3Hasher128.getInstance(), copy.hasher);
+  }
+
+  @Test
+  public void testCombiningDifferentHashersFails() {
+    final HyperMinHash murmur3 = new HyperMinHash(14, 35);
+    final HyperMinHash xxh3 = new HyperMinHash(14, 35, Xxh3Hasher128.getInstance());
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+
+    Assert.assertNotEquals(murmur3, xxh3);
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> combiner.union(Arrays.asList(murmur3, xxh3)));
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> combiner.similarity(Arrays.asList(murmur3, xxh3)));
+  }
+
   @Test
   public void testUnion() {
     final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
@@ -46,6 +226,204 @@ public class TestHyperMinHash {
     );
   }
 
+  @Test
+  public void testMergeInto() {
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> CommonTests.testMergeIntoMatchesOffers(
+            () -> new HyperMinHash(14, 35),
+            combiner,
+            combiner::mergeInto,
+            10,
+            10_000,
+            random)
+    );
+  }
+
+  @Test
+  public void testParallelUnion() {
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      RandomTestRunner.runRandomizedTest(
+          3,
+          (random) -> CommonTests.testParallelUnionMatchesUnion(
+              () -> new HyperMinHash(14, 35),
+              combiner,
+              (sketches, threshold) -> combiner.parallelUnion(sketches, pool, threshold),
+              50,
+              1_000,
+              random)
+      );
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelUnionOfLargeSketches() {
+    // few sketches with p >= 20 are unioned by register ranges rather than by a tree reduction
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      RandomTestRunner.runRandomizedTest(
+          1,
+          (random) -> CommonTests.testParallelUnionMatchesUnion(
+              () -> new HyperMinHash(20, 10),
+              combiner,
+              (sketches, threshold) -> combiner.parallelUnion(sketches, pool, threshold),
+              3,
+              200_000,
+              random)
+      );
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelUnionOfLargeSketchesCountsPositions() {
+    // the register ranges are merged by several threads, which all change the union's histogram
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    final ForkJoinPool pool = new ForkJoinPool(8);
+    try {
+      final List<HyperMinHash> sketches = new ArrayList<>();
+      for (int j = 0; j < 8; j++) {
+        final HyperMinHash sketch =
+            j == 0 ? new BitPackedHyperMinHash(20, 20) : new HyperMinHash(20, 20);
+        for (long i = 0; i < 300_000; i++) {
+          sketch.offer(j * 300_000 + i);
+        }
+        sketches.add(sketch);
+      }
+
+      for (List<HyperMinHash> ordered : Arrays.asList(sketches, sketches.subList(1, 8))) {
+        final HyperMinHash union =
+            combiner.parallelUnion(ordered, pool, ParallelUnion.DEFAULT_THRESHOLD);
+        Assert.assertEquals(
+            union.registers.countPositions(),
+            union.registers.getPositionHistogram());
+        Assert.assertEquals(combiner.union(ordered).cardinality(), union.cardinality());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testMergeIntoChecksSourcesFirst() {
+    final HyperMinHash target = new HyperMinHash(14, 35);
+    final HyperMinHash sameHasher = new HyperMinHash(14, 35);
+    sameHasher.offer(1L);
+    final HyperMinHash otherHasher = new HyperMinHash(14, 35, Xxh3Hasher128.getInstance());
+
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> HyperMinHashCombiner.getInstance().mergeInto(target, sameHasher, otherHasher));
+    assertEquals(new HyperMinHash(14, 35), target);
+  }
+
+  @Test
+  public void testUnionCardinality() {
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          CommonTests.testUnionCardinalityMatchesUnion(
+              () -> new HyperMinHash(14, 35),
+              combiner,
+              (sketches) -> combiner.unionCardinality(sketches.toArray(new HyperMinHash[0])),
+              5,
+              50_000,
+              random);
+          CommonTests.testUnionCardinalityMatchesUnion(
+              () -> new HyperMinHash(14, 35),
+              combiner,
+              (sketches) -> combiner.unionCardinality(sketches.toArray(new HyperMinHash[0])),
+              3,
+              100,
+              random);
+        }
+    );
+  }
+
+  @Test
+  public void testOverlap() {
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          CommonTests.testOverlapMatchesUnion(
+              () -> new HyperMinHash(14, 35),
+              combiner,
+              combiner::overlap,
+              4,
+              20_000,
+              random);
+          CommonTests.testOverlapMatchesUnion(
+              () -> new HyperMinHash(14, 35),
+              combiner,
+              (sketches) -> combiner.overlap(sketches.toArray(new HyperMinHash[0])),
+              3,
+              1_000,
+              random);
+        }
+    );
+  }
+
+  @Test
+  public void testOverlapOfNoSketchesFails() {
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> HyperMinHashCombiner.getInstance().overlap());
+  }
+
+  @Test
+  public void testPositionHistogramMatchesRecount() {
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          // r = 10 uses int registers, r = 35 uses long registers
+          for (int r : new int[]{10, 35}) {
+            final HyperMinHash sketch = new HyperMinHash(12, r);
+            final HyperMinHash other = new HyperMinHash(12, r);
+            assertPositionHistogramMatchesRecount(sketch);
+
+            for (int i = 0; i < 20_000; i++) {
+              sketch.offer(random.nextLong());
+              other.offer(random.nextLong());
+            }
+            assertPositionHistogramMatchesRecount(sketch);
+
+            final long[] values = new long[5_000];
+            for (int i = 0; i < values.length; i++) {
+              values[i] = random.nextLong();
+            }
+            sketch.offerAll(values);
+            assertPositionHistogramMatchesRecount(sketch);
+
+            assertPositionHistogramMatchesRecount(combiner.union(Arrays.asList(other, sketch)));
+            combiner.mergeInto(sketch, other);
+            assertPositionHistogramMatchesRecount(sketch);
+            assertPositionHistogramMatchesRecount(sketch.deepCopy());
+            assertPositionHistogramMatchesRecount(serde.fromBytes(serde.toBytes(sketch)));
+          }
+        }
+    );
+  }
+
+  private static void assertPositionHistogramMatchesRecount(HyperMinHash sketch) {
+    final RegisterHistogram recount = sketch.registers.countPositions();
+    Assert.assertEquals(recount, sketch.registers.getPositionHistogram());
+    Assert.assertEquals(recount.count(0), sketch.registers.getNumZeroRegisters());
+    Assert.assertEquals(
+        HmhCardinalityEstimator.estimateCardinality(recount, sketch.p),
+        sketch.cardinality());
+  }
+
   @Test
   public void testIntersectionCardinality() {
     final int overlapSlices = 20;
@@ -100,6 +478,75 @@ public class TestHyperMinHash {
     }
   }
 
+  @Test
+  public void testCollisionCorrectionWithSmallJaccard() {
+    // with r = 4, about 1% of the registers of sketches of disjoint sets of 50,000 elements match
+    final int numSharedElements = 500;
+    final int numElementsPerSketch = 50_000;
+    final double jaccard =
+        numSharedElements / (double) (2 * numElementsPerSketch - numSharedElements);
+    final int numTrials = 30;
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    final HyperMinHashCombiner correctingCombiner =
+        HyperMinHashCombiner.getCollisionCorrectingInstance();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          double similaritySum = 0;
+          double correctedSimilaritySum = 0;
+          for (int i = 0; i < numTrials; i++) {
+            final HyperMinHash left = new HyperMinHash(10, 4);
+            final HyperMinHash right = new HyperMinHash(10, 4);
+            for (int j = 0; j < numElementsPerSketch; j++) {
+              final long element = random.nextLong();
+              left.offer(element);
+              if (j < numSharedElements) {
+                right.offer(element);
+              } else {
+                right.offer(random.nextLong());
+              }
+            }
+
+            final List<HyperMinHash> sketches = Arrays.asList(left, right);
+            similaritySum += combiner.similarity(sketches);
+            correctedSimilaritySum += correctingCombiner.similarity(sketches);
+            // the union is the same either way
+            Assert.assertEquals(
+                combiner.overlap(sketches).unionCardinality(),
+                correctingCombiner.overlap(sketches).unionCardinality());
+          }
+
+          final double meanSimilarity = similaritySum / numTrials;
+          final double meanCorrectedSimilarity = correctedSimilaritySum / numTrials;
+          Assert.assertTrue(meanSimilarity - jaccard > 0.007);
+          Assert.assertEquals(jaccard, meanCorrectedSimilarity, 0.004);
+        }
+    );
+  }
+
+  @Test
+  public void testCollisionCorrectionOfMoreThanTwoSketches() {
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    final HyperMinHashCombiner correctingCombiner =
+        HyperMinHashCombiner.getCollisionCorrectingInstance();
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          final List<HyperMinHash> sketches = new ArrayList<>();
+          for (int i = 0; i < 3; i++) {
+            final HyperMinHash sketch = new HyperMinHash(10, 4);
+            for (int j = 0; j < 10_000; j++) {
+              sketch.offer(random.nextInt(20_000));
+            }
+            sketches.add(sketch);
+          }
+
+          // collisions of more than two sketches aren't corrected
+          Assert.assertEquals(combiner.overlap(sketches), correctingCombiner.overlap(sketches));
+        }
+    );
+  }
+
   @Test
   public void testMultiwayIntersection() {
     final int initialIntersectionSize = 3000;
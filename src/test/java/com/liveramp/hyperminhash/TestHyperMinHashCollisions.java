@@ -0,0 +1,67 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHyperMinHashCollisions {
+
+  @Test
+  public void testApproximationMatchesExactSum() {
+    RandomTestRunner.runRandomizedTest(
+        3,
+        (random) -> {
+          for (int i = 0; i < 10; i++) {
+            final int p = 4 + random.nextInt(17);
+            // the exact sum takes O(2^(q + r)), which is too slow beyond r = 10
+            final int r = 1 + random.nextInt(10);
+            final double n = randomCardinality(random);
+            final double m = randomCardinality(random);
+            final double exact = ExactCollisions.expectedCollisions(
+                p,
+                HyperMinHashCollisions.Q,
+                r,
+                n,
+                m);
+            final double tolerance = Math.max(
+                HyperMinHashCollisions.ABSOLUTE_TOLERANCE,
+                HyperMinHashCollisions.RELATIVE_TOLERANCE * exact);
+            Assert.assertEquals(
+                "p=" + p + ", r=" + r + ", n=" + n + ", m=" + m,
+                exact,
+                HyperMinHashCollisions.approxExpectedCollisions(p, r, n, m),
+                tolerance);
+          }
+        }
+    );
+  }
+
+  @Test
+  public void testApproximationIsSymmetric() {
+    Assert.assertEquals(
+        HyperMinHashCollisions.approxExpectedCollisions(14, 4, 123_456, 7_890_123),
+        HyperMinHashCollisions.approxExpectedCollisions(14, 4, 7_890_123, 123_456),
+        1e-12);
+  }
+
+  @Test
+  public void testNoCollisionsWithEmptySets() {
+    Assert.assertEquals(0, HyperMinHashCollisions.approxExpectedCollisions(14, 4, 0, 1_000), 0);
+    Assert.assertEquals(0, HyperMinHashCollisions.approxExpectedCollisions(14, 4, 1_000, 0), 0);
+  }
+
+  @Test
+  public void testLargeR() {
+    // exact sums are out of reach here, but collisions should keep halving as r grows
+    final double collisions = HyperMinHashCollisions.approxExpectedCollisions(14, 40, 1e8, 1e8);
+    Assert.assertEquals(
+        collisions / 2,
+        HyperMinHashCollisions.approxExpectedCollisions(14, 41, 1e8, 1e8),
+        collisions * 1e-6);
+  }
+
+  private static double randomCardinality(Random random) {
+    // spread evenly over the orders of magnitude from 10 to 10^10
+    return Math.floor(Math.pow(10, 1 + random.nextDouble() * 9));
+  }
+}
@@ -3,6 +3,16 @@ package com.liveramp.hyperminhash;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 public class TestHyperMinHashSerDe {
@@ -55,6 +65,200 @@ public class TestHyperMinHashSerDe {
 
   }
 
+  @Test
+  public void testRoundtripWithXxh3Hasher() {
+    HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    RandomTestRunner.runRandomizedTest(100, rng -> {
+      HyperMinHash sketch = new HyperMinHash(14, 10, Xxh3Hasher128.getInstance());
+      for (int j = 0; j < 1000; j++) {
+        sketch.offer(randomByteArrayOfLength(rng, 50));
+      }
+
+      byte[] bytes = serde.toBytes(sketch);
+      Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+      Assert.assertEquals(HyperMinHash.VERSION_WITH_HASHER, bytes[1]);
+      HyperMinHash roundtripped = serde.fromBytes(bytes);
+      Assert.assertEquals(sketch, roundtripped);
+      Assert.assertSame(Xxh3Hasher128.getInstance(), roundtripped.hasher);
+    });
+  }
+
+  @Test
+  public void testMurmur3SketchesKeepVersion1Format() {
+    // sketches with the default hasher must stay readable by versions without configurable hashers
+    HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    HyperMinHash sketch = new HyperMinHash(14, 10);
+    sketch.offer(42L);
+
+    byte[] bytes = serde.toBytes(sketch);
+    Assert.assertEquals(HyperMinHash.VERSION, bytes[1]);
+    Assert.assertSame(Murmur3Hasher128.getInstance(), serde.fromBytes(bytes).hasher);
+  }
+
+  @Test
+  public void testOtherHashersCantBeSerialized() {
+    final Hasher128 hasher = (data, offset, length, out, outOffset) ->
+        Murmur3Hasher128.getInstance().hash128(data, offset, length, out, outOffset);
+    HyperMinHash sketch = new HyperMinHash(14, 10, hasher);
+    sketch.offer(42L);
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> new HyperMinHashSerDe().toBytes(sketch));
+  }
+
+  @Test
+  public void testViewMatchesDeserializedSketch() {
+    HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    RandomTestRunner.runRandomizedTest(200, rng -> {
+      int p = Math.max(rng.nextInt(17), 4);
+      int r = Math.max(rng.nextInt(57), 4);
+      HyperMinHash first = new HyperMinHash(p, r);
+      HyperMinHash second = new HyperMinHash(p, r);
+      for (int j = 0; j < 1000; j++) {
+        first.offer(rng.nextLong());
+        second.offer(rng.nextLong());
+      }
+
+      // both sketches in one buffer, which is little-endian and not at position 0
+      byte[] firstBytes = serde.toBytes(first);
+      byte[] secondBytes = serde.toBytes(second);
+      ByteBuffer buffer = ByteBuffer.allocate(3 + firstBytes.length + secondBytes.length)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      buffer.position(3);
+      buffer.put(firstBytes).put(secondBytes);
+      buffer.position(3);
+
+      HyperMinHash firstView = serde.view(buffer);
+      Assert.assertEquals(3, buffer.position());
+      buffer.position(3 + firstBytes.length);
+      HyperMinHash secondView = serde.view(buffer);
+
+      CommonTests.assertSameRegisters(first, firstView);
+      CommonTests.assertSameRegisters(second, secondView);
+      Assert.assertEquals(first.cardinality(), firstView.cardinality());
+      Assert.assertArrayEquals(firstBytes, serde.toBytes(firstView));
+      Assert.assertEquals(serde.sizeInBytes(first), serde.sizeInBytes(firstView));
+
+      HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+      List<HyperMinHash> sketches = Arrays.asList(first, second);
+      List<HyperMinHash> views = Arrays.asList(firstView, secondView);
+      HyperMinHash union = combiner.union(views);
+      Assert.assertEquals(combiner.union(sketches), union);
+      Assert.assertEquals(combiner.unionCardinality(sketches), combiner.unionCardinality(views));
+      Assert.assertEquals(combiner.overlap(sketches), combiner.overlap(views));
+
+      // copies can be updated, but views can't
+      HyperMinHash copy = firstView.deepCopy();
+      Assert.assertEquals(first, copy);
+      copy.offer(-1L);
+      Assert.assertThrows(UnsupportedOperationException.class, () -> firstView.offer(-1L));
+      Assert.assertThrows(
+          UnsupportedOperationException.class,
+          () -> combiner.mergeInto(firstView, Arrays.asList(second)));
+    });
+  }
+
+  @Test
+  public void testViewOfMappedFile() throws IOException {
+    HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    HyperMinHash dense = new HyperMinHash(14, 10);
+    SparseHyperMinHash sparse = new SparseHyperMinHash(14, 35);
+    for (long j = 0; j < 10_000; j++) {
+      dense.offer(j);
+      if (j < 100) {
+        sparse.offer(j);
+      }
+    }
+    byte[] denseBytes = serde.toBytes(dense);
+    byte[] sparseBytes = serde.toBytes(sparse);
+
+    File file = File.createTempFile("sketches", ".bin");
+    // some platforms can't delete a file while it's mapped
+    file.deleteOnExit();
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.write(denseBytes);
+      randomAccessFile.write(sparseBytes);
+      MappedByteBuffer buffer = randomAccessFile.getChannel()
+          .map(FileChannel.MapMode.READ_ONLY, 0, denseBytes.length + sparseBytes.length);
+
+      HyperMinHash denseView = serde.view(buffer);
+      Assert.assertTrue(denseView.registers instanceof ByteBufferRegisters);
+      CommonTests.assertSameRegisters(dense, denseView);
+      Assert.assertEquals(dense.cardinality(), denseView.cardinality());
+
+      // sparse sketches are read into memory
+      buffer.position(denseBytes.length);
+      Assert.assertEquals(sparse, serde.view(buffer));
+    }
+  }
+
+  @Test
+  public void testViewRejectsTruncatedRegisters() {
+    HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    byte[] bytes = serde.toBytes(new HyperMinHash(14, 10));
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> serde.view(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1))));
+  }
+
+  @Test
+  public void testRejectsTooManySparseRegisters() {
+    HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    SparseHyperMinHash sparse = new SparseHyperMinHash(14, 10);
+    for (long j = 0; j < 100; j++) {
+      sparse.offer(j);
+    }
+    byte[] bytes = serde.toBytes(sparse);
+    // the number of sparse registers comes right before an index and a register for each of them
+    int numSparseRegistersOffset =
+        bytes.length - ((SparseRegisters) sparse.registers).getNumSparseRegisters() * 8 - 4;
+    Assert.assertEquals(
+        ((SparseRegisters) sparse.registers).getNumSparseRegisters(),
+        ByteBuffer.wrap(bytes).getInt(numSparseRegistersOffset));
+
+    for (int numSparseRegisters : new int[]{
+        SparseRegisters.maxSparseRegisters(14) + 1, 1 << 14, Integer.MAX_VALUE, -1}) {
+      ByteBuffer.wrap(bytes).putInt(numSparseRegistersOffset, numSparseRegisters);
+      Assert.assertThrows(IllegalArgumentException.class, () -> serde.fromBytes(bytes));
+      Assert.assertThrows(IllegalArgumentException.class, () -> serde.view(ByteBuffer.wrap(bytes)));
+    }
+  }
+
+  @Test
+  public void testRejectsInvalidSparseRegisters() {
+    HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    SparseHyperMinHash sparse = new SparseHyperMinHash(14, 10);
+    for (long j = 0; j < 100; j++) {
+      sparse.offer(j);
+    }
+    byte[] valid = serde.toBytes(sparse);
+    // an index and a register for each sparse register, with the first two at these offsets
+    int first = valid.length - ((SparseRegisters) sparse.registers).getNumSparseRegisters() * 8;
+    int second = first + 8;
+
+    List<byte[]> invalid = new ArrayList<>();
+    for (int index : new int[]{-1, 1 << 14, Integer.MAX_VALUE}) {
+      invalid.add(ByteBuffer.wrap(valid.clone()).putInt(first, index).array());
+    }
+    int firstIndex = ByteBuffer.wrap(valid).getInt(first);
+    int secondIndex = ByteBuffer.wrap(valid).getInt(second);
+    // duplicate
+    invalid.add(ByteBuffer.wrap(valid.clone()).putInt(second, firstIndex).array());
+    // out of order
+    invalid.add(ByteBuffer.wrap(valid.clone())
+        .putInt(first, secondIndex)
+        .putInt(second, firstIndex)
+        .array());
+    // not set
+    invalid.add(ByteBuffer.wrap(valid.clone()).putInt(first + 4, 0).array());
+
+    for (byte[] bytes : invalid) {
+      Assert.assertThrows(IllegalArgumentException.class, () -> serde.fromBytes(bytes));
+      Assert.assertThrows(IllegalArgumentException.class, () -> serde.view(ByteBuffer.wrap(bytes)));
+    }
+    Assert.assertEquals(sparse, serde.fromBytes(valid));
+  }
+
   private byte[] randomByteArrayOfLength(Random rng, int n) {
     byte[] bytes = new byte[n];
     rng.nextBytes(bytes);
@@ -0,0 +1,285 @@
+package com.liveramp.hyperminhash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMurmur3 {
+
+  @Test
+  public void testHash128MatchesLegacyImplementation() {
+    RandomTestRunner.runRandomizedTest(10, random -> {
+      for (int i = 0; i < 100_000; i++) {
+        // mostly short keys, which is what sketches are usually offered, but some with many blocks
+        final int length = random.nextInt(8) == 0 ? random.nextInt(4096) : random.nextInt(64);
+        final int offset = random.nextInt(16);
+        final byte[] data = new byte[offset + length + random.nextInt(16)];
+        random.nextBytes(data);
+        final int seed = random.nextBoolean() ? Murmur3.DEFAULT_SEED : random.nextInt();
+
+        final long[] expected = legacyHash128(data, offset, length, seed);
+        Assert.assertArrayEquals(expected, Murmur3.hash128(data, offset, length, seed));
+
+        final long[] out = new long[4];
+        final int outOffset = random.nextInt(3);
+        Murmur3.hash128(data, offset, length, seed, out, outOffset);
+        Assert.assertArrayEquals(expected, Arrays.copyOfRange(out, outOffset, outOffset + 2));
+      }
+    });
+  }
+
+  @Test
+  public void testByteBufferHash128MatchesLegacyImplementation() {
+    RandomTestRunner.runRandomizedTest(10, random -> {
+      for (int i = 0; i < 10_000; i++) {
+        final int length = random.nextInt(256);
+        final int offset = random.nextInt(16);
+        final byte[] data = new byte[offset + length];
+        random.nextBytes(data);
+        final long[] expected = legacyHash128(data, offset, length, Murmur3.DEFAULT_SEED);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(data.length)
+            .order(random.nextBoolean() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        direct.put(data);
+        for (ByteBuffer buffer : Arrays.asList(
+            ByteBuffer.wrap(data),
+            ByteBuffer.wrap(data).asReadOnlyBuffer(),
+            direct,
+            direct.asReadOnlyBuffer())) {
+          final long[] out = new long[2];
+          Murmur3.hash128(buffer, offset, length, Murmur3.DEFAULT_SEED, out, 0);
+          Assert.assertArrayEquals(expected, out);
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testPrimitiveHash128MatchesLegacyImplementation() {
+    final Random random = new Random();
+    final long[] out = new long[2];
+    for (int i = 0; i < 100_000; i++) {
+      final long longValue = random.nextLong();
+      Murmur3.hash128(longValue, out);
+      Assert.assertArrayEquals(legacyHash128(CommonTests.longToByteArray(longValue)), out);
+
+      final int intValue = random.nextInt();
+      Murmur3.hash128(intValue, out);
+      Assert.assertArrayEquals(legacyHash128(CommonTests.intToByteArray(intValue)), out);
+    }
+  }
+
+  @Test
+  public void testIncrementalHash128MatchesHash128() {
+    final Murmur3.IncrementalHash128 incremental = new Murmur3.IncrementalHash128();
+    RandomTestRunner.runRandomizedTest(10, random -> {
+      for (int i = 0; i < 10_000; i++) {
+        final int seed = random.nextBoolean() ? Murmur3.DEFAULT_SEED : random.nextInt();
+        if (seed == Murmur3.DEFAULT_SEED) {
+          incremental.start();
+        } else {
+          incremental.start(seed);
+        }
+
+        final ByteBuffer concatenation = ByteBuffer.allocate(4096);
+        final int numSegments = random.nextInt(8);
+        for (int j = 0; j < numSegments; j++) {
+          addRandomSegment(random, incremental, concatenation);
+        }
+
+        final long[] expected = Murmur3.hash128(
+            concatenation.array(),
+            0,
+            concatenation.position(),
+            seed);
+        Assert.assertArrayEquals(expected, incremental.end());
+
+        // ending doesn't change the state, so the hash can be extended
+        addRandomSegment(random, incremental, concatenation);
+        final long[] out = new long[3];
+        incremental.end(out, 1);
+        Assert.assertArrayEquals(
+            Murmur3.hash128(concatenation.array(), 0, concatenation.position(), seed),
+            Arrays.copyOfRange(out, 1, 3));
+      }
+    });
+  }
+
+  // adds a random segment to incremental, and appends its bytes to concatenation
+  private static void addRandomSegment(
+      Random random,
+      Murmur3.IncrementalHash128 incremental,
+      ByteBuffer concatenation) {
+    final byte[] bytes = new byte[random.nextInt(40)];
+    random.nextBytes(bytes);
+
+    switch (random.nextInt(5)) {
+      case 0:
+        final long value = random.nextLong();
+        incremental.add(value);
+        concatenation.putLong(value);
+        return;
+      case 1:
+        incremental.add(bytes);
+        break;
+      case 2:
+        final int offset = random.nextInt(bytes.length + 1);
+        final int length = random.nextInt(bytes.length - offset + 1);
+        incremental.add(bytes, offset, length);
+        concatenation.put(bytes, offset, length);
+        return;
+      case 3:
+        // a slice in the middle of a heap buffer
+        final ByteBuffer heap = ByteBuffer.allocate(bytes.length + 6);
+        heap.position(3);
+        heap.put(bytes);
+        heap.position(3).limit(3 + bytes.length);
+        incremental.add(heap.slice());
+        break;
+      default:
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3)
+            .order(random.nextBoolean() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        direct.position(3);
+        direct.put(bytes);
+        direct.position(3);
+        incremental.add(random.nextBoolean() ? direct : direct.asReadOnlyBuffer());
+        Assert.assertEquals(3, direct.position());
+        break;
+    }
+    concatenation.put(bytes);
+  }
+
+  private static long[] legacyHash128(byte[] data) {
+    return legacyHash128(data, 0, data.length, Murmur3.DEFAULT_SEED);
+  }
+
+  // Murmur3.hash128 as it was before blocks were read a word at a time. Kept as the reference the
+  // current implementation must match bit for bit.
+  private static long[] legacyHash128(byte[] data, int offset, int length, int seed) {
+    final long c1 = 0x87c37b91114253d5L;
+    final long c2 = 0x4cf5ad432745937fL;
+    final int r1 = 31;
+    final int r2 = 27;
+    final int r3 = 33;
+    final int m = 5;
+    final int n1 = 0x52dce729;
+    final int n2 = 0x38495ab5;
+
+    long h1 = seed;
+    long h2 = seed;
+    final int nblocks = length >> 4;
+
+    // body
+    for (int i = 0; i < nblocks; i++) {
+      final int i16 = i << 4;
+      long k1 = ((long) data[offset + i16] & 0xff)
+          | (((long) data[offset + i16 + 1] & 0xff) << 8)
+          | (((long) data[offset + i16 + 2] & 0xff) << 16)
+          | (((long) data[offset + i16 + 3] & 0xff) << 24)
+          | (((long) data[offset + i16 + 4] & 0xff) << 32)
+          | (((long) data[offset + i16 + 5] & 0xff) << 40)
+          | (((long) data[offset + i16 + 6] & 0xff) << 48)
+          | (((long) data[offset + i16 + 7] & 0xff) << 56);
+
+      long k2 = ((long) data[offset + i16 + 8] & 0xff)
+          | (((long) data[offset + i16 + 9] & 0xff) << 8)
+          | (((long) data[offset + i16 + 10] & 0xff) << 16)
+          | (((long) data[offset + i16 + 11] & 0xff) << 24)
+          | (((long) data[offset + i16 + 12] & 0xff) << 32)
+          | (((long) data[offset + i16 + 13] & 0xff) << 40)
+          | (((long) data[offset + i16 + 14] & 0xff) << 48)
+          | (((long) data[offset + i16 + 15] & 0xff) << 56);
+
+      // mix functions for k1
+      k1 *= c1;
+      k1 = Long.rotateLeft(k1, r1);
+      k1 *= c2;
+      h1 ^= k1;
+      h1 = Long.rotateLeft(h1, r2);
+      h1 += h2;
+      h1 = h1 * m + n1;
+
+      // mix functions for k2
+      k2 *= c2;
+      k2 = Long.rotateLeft(k2, r3);
+      k2 *= c1;
+      h2 ^= k2;
+      h2 = Long.rotateLeft(h2, r1);
+      h2 += h1;
+      h2 = h2 * m + n2;
+    }
+
+    // tail
+    long k1 = 0;
+    long k2 = 0;
+    int tailStart = nblocks << 4;
+    switch (length - tailStart) {
+      case 15:
+        k2 ^= (long) (data[offset + tailStart + 14] & 0xff) << 48;
+      case 14:
+        k2 ^= (long) (data[offset + tailStart + 13] & 0xff) << 40;
+      case 13:
+        k2 ^= (long) (data[offset + tailStart + 12] & 0xff) << 32;
+      case 12:
+        k2 ^= (long) (data[offset + tailStart + 11] & 0xff) << 24;
+      case 11:
+        k2 ^= (long) (data[offset + tailStart + 10] & 0xff) << 16;
+      case 10:
+        k2 ^= (long) (data[offset + tailStart + 9] & 0xff) << 8;
+      case 9:
+        k2 ^= (long) (data[offset + tailStart + 8] & 0xff);
+        k2 *= c2;
+        k2 = Long.rotateLeft(k2, r3);
+        k2 *= c1;
+        h2 ^= k2;
+
+      case 8:
+        k1 ^= (long) (data[offset + tailStart + 7] & 0xff) << 56;
+      case 7:
+        k1 ^= (long) (data[offset + tailStart + 6] & 0xff) << 48;
+      case 6:
+        k1 ^= (long) (data[offset + tailStart + 5] & 0xff) << 40;
+      case 5:
+        k1 ^= (long) (data[offset + tailStart + 4] & 0xff) << 32;
+      case 4:
+        k1 ^= (long) (data[offset + tailStart + 3] & 0xff) << 24;
+      case 3:
+        k1 ^= (long) (data[offset + tailStart + 2] & 0xff) << 16;
+      case 2:
+        k1 ^= (long) (data[offset + tailStart + 1] & 0xff) << 8;
+      case 1:
+        k1 ^= (long) (data[offset + tailStart] & 0xff);
+        k1 *= c1;
+        k1 = Long.rotateLeft(k1, r1);
+        k1 *= c2;
+        h1 ^= k1;
+    }
+
+    // finalization
+    h1 ^= length;
+    h2 ^= length;
+
+    h1 += h2;
+    h2 += h1;
+
+    h1 = legacyFmix64(h1);
+    h2 = legacyFmix64(h2);
+
+    h1 += h2;
+    h2 += h1;
+
+    return new long[]{h1, h2};
+  }
+
+  private static long legacyFmix64(long h) {
+    h ^= (h >>> 33);
+    h *= 0xff51afd7ed558ccdL;
+    h ^= (h >>> 33);
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= (h >>> 33);
+    return h;
+  }
+}
@@ -0,0 +1,195 @@
+package com.liveramp.hyperminhash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+public class TestOffHeapHyperMinHash {
+
+  @Test
+  public void testOffersMatchHyperMinHash() {
+    RandomTestRunner.runRandomizedTest(20, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      // r = 10 is held in ints, r = 35 in longs
+      final int r = rng.nextBoolean() ? 10 : 35;
+      CommonTests.testOffersMatchHyperMinHash(() -> new OffHeapHyperMinHash(p, r), 1000, rng)
+          .close();
+    });
+  }
+
+  @Test
+  public void testSerialization() {
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    RandomTestRunner.runRandomizedTest(50, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = 2 + rng.nextInt(56);
+      final HyperMinHash expected = new HyperMinHash(p, r, Xxh3Hasher128.getInstance());
+      try (OffHeapHyperMinHash sketch =
+          new OffHeapHyperMinHash(p, r, Xxh3Hasher128.getInstance())) {
+        for (int i = 0; i < 1000; i++) {
+          final long value = rng.nextLong();
+          expected.offer(value);
+          sketch.offer(value);
+        }
+
+        // it's written like a HyperMinHash, and read back as one
+        final byte[] bytes = serde.toBytes(sketch);
+        Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+        Assert.assertArrayEquals(serde.toBytes(expected), bytes);
+        final HyperMinHash deserialized = serde.fromBytes(bytes);
+        Assert.assertEquals(expected, deserialized);
+
+        try (OffHeapHyperMinHash copy = OffHeapHyperMinHash.copyOf(deserialized)) {
+          Assert.assertEquals(sketch, copy);
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testCombinersMatchHyperMinHash() {
+    RandomTestRunner.runRandomizedTest(20, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = rng.nextBoolean() ? 10 : 35;
+      final List<HyperMinHash> offHeap = new ArrayList<>();
+      final List<HyperMinHash> onHeap = new ArrayList<>();
+      final List<HyperMinHash> mixed = new ArrayList<>();
+      for (int j = 0; j < 5; j++) {
+        final OffHeapHyperMinHash offHeapSketch = new OffHeapHyperMinHash(p, r);
+        final HyperMinHash onHeapSketch = new HyperMinHash(p, r);
+        final int numValues = rng.nextInt(5000);
+        for (int i = 0; i < numValues; i++) {
+          final long value = rng.nextLong();
+          offHeapSketch.offer(value);
+          onHeapSketch.offer(value);
+        }
+        offHeap.add(offHeapSketch);
+        onHeap.add(onHeapSketch);
+        mixed.add(j % 2 == 0 ? offHeapSketch : onHeapSketch);
+      }
+
+      final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+      final HyperMinHash expected = combiner.union(onHeap);
+      for (List<HyperMinHash> sketches : Arrays.asList(offHeap, mixed)) {
+        final HyperMinHash union = combiner.union(sketches);
+        Assert.assertTrue(union instanceof OffHeapHyperMinHash);
+        CommonTests.assertSameRegisters(expected, union);
+        CommonTests.assertSameRegisters(expected, combiner.parallelUnion(sketches));
+        Assert.assertEquals(expected.cardinality(), combiner.unionCardinality(sketches));
+        Assert.assertEquals(combiner.overlap(onHeap), combiner.overlap(sketches));
+
+        final HyperMinHash target = new OffHeapHyperMinHash(p, r);
+        combiner.mergeInto(target, sketches);
+        CommonTests.assertMatchesHyperMinHash(expected, target);
+        ((OffHeapHyperMinHash) union).close();
+        ((OffHeapHyperMinHash) target).close();
+      }
+      for (HyperMinHash sketch : offHeap) {
+        ((OffHeapHyperMinHash) sketch).close();
+      }
+    });
+  }
+
+  @Test
+  public void testParallelUnionSplitsRegisters() {
+    // p = 20 is large enough for the registers to be merged range by range
+    final HyperMinHash expected = new HyperMinHash(20, 10);
+    final List<HyperMinHash> sketches = new ArrayList<>();
+    for (int j = 0; j < 4; j++) {
+      final OffHeapHyperMinHash sketch = new OffHeapHyperMinHash(20, 10);
+      for (long i = 0; i < 1000; i++) {
+        sketch.offer(j * 1000 + i);
+        expected.offer(j * 1000 + i);
+      }
+      sketches.add(sketch);
+    }
+
+    final HyperMinHash union = HyperMinHashCombiner.getInstance()
+        .parallelUnion(sketches, new ForkJoinPool(4), ParallelUnion.DEFAULT_THRESHOLD);
+    CommonTests.assertSameRegisters(expected, union);
+  }
+
+  @Test
+  public void testDeepCopy() {
+    try (OffHeapHyperMinHash sketch = new OffHeapHyperMinHash(14, 35)) {
+      for (long i = 0; i < 10_000; i++) {
+        sketch.offer(i);
+      }
+
+      try (OffHeapHyperMinHash copy = sketch.deepCopy()) {
+        Assert.assertEquals(sketch, copy);
+        Assert.assertEquals(sketch.hashCode(), copy.hashCode());
+        copy.offer(-1L);
+        copy.offer(-2L);
+        Assert.assertNotEquals(sketch, copy);
+      }
+      // the copy has its own memory
+      Assert.assertEquals(10_000, sketch.cardinality(), 200);
+    }
+  }
+
+  @Test
+  public void testClose() {
+    final OffHeapHyperMinHash sketch = new OffHeapHyperMinHash(14, 10);
+    sketch.offer(1L);
+    Assert.assertFalse(sketch.isClosed());
+    sketch.close();
+    Assert.assertTrue(sketch.isClosed());
+    // closing again does nothing
+    sketch.close();
+    for (ThrowingRunnable use : Arrays.<ThrowingRunnable>asList(
+        () -> sketch.offer(2L),
+        () -> sketch.offerAll(new long[]{2L, 3L}),
+        sketch::cardinality,
+        sketch::deepCopy,
+        () -> sketch.registers.getPositionHistogram(),
+        () -> sketch.registers.getNumZeroRegisters(),
+        () -> sketch.registers.getRegisterAtIndex(0),
+        () -> HyperMinHashCombiner.getInstance().union(Arrays.asList(sketch, sketch)),
+        () -> HyperMinHashCombiner.getInstance().mergeInto(new HyperMinHash(14, 10), sketch))) {
+      final IllegalStateException e = Assert.assertThrows(IllegalStateException.class, use);
+      Assert.assertEquals("sketch is closed", e.getMessage());
+    }
+    Assert.assertTrue(sketch.toString().contains("released"));
+  }
+
+  @Test
+  public void testParallelUnionClosesIntermediateUnions() {
+    final List<HyperMinHash> sketches = new ArrayList<>();
+    for (int j = 0; j < 8; j++) {
+      final OffHeapHyperMinHash sketch = new OffHeapHyperMinHash(10, 10);
+      sketch.offer(j);
+      sketches.add(sketch);
+    }
+
+    final List<OffHeapHyperMinHash> copies = new ArrayList<>();
+    final HyperMinHash union = ParallelUnion.treeUnion(
+        sketches,
+        new ForkJoinPool(2),
+        2,
+        sketch -> {
+          final OffHeapHyperMinHash copy = ((OffHeapHyperMinHash) sketch).deepCopy();
+          synchronized (copies) {
+            copies.add(copy);
+          }
+          return copy;
+        },
+        (left, right) -> left.registers.mergeFrom(right.registers),
+        discarded -> ((OffHeapHyperMinHash) discarded).close());
+    CommonTests.assertSameRegisters(HyperMinHashCombiner.getInstance().union(sketches), union);
+    Assert.assertEquals(4, copies.size());
+    for (OffHeapHyperMinHash copy : copies) {
+      Assert.assertEquals(copy != union, copy.isClosed());
+    }
+  }
+
+  @Test
+  public void testRejectsRegistersLargerThanABuffer() {
+    Assert.assertThrows(IllegalArgumentException.class, () -> new OffHeapHyperMinHash(28, 35));
+    Assert.assertThrows(IllegalArgumentException.class, () -> new OffHeapHyperMinHash(29, 10));
+  }
+}
@@ -0,0 +1,144 @@
+package com.liveramp.hyperminhash;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSmallRegisters {
+
+  @Test
+  public void testNarrowestRegistersAreChosen() {
+    Assert.assertTrue(Registers.newRegisters(10, 2) instanceof ByteRegisters);
+    Assert.assertTrue(Registers.newRegisters(10, 3) instanceof ShortRegisters);
+    Assert.assertTrue(Registers.newRegisters(10, 10) instanceof ShortRegisters);
+    Assert.assertTrue(Registers.newRegisters(10, 11) instanceof IntRegisters);
+    Assert.assertTrue(Registers.newRegisters(10, 25) instanceof IntRegisters);
+    Assert.assertTrue(Registers.newRegisters(10, 26) instanceof LongRegisters);
+
+    Assert.assertThrows(IllegalArgumentException.class, () -> new ShortRegisters(10, 11));
+    Assert.assertThrows(IllegalArgumentException.class, () -> new ByteRegisters(10, 3));
+  }
+
+  @Test
+  public void testOffersMatchIntRegisters() {
+    RandomTestRunner.runRandomizedTest(50, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = 2 + rng.nextInt(9);
+      // a HyperMinHash with these parameters has narrow registers
+      CommonTests.testOffersMatchHyperMinHash(() -> intSketch(p, r), 2000, rng);
+    });
+  }
+
+  @Test
+  public void testSerialization() {
+    RandomTestRunner.runRandomizedTest(50, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = 2 + rng.nextInt(9);
+      final HyperMinHash sketch = new HyperMinHash(p, r);
+      final HyperMinHash intSketch = intSketch(p, r);
+      for (int i = 0; i < 1000; i++) {
+        final long value = rng.nextLong();
+        sketch.offer(value);
+        intSketch.offer(value);
+      }
+
+      for (HyperMinHashSerDe serde : Arrays.asList(
+          new HyperMinHashSerDe(), new HyperMinHashSerDe(true))) {
+        final byte[] bytes = serde.toBytes(sketch);
+        Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+        Assert.assertEquals(sketch, serde.fromBytes(bytes));
+        final HyperMinHash view = serde.view(ByteBuffer.wrap(bytes));
+        CommonTests.assertSameRegisters(sketch, view);
+        Assert.assertEquals(sketch, view.deepCopy());
+        Assert.assertArrayEquals(bytes, serde.toBytes(view));
+
+        // concurrent sketches are written in the same layout
+        final ConcurrentHyperMinHash concurrentSketch = new ConcurrentHyperMinHash(p, r);
+        HyperMinHashCombiner.getInstance().mergeInto(concurrentSketch, sketch);
+        Assert.assertArrayEquals(bytes, serde.toBytes(concurrentSketch));
+      }
+
+      // by default, they're written like int registers, so that older versions can read them
+      final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+      Assert.assertArrayEquals(serde.toBytes(intSketch), serde.toBytes(sketch));
+    });
+  }
+
+  @Test
+  public void testHalvesSizeOfIntRegisters() {
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe(true);
+    Assert.assertEquals(
+        (1 << 14) * Short.BYTES,
+        serde.sizeInBytes(intSketch(14, 10)) - serde.sizeInBytes(new HyperMinHash(14, 10)));
+    Assert.assertEquals(
+        (1 << 14) * (Integer.BYTES - Byte.BYTES),
+        serde.sizeInBytes(intSketch(14, 2)) - serde.sizeInBytes(new HyperMinHash(14, 2)));
+  }
+
+  @Test
+  public void testReadsIntRegisters() {
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe(true);
+    RandomTestRunner.runRandomizedTest(20, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = 2 + rng.nextInt(9);
+      final HyperMinHash intSketch = intSketch(p, r);
+      final HyperMinHash sketch = new HyperMinHash(p, r);
+      for (int i = 0; i < 1000; i++) {
+        final long value = rng.nextLong();
+        intSketch.offer(value);
+        sketch.offer(value);
+      }
+
+      // as written without narrow registers
+      final byte[] bytes = new HyperMinHashSerDe().toBytes(intSketch);
+      Assert.assertEquals(sketch, serde.fromBytes(bytes));
+      Assert.assertEquals(sketch, serde.view(ByteBuffer.wrap(bytes)).deepCopy());
+      Assert.assertArrayEquals(
+          serde.toBytes(sketch),
+          serde.toBytes(serde.view(ByteBuffer.wrap(bytes))));
+    });
+  }
+
+  @Test
+  public void testCombinersMatchIntRegisters() {
+    RandomTestRunner.runRandomizedTest(20, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = 2 + rng.nextInt(9);
+      final List<HyperMinHash> small = new ArrayList<>();
+      final List<HyperMinHash> ints = new ArrayList<>();
+      final List<HyperMinHash> mixed = new ArrayList<>();
+      for (int j = 0; j < 5; j++) {
+        final HyperMinHash smallSketch = new HyperMinHash(p, r);
+        final HyperMinHash intSketch = intSketch(p, r);
+        final int numValues = rng.nextInt(5000);
+        for (int i = 0; i < numValues; i++) {
+          final long value = rng.nextLong();
+          smallSketch.offer(value);
+          intSketch.offer(value);
+        }
+        small.add(smallSketch);
+        ints.add(intSketch);
+        mixed.add(j % 2 == 0 ? smallSketch : intSketch);
+      }
+
+      final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+      final HyperMinHash expected = combiner.union(ints);
+      for (List<HyperMinHash> sketches : Arrays.asList(small, mixed)) {
+        CommonTests.assertSameRegisters(expected, combiner.union(sketches));
+        Assert.assertEquals(expected.cardinality(), combiner.unionCardinality(sketches));
+        Assert.assertEquals(combiner.overlap(ints), combiner.overlap(sketches));
+
+        final HyperMinHash target = new HyperMinHash(p, r);
+        combiner.mergeInto(target, sketches);
+        CommonTests.assertMatchesHyperMinHash(expected, target);
+      }
+    });
+  }
+
+  private static HyperMinHash intSketch(int p, int r) {
+    return new HyperMinHash(p, r, new IntRegisters(p, r), Murmur3Hasher128.getInstance());
+  }
+}
@@ -0,0 +1,130 @@
+package com.liveramp.hyperminhash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSparseBetaMinHash {
+
+  @Test
+  public void testOffersMatchBetaMinHash() {
+    RandomTestRunner.runRandomizedTest(5, rng -> {
+      final SparseBetaMinHash sketch = CommonTests.testOffersMatch(
+          BetaMinHash::new,
+          SparseBetaMinHash::new,
+          4 * SparseShortRegisters.MAX_SPARSE_REGISTERS,
+          500,
+          (expected, actual) -> {
+            Assert.assertEquals(
+                numSetRegisters(expected) <= SparseShortRegisters.MAX_SPARSE_REGISTERS,
+                actual.isSparse());
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(expected.hashCode(), actual.hashCode());
+            Assert.assertEquals(expected.cardinality(), actual.cardinality());
+          },
+          rng);
+      Assert.assertFalse(sketch.isSparse());
+      Assert.assertEquals(
+          BetaMinHashCardinalityGetter.countLeadingZeros(sketch.registers),
+          sketch.leadingZeroCounts);
+    });
+  }
+
+  @Test
+  public void testSerialization() {
+    final BetaMinHashSerde serde = new BetaMinHashSerde();
+    RandomTestRunner.runRandomizedTest(5, rng -> {
+      final BetaMinHash expected = new BetaMinHash();
+      final SparseBetaMinHash sketch = new SparseBetaMinHash();
+      for (int i = 0; sketch.isSparse(); i++) {
+        if (i % 100 == 0) {
+          final byte[] bytes = serde.toBytes(sketch);
+          Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+          // only the set registers are written
+          Assert.assertTrue(bytes.length < serde.sizeInBytes(expected));
+
+          final BetaMinHash deserialized = serde.fromBytes(bytes);
+          Assert.assertEquals(expected, deserialized);
+          Assert.assertTrue(((SparseBetaMinHash) deserialized).isSparse());
+          Assert.assertEquals(expected.cardinality(), deserialized.cardinality());
+        }
+
+        final long value = rng.nextLong();
+        expected.offer(value);
+        sketch.offer(value);
+      }
+
+      // once dense, it's written like a BetaMinHash
+      final byte[] bytes = serde.toBytes(sketch);
+      Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+      Assert.assertArrayEquals(serde.toBytes(expected), bytes);
+      Assert.assertEquals(BetaMinHash.class, serde.fromBytes(bytes).getClass());
+    });
+  }
+
+  @Test
+  public void testCombinersMatchBetaMinHash() {
+    RandomTestRunner.runRandomizedTest(5, rng -> {
+      final List<BetaMinHash> sparse = new ArrayList<>();
+      final List<BetaMinHash> dense = new ArrayList<>();
+      final List<BetaMinHash> mixed = new ArrayList<>();
+      for (int j = 0; j < 5; j++) {
+        final SparseBetaMinHash sparseSketch = new SparseBetaMinHash();
+        final BetaMinHash denseSketch = new BetaMinHash();
+        // some sketches stay sparse, and others don't
+        final int numValues = rng.nextInt(2 * SparseShortRegisters.MAX_SPARSE_REGISTERS);
+        for (int i = 0; i < numValues; i++) {
+          final long value = rng.nextLong();
+          sparseSketch.offer(value);
+          denseSketch.offer(value);
+        }
+        sparse.add(sparseSketch);
+        dense.add(denseSketch);
+        mixed.add(j % 2 == 0 ? sparseSketch : denseSketch);
+      }
+
+      final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+      final BetaMinHash expected = combiner.union(dense);
+      for (List<BetaMinHash> sketches : Arrays.asList(sparse, mixed)) {
+        Assert.assertEquals(expected, combiner.union(sketches));
+        Assert.assertEquals(expected, combiner.parallelUnion(sketches));
+        Assert.assertEquals(expected.cardinality(), combiner.unionCardinality(sketches));
+        Assert.assertEquals(combiner.overlap(dense), combiner.overlap(sketches));
+
+        final BetaMinHash target = new SparseBetaMinHash();
+        combiner.mergeInto(target, sketches);
+        Assert.assertEquals(expected, target);
+        Assert.assertEquals(expected.cardinality(), target.cardinality());
+      }
+    });
+  }
+
+  @Test
+  public void testDeepCopy() {
+    for (int numValues : new int[]{100, 10_000}) {
+      final SparseBetaMinHash sketch = new SparseBetaMinHash(Xxh3Hasher128.getInstance());
+      for (long i = 0; i < numValues; i++) {
+        sketch.offer(i);
+      }
+
+      final SparseBetaMinHash copy = sketch.deepCopy();
+      Assert.assertEquals(sketch.isSparse(), copy.isSparse());
+      Assert.assertEquals(sketch, copy);
+      copy.offer(-1L);
+      copy.offer(-2L);
+      Assert.assertNotEquals(sketch, copy);
+    }
+  }
+
+  private static int numSetRegisters(BetaMinHash sketch) {
+    int numSetRegisters = 0;
+    for (short register : sketch.registers) {
+      if (register != 0) {
+        numSetRegisters++;
+      }
+    }
+    return numSetRegisters;
+  }
+}
@@ -0,0 +1,152 @@
+package com.liveramp.hyperminhash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSparseHyperMinHash {
+
+  @Test
+  public void testOffersMatchHyperMinHash() {
+    RandomTestRunner.runRandomizedTest(20, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      // r = 10 uses int registers once dense, r = 35 long registers
+      final int r = rng.nextBoolean() ? 10 : 35;
+      final int maxSparseRegisters = SparseRegisters.maxSparseRegisters(p);
+      final SparseHyperMinHash sketch = CommonTests.testOffersMatchHyperMinHash(
+          () -> new SparseHyperMinHash(p, r),
+          4 * maxSparseRegisters,
+          100,
+          (expected, actual) -> {
+            final int numSetRegisters = (1 << p) - expected.registers.getNumZeroRegisters();
+            Assert.assertEquals(numSetRegisters <= maxSparseRegisters, actual.isSparse());
+          },
+          rng);
+      Assert.assertFalse(sketch.isSparse());
+    });
+  }
+
+  @Test
+  public void testSerialization() {
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    RandomTestRunner.runRandomizedTest(50, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = 2 + rng.nextInt(56);
+      final HyperMinHash expected = new HyperMinHash(p, r, Xxh3Hasher128.getInstance());
+      final SparseHyperMinHash sketch = new SparseHyperMinHash(p, r, Xxh3Hasher128.getInstance());
+      while (sketch.isSparse()) {
+        final long value = rng.nextLong();
+        final byte[] bytes = serde.toBytes(sketch);
+        Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+        // only the set registers are written
+        Assert.assertTrue(bytes.length < serde.sizeInBytes(expected));
+
+        final HyperMinHash deserialized = serde.fromBytes(bytes);
+        Assert.assertEquals(sketch, deserialized);
+        Assert.assertTrue(((SparseHyperMinHash) deserialized).isSparse());
+
+        expected.offer(value);
+        sketch.offer(value);
+      }
+
+      // once dense, it's written like a HyperMinHash
+      final byte[] bytes = serde.toBytes(sketch);
+      Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+      Assert.assertArrayEquals(serde.toBytes(expected), bytes);
+      Assert.assertEquals(expected, serde.fromBytes(bytes));
+    });
+  }
+
+  @Test
+  public void testCombinersMatchHyperMinHash() {
+    RandomTestRunner.runRandomizedTest(20, rng -> {
+      final int p = 4 + rng.nextInt(13);
+      final int r = rng.nextBoolean() ? 10 : 35;
+      final List<HyperMinHash> sparse = new ArrayList<>();
+      final List<HyperMinHash> dense = new ArrayList<>();
+      final List<HyperMinHash> mixed = new ArrayList<>();
+      for (int j = 0; j < 5; j++) {
+        final SparseHyperMinHash sparseSketch = new SparseHyperMinHash(p, r);
+        final HyperMinHash denseSketch = new HyperMinHash(p, r);
+        // some sketches stay sparse, and others don't
+        final int numValues = rng.nextInt(2 * SparseRegisters.maxSparseRegisters(p));
+        for (int i = 0; i < numValues; i++) {
+          final long value = rng.nextLong();
+          sparseSketch.offer(value);
+          denseSketch.offer(value);
+        }
+        sparse.add(sparseSketch);
+        dense.add(denseSketch);
+        mixed.add(j % 2 == 0 ? sparseSketch : denseSketch);
+      }
+
+      final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+      final HyperMinHash expected = combiner.union(dense);
+      for (List<HyperMinHash> sketches : Arrays.asList(sparse, mixed)) {
+        CommonTests.assertSameRegisters(expected, combiner.union(sketches));
+        CommonTests.assertSameRegisters(expected, combiner.parallelUnion(sketches));
+        Assert.assertEquals(expected.cardinality(), combiner.unionCardinality(sketches));
+        Assert.assertEquals(combiner.overlap(dense), combiner.overlap(sketches));
+
+        final HyperMinHash target = new SparseHyperMinHash(p, r);
+        combiner.mergeInto(target, sketches);
+        CommonTests.assertMatchesHyperMinHash(expected, target);
+      }
+    });
+  }
+
+  @Test
+  public void testParallelUnionSplitsRegisters() {
+    // p = 20 is large enough for the registers to be merged range by range
+    final HyperMinHash expected = new HyperMinHash(20, 10);
+    final List<HyperMinHash> sketches = new ArrayList<>();
+    for (int j = 0; j < 4; j++) {
+      final SparseHyperMinHash sketch = new SparseHyperMinHash(20, 10);
+      for (long i = 0; i < 1000; i++) {
+        sketch.offer(j * 1000 + i);
+        expected.offer(j * 1000 + i);
+      }
+      sketches.add(sketch);
+    }
+
+    final HyperMinHash union = HyperMinHashCombiner.getInstance()
+        .parallelUnion(sketches, new ForkJoinPool(4), ParallelUnion.DEFAULT_THRESHOLD);
+    CommonTests.assertSameRegisters(expected, union);
+    Assert.assertTrue(((SparseHyperMinHash) sketches.get(0)).isSparse());
+  }
+
+  @Test
+  public void testDeepCopy() {
+    for (int numValues : new int[]{100, 10_000}) {
+      final SparseHyperMinHash sketch = new SparseHyperMinHash(14, 35);
+      for (long i = 0; i < numValues; i++) {
+        sketch.offer(i);
+      }
+
+      final SparseHyperMinHash copy = sketch.deepCopy();
+      Assert.assertEquals(sketch.isSparse(), copy.isSparse());
+      Assert.assertEquals(sketch, copy);
+      Assert.assertEquals(sketch.hashCode(), copy.hashCode());
+      copy.offer(-1L);
+      copy.offer(-2L);
+      Assert.assertNotEquals(sketch, copy);
+    }
+  }
+
+  @Test
+  public void testEqualsWhetherOrNotDense() {
+    final SparseHyperMinHash sparse = new SparseHyperMinHash(14, 10);
+    for (long i = 0; i < 100; i++) {
+      sparse.offer(i);
+    }
+    final SparseHyperMinHash dense = sparse.deepCopy();
+    ((SparseRegisters) dense.registers).densify();
+
+    Assert.assertFalse(dense.isSparse());
+    Assert.assertEquals(sparse, dense);
+    Assert.assertEquals(sparse.hashCode(), dense.hashCode());
+  }
+}
@@ -0,0 +1,134 @@
+package com.liveramp.hyperminhash;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStripedHyperMinHash {
+
+  private static final int NUM_THREADS = 8;
+
+  @Test
+  public void testConcurrentOffersMatchSequentialOffers() throws Exception {
+    for (int r : new int[]{10, 35}) {
+      final long[] values = new long[200_000];
+      final HyperMinHash expected = new HyperMinHash(10, r);
+      for (int i = 0; i < values.length; i++) {
+        values[i] = i % 50_000;
+        expected.offer(values[i]);
+      }
+
+      final StripedHyperMinHash sketch = new StripedHyperMinHash(10, r);
+      ConcurrentTestRunner.runConcurrently(NUM_THREADS, thread -> {
+        for (int i = thread; i < values.length; i += NUM_THREADS) {
+          if (i % 3 == 0) {
+            sketch.offerAll(new long[]{values[i]});
+          } else {
+            sketch.offer(values[i]);
+          }
+          // reads racing with writes must not lose any of them
+          if (i % 10_000 == 0) {
+            sketch.registers.getNumZeroRegisters();
+          }
+        }
+      });
+
+      // no update of the registers or of the counted positions was lost
+      CommonTests.assertMatchesHyperMinHash(expected, sketch);
+    }
+  }
+
+  @Test
+  public void testThreadsShareBoundedStripes() throws Exception {
+    final long[] values = new long[100_000];
+    final HyperMinHash expected = new HyperMinHash(12, 20);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+      expected.offer(values[i]);
+    }
+
+    final StripedRegisters registers =
+        new StripedRegisters(12, 20, Registers.newRegisters(12, 20), 2);
+    final StripedHyperMinHash sketch =
+        new StripedHyperMinHash(12, 20, registers, Murmur3Hasher128.getInstance());
+    ConcurrentTestRunner.runConcurrently(NUM_THREADS, thread -> {
+      for (int i = thread; i < values.length; i += NUM_THREADS) {
+        sketch.offer(values[i]);
+      }
+    });
+
+    Assert.assertEquals(2, registers.getNumAllocatedStripes());
+    CommonTests.assertSameRegisters(expected, sketch);
+    Assert.assertEquals(expected.cardinality(), sketch.cardinality());
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> new StripedRegisters(12, 20, Registers.newRegisters(12, 20), 3));
+  }
+
+  @Test
+  public void testFoldIsCachedUntilNextWrite() {
+    final StripedHyperMinHash sketch = new StripedHyperMinHash(10, 10);
+    final StripedRegisters registers = (StripedRegisters) sketch.registers;
+    sketch.offer(1L);
+
+    final Registers fold = registers.fold();
+    Assert.assertSame(fold, registers.fold());
+
+    // offering a value which doesn't change any stripe keeps the fold
+    sketch.offer(1L);
+    Assert.assertSame(fold, registers.fold());
+
+    sketch.offer(2L);
+    Assert.assertNotSame(fold, registers.fold());
+  }
+
+  @Test
+  public void testSerializesAsHyperMinHash() {
+    final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+    RandomTestRunner.runRandomizedTest(100, rng -> {
+      final int p = Math.max(rng.nextInt(17), 4);
+      final int r = Math.max(rng.nextInt(57), 4);
+      final HyperMinHash expected = new HyperMinHash(p, r);
+      final StripedHyperMinHash sketch = new StripedHyperMinHash(p, r);
+      for (int i = 0; i < 1000; i++) {
+        final long value = rng.nextLong();
+        expected.offer(value);
+        sketch.offer(value);
+      }
+
+      final byte[] bytes = serde.toBytes(sketch);
+      Assert.assertEquals(serde.sizeInBytes(sketch), bytes.length);
+      Assert.assertArrayEquals(serde.toBytes(expected), bytes);
+      Assert.assertEquals(expected, serde.fromBytes(bytes));
+    });
+  }
+
+  @Test
+  public void testDeepCopy() {
+    final StripedHyperMinHash sketch = new StripedHyperMinHash(14, 35);
+    for (long i = 0; i < 10_000; i++) {
+      sketch.offer(i);
+    }
+
+    final StripedHyperMinHash copy = sketch.deepCopy();
+    Assert.assertEquals(sketch, copy);
+    copy.offer(-1L);
+    copy.offer(-2L);
+    Assert.assertNotEquals(sketch, copy);
+  }
+
+  @Test
+  public void testUnionWithHyperMinHash() {
+    final HyperMinHash plain = new HyperMinHash(14, 20);
+    final StripedHyperMinHash striped = new StripedHyperMinHash(14, 20);
+    final HyperMinHash expected = new HyperMinHash(14, 20);
+    for (long i = 0; i < 20_000; i++) {
+      (i % 2 == 0 ? plain : striped).offer(i);
+      expected.offer(i);
+    }
+
+    final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+    CommonTests.assertSameRegisters(expected, combiner.union(Arrays.asList(striped, plain)));
+    CommonTests.assertSameRegisters(expected, combiner.union(Arrays.asList(plain, striped)));
+  }
+}
@@ -0,0 +1,89 @@
+package com.liveramp.hyperminhash;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestXxh3Hasher128 {
+
+  private static final Xxh3Hasher128 HASHER = Xxh3Hasher128.getInstance();
+
+  @Test
+  public void testKnownValues() {
+    // low and high 64 bits, as computed by the reference implementation
+    assertHash("", 0x6001c324468d497fL, 0x99aa06d3014798d8L);
+    assertHash("a", 0xe6c632b61e964e1fL, 0xa96faf705af16834L);
+    assertHash("abc", 0x78af5f94892f3950L, 0x06b05ab6733a6185L);
+    assertHash("hello", 0xc779cfaa5e523818L, 0xb5e9c1ad071b3e7fL);
+    assertHash("12345678", 0x2b3f7d2855dc91fcL, 0x155c340ccffd12dcL);
+    assertHash("123456789abcdef0", 0x9634e04818311f9aL, 0x88797c72969a7f2aL);
+    assertHash(
+        "The quick brown fox jumps over the lazy dog",
+        0x24a1cc2e3a8a7651L,
+        0xddd650205ca3e7faL);
+  }
+
+  @Test
+  public void testHashDoesNotDependOnOffsets() {
+    RandomTestRunner.runRandomizedTest(10, random -> {
+      // covers every length up to the start of the long input path, and a few blocks beyond it
+      for (int length = 0; length <= 2048; length++) {
+        final byte[] data = new byte[length];
+        random.nextBytes(data);
+        final long[] expected = new long[2];
+        HASHER.hash128(data, 0, length, expected, 0);
+
+        final int offset = random.nextInt(8);
+        final byte[] shifted = new byte[offset + length];
+        System.arraycopy(data, 0, shifted, offset, length);
+        final long[] actual = new long[3];
+        HASHER.hash128(shifted, offset, length, actual, 1);
+        Assert.assertEquals(expected[0], actual[1]);
+        Assert.assertEquals(expected[1], actual[2]);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(offset + length);
+        direct.position(offset);
+        direct.put(data);
+        HASHER.hash128(direct, offset, length, actual, 0);
+        Assert.assertEquals(expected[0], actual[0]);
+        Assert.assertEquals(expected[1], actual[1]);
+      }
+    });
+  }
+
+  @Test
+  public void testPrimitivesMatchByteArrays() {
+    final Random random = new Random();
+    final long[] expected = new long[2];
+    final long[] actual = new long[2];
+    for (int i = 0; i < 10_000; i++) {
+      final long longValue = random.nextLong();
+      HASHER.hash128(CommonTests.longToByteArray(longValue), 0, Long.BYTES, expected, 0);
+      HASHER.hash128(longValue, actual, 0);
+      Assert.assertArrayEquals(expected, actual);
+
+      final int intValue = random.nextInt();
+      HASHER.hash128(CommonTests.intToByteArray(intValue), 0, Integer.BYTES, expected, 0);
+      HASHER.hash128(intValue, actual, 0);
+      Assert.assertArrayEquals(expected, actual);
+
+      final long mostSigBits = random.nextLong();
+      final long leastSigBits = random.nextLong();
+      final byte[] uuidBytes = ByteBuffer.allocate(16).putLong(mostSigBits).putLong(leastSigBits)
+          .array();
+      HASHER.hash128(uuidBytes, 0, uuidBytes.length, expected, 0);
+      HASHER.hash128(mostSigBits, leastSigBits, actual, 0);
+      Assert.assertArrayEquals(expected, actual);
+    }
+  }
+
+  private static void assertHash(String input, long expectedLow, long expectedHigh) {
+    final byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+    final long[] hash = new long[2];
+    HASHER.hash128(bytes, 0, bytes.length, hash, 0);
+    Assert.assertEquals(expectedLow, hash[0]);
+    Assert.assertEquals(expectedHigh, hash[1]);
+  }
+}
@@ -0,0 +1,66 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.BetaMinHash;
+import com.liveramp.hyperminhash.ConcurrentHyperMinHash;
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.IntersectionSketch;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures polling the cardinality of a live sketch, which offers a few values between polls so
+ * that nothing about the previous poll can be reused. HyperMinHash sketches have p = 18, and
+ * BetaMinHash sketches their fixed p = 14.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CardinalityBenchmark {
+
+  private static final int P = 18;
+  private static final int R = 10;
+  private static final int NUM_VALUES = 1_000_000;
+
+  @Param({"hmh", "concurrentHmh", "bmh"})
+  public String sketchType;
+
+  private IntersectionSketch<?> sketch;
+  private long nextValue;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    if ("hmh".equals(sketchType)) {
+      sketch = new HyperMinHash(P, R);
+    } else if ("concurrentHmh".equals(sketchType)) {
+      sketch = new ConcurrentHyperMinHash(P, R);
+    } else {
+      sketch = new BetaMinHash();
+    }
+
+    final Random random = new Random(0);
+    for (int i = 0; i < NUM_VALUES; i++) {
+      sketch.offer(random.nextLong());
+    }
+  }
+
+  @Benchmark
+  public long offerThenCardinality() {
+    sketch.offer(nextValue++);
+    return sketch.cardinality();
+  }
+}
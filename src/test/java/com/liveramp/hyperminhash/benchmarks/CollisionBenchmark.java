@@ -0,0 +1,89 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.BetaMinHash;
+import com.liveramp.hyperminhash.BetaMinHashCombiner;
+import com.liveramp.hyperminhash.ExactCollisions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the expected-collision correction of {@link BetaMinHashCombiner#similarity}. {@code
+ * similarityOfSamePair} repeats the similarity of one pair of sketches, whose correction is cached
+ * after the first call. {@code similarityOfChangingPair} adds values to one of the sketches before
+ * every call, so that the correction is computed anew. {@code exactExpectedCollisions} is the
+ * direct sum over all register values which the correction used to be, for the same pair.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollisionBenchmark {
+
+  private static final int NUM_VALUES = 200_000;
+
+  private final BetaMinHashCombiner combiner = BetaMinHashCombiner.getInstance();
+  private final Random random = new Random(0);
+  private List<BetaMinHash> samePair;
+  private List<BetaMinHash> changingPair;
+  private double[] cardinalities;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final BetaMinHash left = new BetaMinHash();
+    final BetaMinHash right = new BetaMinHash();
+    for (int i = 0; i < NUM_VALUES; i++) {
+      final long value = random.nextLong();
+      if (random.nextBoolean()) {
+        left.offer(value);
+      }
+      if (random.nextBoolean()) {
+        right.offer(value);
+      }
+    }
+    samePair = Arrays.asList(left.deepCopy(), right);
+    changingPair = Arrays.asList(left, right);
+    cardinalities = new double[]{left.cardinality(), right.cardinality()};
+  }
+
+  @Setup(Level.Invocation)
+  public void growLeftSketch() {
+    // enough new values to move the cardinality to another cache entry
+    for (int i = 0; i < 100; i++) {
+      changingPair.get(0).offer(random.nextLong());
+    }
+  }
+
+  @Benchmark
+  public double similarityOfSamePair() {
+    return combiner.similarity(samePair);
+  }
+
+  @Benchmark
+  public double similarityOfChangingPair() {
+    return combiner.similarity(changingPair);
+  }
+
+  @Benchmark
+  public double exactExpectedCollisions() {
+    return ExactCollisions.expectedCollisions(
+        BetaMinHash.P,
+        BetaMinHash.Q,
+        BetaMinHash.R,
+        cardinalities);
+  }
+}
@@ -0,0 +1,124 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.ConcurrentHyperMinHash;
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.HyperMinHashCombiner;
+import com.liveramp.hyperminhash.StripedHyperMinHash;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares offering a batch of values from numThreads threads into one shared {@link
+ * ConcurrentHyperMinHash} or {@link StripedHyperMinHash} with offering it into one {@link
+ * HyperMinHash} per thread and unioning those at the end. Scores are per batch of {@link
+ * #NUM_VALUES} values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentOfferBenchmark {
+
+  private static final int NUM_VALUES = 1 << 20;
+  private static final int P = 14;
+  private static final int R = 10;
+
+  @Param({"1", "2", "4", "8", "16", "32", "64"})
+  public int numThreads;
+
+  private long[] values;
+  private ExecutorService executor;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Random random = new Random(0);
+    values = new long[NUM_VALUES];
+    for (int i = 0; i < NUM_VALUES; i++) {
+      values[i] = random.nextLong();
+    }
+    executor = Executors.newFixedThreadPool(numThreads);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public long sharedConcurrentSketch() throws Exception {
+    final ConcurrentHyperMinHash sketch = new ConcurrentHyperMinHash(P, R);
+    runOnAllThreads(thread -> {
+      offerSlice(sketch, thread);
+      return null;
+    });
+    return sketch.cardinality();
+  }
+
+  @Benchmark
+  public long sharedStripedSketch() throws Exception {
+    final StripedHyperMinHash sketch = new StripedHyperMinHash(P, R);
+    runOnAllThreads(thread -> {
+      offerSlice(sketch, thread);
+      return null;
+    });
+    return sketch.cardinality();
+  }
+
+  @Benchmark
+  public long perThreadSketchesThenUnion() throws Exception {
+    final List<HyperMinHash> sketches = runOnAllThreads(thread -> {
+      final HyperMinHash sketch = new HyperMinHash(P, R);
+      offerSlice(sketch, thread);
+      return sketch;
+    });
+    return HyperMinHashCombiner.getInstance().union(sketches).cardinality();
+  }
+
+  private void offerSlice(HyperMinHash sketch, int thread) {
+    final int sliceLength = NUM_VALUES / numThreads;
+    final int start = thread * sliceLength;
+    for (int i = start; i < start + sliceLength; i++) {
+      sketch.offer(values[i]);
+    }
+  }
+
+  private interface ThreadBody<T> {
+
+    T run(int thread);
+  }
+
+  private <T> List<T> runOnAllThreads(ThreadBody<T> body) throws Exception {
+    final List<Callable<T>> tasks = new ArrayList<>(numThreads);
+    for (int thread = 0; thread < numThreads; thread++) {
+      final int threadIndex = thread;
+      tasks.add(() -> body.run(threadIndex));
+    }
+
+    final List<T> results = new ArrayList<>(numThreads);
+    for (Future<T> future : executor.invokeAll(tasks)) {
+      results.add(future.get());
+    }
+    return results;
+  }
+}
@@ -0,0 +1,52 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.HyperMinHash;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cardinality estimate of HyperMinHash sketches holding 3 * 2^p values, which is in
+ * the range where the estimate is bias corrected with the HLL++ tables for every p they cover.
+ * Beyond p = 18, the estimate is Ertl's improved estimate instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EstimatorBenchmark {
+
+  private static final int R = 10;
+
+  @Param({"4", "10", "14", "18", "20"})
+  public int p;
+
+  private HyperMinHash sketch;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    sketch = new HyperMinHash(p, R);
+    final Random random = new Random(0);
+    for (int i = 0; i < 3 << p; i++) {
+      sketch.offer(random.nextLong());
+    }
+  }
+
+  @Benchmark
+  public long cardinality() {
+    return sketch.cardinality();
+  }
+}
@@ -0,0 +1,96 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.OffHeapHyperMinHash;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the garbage collection of a service which keeps populationMegabytes of p=14, r=20
+ * sketches resident, held on the heap by {@link HyperMinHash} or off it by {@link
+ * OffHeapHyperMinHash}. Each operation replaces a random sketch of the population with a freshly
+ * built one and reads the cardinality of another, so the resident sketches keep being promoted and
+ * collected.
+ *
+ * <p>Run with {@code -prof gc} to compare the time spent in collections, and with {@code
+ * -jvmArgsAppend -Xlog:gc} for each pause. The default population is small enough for a laptop.
+ * For the 10 GB comparison, run with e.g. {@code -p populationMegabytes=10240 -jvmArgsAppend
+ * "-Xmx12g -XX:MaxDirectMemorySize=12g"}, since the off-heap sketches still need their population
+ * to fit in direct memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GcPauseBenchmark {
+
+  private static final int P = 14;
+  // held in int registers both on and off the heap, so that both populations hold as many
+  // sketches. With r <= 10, sketches on the heap would have short registers.
+  private static final int R = 20;
+  private static final int SKETCH_BYTES = Integer.BYTES << P;
+  private static final int NUM_VALUES = 100;
+
+  @Param({"false", "true"})
+  public boolean offHeap;
+
+  @Param({"1024"})
+  public int populationMegabytes;
+
+  private HyperMinHash[] population;
+  private Random random;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    random = new Random(0);
+    population = new HyperMinHash[(int) ((long) populationMegabytes * (1 << 20) / SKETCH_BYTES)];
+    for (int i = 0; i < population.length; i++) {
+      population[i] = newSketch();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    for (HyperMinHash sketch : population) {
+      release(sketch);
+    }
+    population = null;
+  }
+
+  private HyperMinHash newSketch() {
+    final HyperMinHash sketch = offHeap ? new OffHeapHyperMinHash(P, R) : new HyperMinHash(P, R);
+    for (int i = 0; i < NUM_VALUES; i++) {
+      sketch.offer(random.nextLong());
+    }
+    return sketch;
+  }
+
+  private static void release(HyperMinHash sketch) {
+    if (sketch instanceof OffHeapHyperMinHash) {
+      ((OffHeapHyperMinHash) sketch).close();
+    }
+  }
+
+  @Benchmark
+  public long replaceSketch() {
+    final int index = random.nextInt(population.length);
+    release(population[index]);
+    population[index] = newSketch();
+    return population[random.nextInt(population.length)].cardinality();
+  }
+}
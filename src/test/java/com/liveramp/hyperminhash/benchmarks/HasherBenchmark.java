@@ -0,0 +1,85 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.Hasher128;
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.Murmur3Hasher128;
+import com.liveramp.hyperminhash.Xxh3Hasher128;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of the available {@link Hasher128}s on keys of different lengths, both
+ * on their own and when offering the keys to a sketch. Scores are per batch of {@link #NUM_KEYS}
+ * keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HasherBenchmark {
+
+  private static final int NUM_KEYS = 1024;
+
+  @Param({"murmur3", "xxh3"})
+  public String hasherName;
+
+  @Param({"8", "16", "64", "1024"})
+  public int keyLength;
+
+  private Hasher128 hasher;
+  private byte[][] keys;
+  private long[] hash;
+  private HyperMinHash sketch;
+
+  @Setup(Level.Trial)
+  public void setUpKeys() {
+    hasher = "xxh3".equals(hasherName)
+        ? Xxh3Hasher128.getInstance()
+        : Murmur3Hasher128.getInstance();
+
+    final Random random = new Random(0);
+    keys = new byte[NUM_KEYS][keyLength];
+    for (byte[] key : keys) {
+      random.nextBytes(key);
+    }
+    hash = new long[2];
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpSketch() {
+    sketch = new HyperMinHash(14, 10, hasher);
+  }
+
+  @Benchmark
+  public long hashKeys() {
+    long result = 0;
+    for (byte[] key : keys) {
+      hasher.hash128(key, 0, key.length, hash, 0);
+      result ^= hash[0] ^ hash[1];
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int offerKeys() {
+    int numChanged = 0;
+    for (byte[] key : keys) {
+      numChanged += sketch.offer(key) ? 1 : 0;
+    }
+    return numChanged;
+  }
+}
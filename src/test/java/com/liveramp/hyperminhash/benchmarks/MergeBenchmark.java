@@ -0,0 +1,75 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.HyperMinHashCombiner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link HyperMinHashCombiner#union} of numSketches p=16 sketches with merging them into
+ * an existing accumulator with {@link HyperMinHashCombiner#mergeInto}, and with {@link
+ * HyperMinHashCombiner#parallelUnion} on the common pool. Scores are per merge of all sketches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergeBenchmark {
+
+  private static final int P = 16;
+  private static final int R = 10;
+  private static final int VALUES_PER_SKETCH = 10_000;
+
+  @Param({"16", "128", "1024"})
+  public int numSketches;
+
+  private final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+  private List<HyperMinHash> sketches;
+  private HyperMinHash accumulator;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Random random = new Random(0);
+    sketches = new ArrayList<>(numSketches);
+    for (int i = 0; i < numSketches; i++) {
+      final HyperMinHash sketch = new HyperMinHash(P, R);
+      for (int j = 0; j < VALUES_PER_SKETCH; j++) {
+        sketch.offer(random.nextLong());
+      }
+      sketches.add(sketch);
+    }
+    accumulator = new HyperMinHash(P, R);
+  }
+
+  @Benchmark
+  public HyperMinHash union() {
+    return combiner.union(sketches);
+  }
+
+  @Benchmark
+  public HyperMinHash parallelUnion() {
+    return combiner.parallelUnion(sketches);
+  }
+
+  @Benchmark
+  public HyperMinHash mergeIntoAccumulator() {
+    // merging is idempotent, so the accumulator can be reused across invocations
+    return combiner.mergeInto(accumulator, sketches);
+  }
+}
@@ -0,0 +1,109 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.BetaMinHash;
+import com.liveramp.hyperminhash.BitPackedHyperMinHash;
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.IntersectionSketch;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares offering a columnar batch one value at a time with offering it through {@code
+ * offerAll}. Scores are per batch; divide by batchSize for the per-value cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OfferAllBenchmark {
+
+  @Param({"hmh", "packedHmh", "bmh"})
+  public String sketchType;
+
+  @Param({"4096", "65536"})
+  public int batchSize;
+
+  private IntersectionSketch<?> sketch;
+  private long[] longs;
+  private byte[][] byteArrays;
+  private ByteBuffer buffer;
+  private int[] offsets;
+
+  @Setup(Level.Trial)
+  public void setUpBatch() {
+    final Random random = new Random(0);
+    longs = new long[batchSize];
+    byteArrays = new byte[batchSize][];
+    offsets = new int[batchSize + 1];
+    for (int i = 0; i < batchSize; i++) {
+      longs[i] = random.nextLong();
+      byteArrays[i] = new byte[16];
+      random.nextBytes(byteArrays[i]);
+      offsets[i + 1] = offsets[i] + byteArrays[i].length;
+    }
+
+    buffer = ByteBuffer.allocateDirect(offsets[batchSize]);
+    for (byte[] value : byteArrays) {
+      buffer.put(value);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpSketch() {
+    if ("hmh".equals(sketchType)) {
+      sketch = new HyperMinHash(14, 10);
+    } else if ("packedHmh".equals(sketchType)) {
+      sketch = new BitPackedHyperMinHash(14, 10);
+    } else {
+      sketch = new BetaMinHash();
+    }
+  }
+
+  @Benchmark
+  public int offerLongsOneByOne() {
+    int numChanged = 0;
+    for (long value : longs) {
+      numChanged += sketch.offer(value) ? 1 : 0;
+    }
+    return numChanged;
+  }
+
+  @Benchmark
+  public int offerAllLongs() {
+    return sketch.offerAll(longs);
+  }
+
+  @Benchmark
+  public int offerByteArraysOneByOne() {
+    int numChanged = 0;
+    for (byte[] value : byteArrays) {
+      numChanged += sketch.offer(value) ? 1 : 0;
+    }
+    return numChanged;
+  }
+
+  @Benchmark
+  public int offerAllByteArrays() {
+    return sketch.offerAll(byteArrays);
+  }
+
+  @Benchmark
+  public int offerAllByteBuffer() {
+    return sketch.offerAll(buffer, offsets);
+  }
+}
@@ -0,0 +1,93 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.HyperMinHashCombiner;
+import com.liveramp.hyperminhash.SketchOverlap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares estimating the union cardinality, Jaccard index and intersection cardinality of two
+ * overlapping sketches with {@link HyperMinHashCombiner#overlap} against the separate combiner
+ * calls, and estimating only the union cardinality with {@link
+ * HyperMinHashCombiner#unionCardinality} against the cardinality of the union. {@code
+ * collisionCorrectedOverlap} measures what correcting the Jaccard index for collisions with {@link
+ * HyperMinHashCombiner#getCollisionCorrectingInstance()} adds to {@code overlap}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OverlapBenchmark {
+
+  private static final int P = 14;
+  private static final int R = 10;
+  private static final int NUM_VALUES = 100_000;
+
+  private final HyperMinHashCombiner combiner = HyperMinHashCombiner.getInstance();
+  private final HyperMinHashCombiner correctingCombiner =
+      HyperMinHashCombiner.getCollisionCorrectingInstance();
+  private HyperMinHash left;
+  private HyperMinHash right;
+  private List<HyperMinHash> sketches;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Random random = new Random(0);
+    left = new HyperMinHash(P, R);
+    right = new HyperMinHash(P, R);
+    for (int i = 0; i < NUM_VALUES; i++) {
+      final long value = random.nextLong();
+      if (random.nextBoolean()) {
+        left.offer(value);
+      }
+      if (random.nextBoolean()) {
+        right.offer(value);
+      }
+    }
+    sketches = Arrays.asList(left, right);
+  }
+
+  @Benchmark
+  public SketchOverlap overlap() {
+    return combiner.overlap(left, right);
+  }
+
+  @Benchmark
+  public SketchOverlap collisionCorrectedOverlap() {
+    return correctingCombiner.overlap(left, right);
+  }
+
+  @Benchmark
+  public void separateEstimates(Blackhole blackhole) {
+    blackhole.consume(combiner.union(sketches).cardinality());
+    blackhole.consume(combiner.similarity(sketches));
+    blackhole.consume(combiner.intersectionCardinality(sketches));
+  }
+
+  @Benchmark
+  public long unionCardinality() {
+    return combiner.unionCardinality(left, right);
+  }
+
+  @Benchmark
+  public long unionThenCardinality() {
+    return combiner.union(sketches).cardinality();
+  }
+}
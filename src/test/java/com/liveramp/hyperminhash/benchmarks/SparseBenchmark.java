@@ -0,0 +1,79 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.BetaMinHash;
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.SparseBetaMinHash;
+import com.liveramp.hyperminhash.SparseHyperMinHash;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares building a p=16 HyperMinHash and a BetaMinHash from numValues values with their sparse
+ * counterparts, including the cardinality estimate. Run with {@code -prof gc} to compare the
+ * memory each sketch allocates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SparseBenchmark {
+
+  private static final int P = 16;
+  private static final int R = 10;
+
+  @Param({"100", "2000"})
+  public int numValues;
+
+  private long[] values;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Random random = new Random(0);
+    values = new long[numValues];
+    for (int i = 0; i < numValues; i++) {
+      values[i] = random.nextLong();
+    }
+  }
+
+  @Benchmark
+  public long hyperMinHash() {
+    final HyperMinHash sketch = new HyperMinHash(P, R);
+    sketch.offerAll(values);
+    return sketch.cardinality();
+  }
+
+  @Benchmark
+  public long sparseHyperMinHash() {
+    final HyperMinHash sketch = new SparseHyperMinHash(P, R);
+    sketch.offerAll(values);
+    return sketch.cardinality();
+  }
+
+  @Benchmark
+  public long betaMinHash() {
+    final BetaMinHash sketch = new BetaMinHash();
+    sketch.offerAll(values);
+    return sketch.cardinality();
+  }
+
+  @Benchmark
+  public long sparseBetaMinHash() {
+    final BetaMinHash sketch = new SparseBetaMinHash();
+    sketch.offerAll(values);
+    return sketch.cardinality();
+  }
+}
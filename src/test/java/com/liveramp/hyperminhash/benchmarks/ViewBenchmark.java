@@ -0,0 +1,75 @@
+package com.liveramp.hyperminhash.benchmarks;
+
+import com.liveramp.hyperminhash.HyperMinHash;
+import com.liveramp.hyperminhash.HyperMinHashSerDe;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading a serialized HyperMinHash from a direct buffer, as from a memory-mapped file,
+ * with {@link HyperMinHashSerDe#fromBytes(byte[])} and with {@link HyperMinHashSerDe#view}, with
+ * and without estimating its cardinality.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ViewBenchmark {
+
+  private static final int R = 10;
+
+  @Param({"14", "20"})
+  public int p;
+
+  private final HyperMinHashSerDe serde = new HyperMinHashSerDe();
+  private ByteBuffer buffer;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Random random = new Random(0);
+    final HyperMinHash sketch = new HyperMinHash(p, R);
+    for (int i = 0; i < 1_000_000; i++) {
+      sketch.offer(random.nextLong());
+    }
+    final byte[] bytes = serde.toBytes(sketch);
+    buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes).flip();
+  }
+
+  @Benchmark
+  public HyperMinHash fromBytes() {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return serde.fromBytes(bytes);
+  }
+
+  @Benchmark
+  public HyperMinHash view() {
+    return serde.view(buffer);
+  }
+
+  @Benchmark
+  public long fromBytesCardinality() {
+    return fromBytes().cardinality();
+  }
+
+  @Benchmark
+  public long viewCardinality() {
+    return view().cardinality();
+  }
+}